@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.benchmark;
+
+import com.github.pnavais.flights.connections.LegJoiner;
+import com.github.pnavais.flights.model.FlightConnection;
+import com.github.pnavais.flights.model.Leg;
+import com.github.pnavais.flights.model.Timetable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the original nested-loop pairing of the legs of a one-stop
+ * route with the sort-merge join over compact timetables, for hubs with
+ * a few daily flights per step during windows of a few days up to
+ * several weeks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LegJoinBenchmark {
+
+    /** The number of legs of each step */
+    @Param({"10", "100", "500"})
+    private int legs;
+
+    /** The flights of the first step */
+    private Timetable<String> initialFlights;
+
+    /** The flights of the second step */
+    private Timetable<String> finalFlights;
+
+    /** The legs of the first step */
+    private List<Leg<String>> initialLegs;
+
+    /** The legs of the second step */
+    private List<Leg<String>> finalLegs;
+
+    @Setup
+    public void setup() {
+        LocalDateTime start = LocalDateTime.of(2018, 7, 1, 6, 0);
+        initialFlights = ScheduleFixture.dailyTimetable("DUB", "STN", start, legs, 3, 75);
+        finalFlights = ScheduleFixture.dailyTimetable("STN", "WRO", start.plusHours(1), legs, 3, 120);
+        initialLegs = initialFlights.toLegs();
+        finalLegs = finalFlights.toLegs();
+    }
+
+    @Benchmark
+    public List<FlightConnection> nestedLoop() {
+        List<FlightConnection> connections = new ArrayList<>();
+        initialLegs.forEach(i -> finalLegs.stream()
+                .filter(f -> (i.getArrivalDateTime().plusHours(2).compareTo(f.getDepartureDateTime()) <= 0))
+                .forEach(f -> {
+                    FlightConnection connection = new FlightConnection();
+                    connection.setStops(1);
+                    List<Leg<String>> pair = new ArrayList<>();
+                    pair.add(i);
+                    pair.add(f);
+                    connection.setLegs(pair);
+                    connections.add(connection);
+                }));
+        return connections;
+    }
+
+    @Benchmark
+    public List<FlightConnection> sortMergeJoin() {
+        return LegJoiner.join(initialFlights, finalFlights);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.benchmark;
+
+import com.github.pnavais.flights.model.Route;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates a synthetic, reproducible routes network resembling the
+ * one served by the Routes API : a few densely connected hubs and a
+ * long tail of airports connected to some hubs and a few others.
+ */
+public class RouteNetworkFixture {
+
+    /** Default number of airports (similar to the real network) */
+    public static final int DEFAULT_AIRPORTS = 250;
+
+    /** Default number of hubs */
+    public static final int DEFAULT_HUBS = 20;
+
+    /** The airport codes */
+    private final List<String> airports;
+
+    /** The routes */
+    private final List<Route> routes;
+
+    /**
+     * Constructor with the size of the network
+     *
+     * @param airportCount the number of airports
+     * @param hubCount the number of hubs
+     * @param seed the random seed
+     */
+    public RouteNetworkFixture(int airportCount, int hubCount, long seed) {
+        Random random = new Random(seed);
+        this.airports = new ArrayList<>();
+        for (int i = 0; i < airportCount; i++) {
+            airports.add(code(i));
+        }
+
+        Set<String> edges = new LinkedHashSet<>();
+
+        // Hubs are connected to most of the other hubs
+        for (int i = 0; i < hubCount; i++) {
+            for (int j = 0; j < hubCount; j++) {
+                if (i != j && random.nextDouble() < 0.8) {
+                    edges.add(i + ":" + j);
+                }
+            }
+        }
+
+        // Regular airports fly to/from a few hubs and other airports
+        for (int i = hubCount; i < airportCount; i++) {
+            int hubs = 2 + random.nextInt(6);
+            for (int h = 0; h < hubs; h++) {
+                int hub = random.nextInt(hubCount);
+                edges.add(i + ":" + hub);
+                edges.add(hub + ":" + i);
+            }
+            int others = random.nextInt(4);
+            for (int o = 0; o < others; o++) {
+                int other = hubCount + random.nextInt(airportCount - hubCount);
+                if (other != i) {
+                    edges.add(i + ":" + other);
+                    edges.add(other + ":" + i);
+                }
+            }
+        }
+
+        this.routes = new ArrayList<>();
+        edges.forEach(e -> {
+            String[] ends = e.split(":");
+            routes.add(new Route(airports.get(Integer.parseInt(ends[0])), airports.get(Integer.parseInt(ends[1]))));
+        });
+    }
+
+    /**
+     * Creates the default network
+     *
+     * @return the default network
+     */
+    public static RouteNetworkFixture standard() {
+        return new RouteNetworkFixture(DEFAULT_AIRPORTS, DEFAULT_HUBS, 42L);
+    }
+
+    /**
+     * Generates a 3-letter airport code
+     *
+     * @param index the airport index
+     * @return the airport code
+     */
+    private static String code(int index) {
+        return "" + (char) ('A' + (index / 676) % 26) + (char) ('A' + (index / 26) % 26) + (char) ('A' + index % 26);
+    }
+
+    /**
+     * Picks random (origin, destination) pairs of distinct airports
+     *
+     * @param count the number of pairs
+     * @param seed the random seed
+     * @return the pairs
+     */
+    public String[][] randomPairs(int count, long seed) {
+        Random random = new Random(seed);
+        String[][] pairs = new String[count][];
+        for (int i = 0; i < count; i++) {
+            int origin = random.nextInt(airports.size());
+            int destination = (origin + 1 + random.nextInt(airports.size() - 1)) % airports.size();
+            pairs[i] = new String[] { airports.get(origin), airports.get(destination) };
+        }
+        return pairs;
+    }
+
+    /**
+     * Retrieves the airport codes
+     *
+     * @return the airports
+     */
+    public List<String> getAirports() {
+        return airports;
+    }
+
+    /**
+     * Retrieves the routes
+     *
+     * @return the routes
+     */
+    public List<Route> getRoutes() {
+        return routes;
+    }
+}
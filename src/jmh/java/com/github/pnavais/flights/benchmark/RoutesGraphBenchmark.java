@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.benchmark;
+
+import com.github.pnavais.flights.model.FlightPath;
+import com.github.pnavais.flights.routes.CompactRoutesIndex;
+import com.github.pnavais.flights.routes.RoutesGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the search of paths with one stop at most using the
+ * per-request enumeration of the graph against the precomputed
+ * one-stop index and the compact (CSR) routes index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutesGraphBenchmark {
+
+    /** Maximum transitions of a one-stop search */
+    private static final int MAX_TRANSITIONS = 2;
+
+    /** Graph searched by enumeration (index not built) */
+    private RoutesGraph enumeratedGraph;
+
+    /** Graph searched through the one-stop index */
+    private RoutesGraph indexedGraph;
+
+    /** Compact index searched over adjacency arrays */
+    private CompactRoutesIndex compactIndex;
+
+    /** The queried pairs */
+    private String[][] pairs;
+
+    /** The next pair to query */
+    private int next;
+
+    @Setup
+    public void setup() {
+        RouteNetworkFixture network = RouteNetworkFixture.standard();
+
+        enumeratedGraph = new RoutesGraph();
+        indexedGraph = new RoutesGraph();
+        compactIndex = new CompactRoutesIndex();
+        network.getRoutes().forEach(r -> {
+            enumeratedGraph.add(r.getAirportFrom(), r.getAirportTo());
+            indexedGraph.add(r.getAirportFrom(), r.getAirportTo());
+            compactIndex.add(r.getAirportFrom(), r.getAirportTo());
+        });
+        indexedGraph.build();
+        compactIndex.build();
+
+        pairs = network.randomPairs(1024, 7L);
+    }
+
+    /**
+     * Retrieves the next pair to query
+     *
+     * @return the pair
+     */
+    private String[] nextPair() {
+        next = (next + 1) & (pairs.length - 1);
+        return pairs[next];
+    }
+
+    @Benchmark
+    public List<FlightPath> allDirectedPaths() {
+        String[] pair = nextPair();
+        return enumeratedGraph.findRoutes(pair[0], pair[1], MAX_TRANSITIONS);
+    }
+
+    @Benchmark
+    public List<FlightPath> oneStopIndex() {
+        String[] pair = nextPair();
+        return indexedGraph.findRoutes(pair[0], pair[1], MAX_TRANSITIONS);
+    }
+
+    @Benchmark
+    public List<FlightPath> compactIndex() {
+        String[] pair = nextPair();
+        return compactIndex.findRoutes(pair[0], pair[1], MAX_TRANSITIONS);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.benchmark;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.pnavais.flights.jackson.Mappers;
+import com.github.pnavais.flights.jackson.TimetableDecoder;
+import com.github.pnavais.flights.model.RouteMonth;
+import com.github.pnavais.flights.model.Schedule;
+import com.github.pnavais.flights.model.Timetable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.YearMonth;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the decoding of the monthly schedules served by the schedules
+ * API, with the same Jackson modules as the schedules client, into the
+ * schedule model, into the compact timetable kept in the cache through
+ * the model and straight into the timetable with the streaming decoder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScheduleDecodeBenchmark {
+
+    /** The number of flights per day */
+    @Param({"1", "4", "12"})
+    private int perDay;
+
+    /** The mapper configured as the schedules decoder */
+    private ObjectMapper mapper;
+
+    /** The route-month of the payload */
+    private final RouteMonth routeMonth = new RouteMonth("DUB", "WRO", 2018, 7);
+
+    /** The JSON payload of the month */
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        mapper = Mappers.getDefault();
+
+        payload = ScheduleFixture.monthPayload(YearMonth.of(2018, 7), perDay, 120)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Schedule decodeSchedule() throws IOException {
+        return mapper.readValue(payload, Schedule.class);
+    }
+
+    @Benchmark
+    public Timetable<String> decodeTimetable() throws IOException {
+        Schedule schedule = mapper.readValue(payload, Schedule.class);
+        schedule.setYear(2018);
+        return Timetable.from("DUB", "WRO", schedule);
+    }
+
+    @Benchmark
+    public Timetable<String> streamTimetable() throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(payload)) {
+            return TimetableDecoder.parse(parser, routeMonth);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.benchmark;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.github.pnavais.flights.jackson.MonthDeserializer;
+import com.github.pnavais.flights.model.Leg;
+import com.github.pnavais.flights.model.Schedule;
+import com.github.pnavais.flights.model.Timetable;
+import com.github.pnavais.flights.util.TimeUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the original filtering of the scheduled flights of a time
+ * window, creating date times for every flight of the months spanned,
+ * with the slicing of the cached compact timetables, for windows of a
+ * couple of days up to a month.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScheduleFilterBenchmark {
+
+    /** The number of days of the window */
+    @Param({"2", "30"})
+    private int days;
+
+    /** The number of flights per day */
+    @Param({"4"})
+    private int perDay;
+
+    /** The decoded schedules of the months spanned */
+    private List<Schedule> schedules;
+
+    /** The compact schedules of the months spanned */
+    private List<Timetable<String>> timetables;
+
+    /** The start of the window */
+    private LocalDateTime departureDate;
+
+    /** The end of the window */
+    private LocalDateTime arrivalDate;
+
+    @Setup
+    public void setup() throws IOException {
+        SimpleModule extraModule = new SimpleModule();
+        extraModule.addDeserializer(Month.class, MonthDeserializer.getDefault());
+        ObjectMapper mapper = new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .registerModule(extraModule)
+                .registerModule(new JavaTimeModule());
+
+        schedules = new ArrayList<>();
+        timetables = new ArrayList<>();
+        for (YearMonth month = YearMonth.of(2018, 7); month.isBefore(YearMonth.of(2018, 9));
+             month = month.plusMonths(1)) {
+            Schedule schedule = mapper.readValue(ScheduleFixture.monthPayload(month, perDay, 120), Schedule.class);
+            schedule.setYear(month.getYear());
+            schedules.add(schedule);
+            timetables.add(Timetable.from("DUB", "WRO", schedule));
+        }
+
+        departureDate = LocalDateTime.of(2018, 7, 20, 7, 0);
+        arrivalDate = departureDate.plusDays(days);
+    }
+
+    @Benchmark
+    public List<Leg<String>> scheduleFilter() {
+        List<Leg<String>> flights = new ArrayList<>();
+
+        schedules.forEach(schedule -> schedule.getDays().forEach(fd ->
+                flights.addAll(fd.getFlights().stream()
+                        .filter(f -> {
+                            LocalDate date = LocalDate.of(schedule.getYear(), schedule.getMonth(), fd.getDay());
+                            LocalDateTime departureDateTime = LocalDateTime.of(date, f.getDepartureTime());
+                            return (departureDate.compareTo(departureDateTime) <= 0)
+                                    && (arrivalDate.compareTo(departureDateTime) >= 0);
+                        }).map(f -> {
+                            LocalDate date = LocalDate.of(schedule.getYear(), schedule.getMonth(), fd.getDay());
+                            Leg<String> leg = new Leg<>();
+                            leg.setDepartureAirport("DUB");
+                            leg.setArrivalAirport("WRO");
+                            leg.setDepartureDateTime(LocalDateTime.of(date, f.getDepartureTime()));
+                            leg.setArrivalDateTime(LocalDateTime.of(date, f.getArrivalTime()));
+                            return leg;
+                        }).collect(Collectors.toList()))));
+
+        return flights;
+    }
+
+    @Benchmark
+    public Timetable<String> timetableSlice() {
+        int fromMinute = TimeUtils.toEpochMinuteCeiling(departureDate);
+        int toMinute = TimeUtils.toEpochMinute(arrivalDate);
+
+        return Timetable.concat("DUB", "WRO", timetables.stream()
+                .map(t -> t.slice(fromMinute, toMinute))
+                .collect(Collectors.toList()));
+    }
+
+    @Benchmark
+    public List<Leg<String>> timetableLegs() {
+        return timetableSlice().toLegs();
+    }
+}
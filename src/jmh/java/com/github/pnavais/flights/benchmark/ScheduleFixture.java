@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.benchmark;
+
+import com.github.pnavais.flights.model.Timetable;
+import com.github.pnavais.flights.util.TimeUtils;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+
+/**
+ * Generates synthetic, reproducible schedules
+ */
+public class ScheduleFixture {
+
+    /**
+     * Private constructor to avoid
+     * instantiation
+     */
+    private ScheduleFixture() {}
+
+    /**
+     * Generates a timetable spread over consecutive
+     * days with a few flights per day.
+     *
+     * @param origin the origin airport
+     * @param destination the destination airport
+     * @param start the first departure
+     * @param count the number of flights
+     * @param perDay the number of flights per day
+     * @param durationMinutes the duration of the flights
+     * @return the timetable
+     */
+    public static Timetable<String> dailyTimetable(String origin, String destination, LocalDateTime start, int count,
+                                                   int perDay, int durationMinutes) {
+        int[] departures = new int[count];
+        int[] arrivals = new int[count];
+        int[] numbers = new int[count];
+        int first = TimeUtils.toEpochMinute(start);
+        int gapMinutes = (16 * 60) / perDay;
+
+        for (int i = 0; i < count; i++) {
+            departures[i] = first + (i / perDay) * TimeUtils.MINUTES_PER_DAY + (i % perDay) * gapMinutes;
+            arrivals[i] = departures[i] + durationMinutes;
+            numbers[i] = 1000 + i;
+        }
+
+        return Timetable.of(origin, destination, departures, arrivals, numbers);
+    }
+
+    /**
+     * Generates the JSON payload of a monthly schedule as served
+     * by the schedules API, with the same flights every day.
+     *
+     * @param yearMonth the month of the schedule
+     * @param perDay the number of flights per day
+     * @param durationMinutes the duration of the flights
+     * @return the JSON payload
+     */
+    public static String monthPayload(YearMonth yearMonth, int perDay, int durationMinutes) {
+        int gapMinutes = (16 * 60) / perDay;
+        StringBuilder payload = new StringBuilder("{\"month\":").append(yearMonth.getMonthValue())
+                .append(",\"days\":[");
+
+        for (int day = 1; day <= yearMonth.lengthOfMonth(); day++) {
+            payload.append((day > 1) ? "," : "").append("{\"day\":").append(day).append(",\"flights\":[");
+            for (int f = 0; f < perDay; f++) {
+                int departure = 6 * 60 + f * gapMinutes;
+                int arrival = (departure + durationMinutes) % TimeUtils.MINUTES_PER_DAY;
+                payload.append((f > 0) ? "," : "")
+                        .append("{\"number\":\"").append(1000 + f)
+                        .append("\",\"departureTime\":\"").append(time(departure))
+                        .append("\",\"arrivalTime\":\"").append(time(arrival))
+                        .append("\"}");
+            }
+            payload.append("]}");
+        }
+
+        return payload.append("]}").toString();
+    }
+
+    /**
+     * Formats the given minute of the day as HH:mm
+     *
+     * @param minute the minute of the day
+     * @return the formatted time
+     */
+    private static String time(int minute) {
+        return String.format("%02d:%02d", minute / 60, minute % 60);
+    }
+}
@@ -18,6 +18,7 @@ package com.github.pnavais.flights;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.web.servlet.support.SpringBootServletInitializer;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Main entry point for the Spring MV RESTful API application which serves
@@ -25,6 +26,7 @@ import org.springframework.boot.web.servlet.support.SpringBootServletInitializer
  * on the data consumed from external APIs.
  */
 @SpringBootApplication
+@EnableScheduling
 public class InterconnectingFlightsApplication extends SpringBootServletInitializer {
 
     public static void main(String[] args) {
@@ -15,10 +15,14 @@
  */
 package com.github.pnavais.flights.api;
 
+import com.github.pnavais.flights.model.ConnectionQuery;
 import com.github.pnavais.flights.model.Route;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 /**
  * Defines the methods needed to provide
@@ -55,4 +59,43 @@ public interface ConnectionAnalyzer<T extends Path<K>, K, C extends Connection<K
      */
     List<C> findValidConnections(List<Route> routes, LocalDateTime departureDateTime,
                                  LocalDateTime arrivalDateTime);
-}
\ No newline at end of file
+
+    /**
+     * Asynchronously find all valid connections for the given route
+     * matching the specified criteria.
+     *
+     * @param routes            the routes to analyze
+     * @param departureDateTime the departure time
+     * @param arrivalDateTime   the arrival time
+     * @param executor          the executor assembling the connections
+     * @return the future valid connections
+     */
+    CompletableFuture<List<C>> findValidConnectionsAsync(List<Route> routes, LocalDateTime departureDateTime,
+                                                         LocalDateTime arrivalDateTime, Executor executor);
+
+    /**
+     * Asynchronously find the valid connections matching the given
+     * query, i.e. all of them or only the best ranked ones.
+     *
+     * @param query    the criteria of the search
+     * @param executor the executor assembling the connections
+     * @return the future valid connections
+     */
+    CompletableFuture<List<C>> findConnectionsAsync(ConnectionQuery query, Executor executor);
+
+    /**
+     * Asynchronously find the valid connections matching the given
+     * query, handing them to the given sink as soon as they are
+     * available (by default, all at once when complete). The sink
+     * may be invoked concurrently.
+     *
+     * @param query    the criteria of the search
+     * @param sink     the consumer of the connections found
+     * @param executor the executor assembling the connections
+     * @return the future completed once all the connections are consumed
+     */
+    default CompletableFuture<Void> streamConnectionsAsync(ConnectionQuery query, Consumer<List<C>> sink,
+                                                           Executor executor) {
+        return findConnectionsAsync(query, executor).thenAccept(sink);
+    }
+}
@@ -16,6 +16,8 @@
 package com.github.pnavais.flights.api;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * An index to store the routes between two
@@ -35,6 +37,37 @@ public interface RoutesIndex<K extends Path<L>, L> {
      */
     void add(L origin, L destination);
 
+    /**
+     * Completes the index once all the routes have
+     * been added, precomputing any lookup structure
+     * needed to speed up the search of routes. No
+     * routes can be added afterwards.
+     */
+    void build();
+
+    /**
+     * Retrieves the version of the routes contained
+     * in the index. Every refresh of the routes is
+     * published with a higher version.
+     *
+     * @return the version of the routes
+     */
+    long getVersion();
+
+    /**
+     * Retrieves the number of airports indexed
+     *
+     * @return the number of airports
+     */
+    int getAirportCount();
+
+    /**
+     * Retrieves the number of routes indexed
+     *
+     * @return the number of routes
+     */
+    int getRouteCount();
+
     /**
      * Find all paths connecting origin with destination
      * with the given maximum number of intermediate
@@ -47,4 +80,32 @@ public interface RoutesIndex<K extends Path<L>, L> {
      * @return the list of paths
      */
     List<K> findRoutes(L origin, L destination, int maxStop);
+
+    /**
+     * Find the routes lying on some path connecting origin
+     * with destination with the given maximum number of
+     * transitions, i.e. the part of the network where all
+     * those paths can be searched.
+     *
+     * @param origin the origin of the route
+     * @param destination the destination
+     * @param maxStop the maximum number of transitions
+     *
+     * @return the destinations of the routes by origin
+     */
+    Map<L, Set<L>> findNetwork(L origin, L destination, int maxStop);
+
+    /**
+     * Find the routes lying on some path connecting any
+     * of the origins with any of the destinations with
+     * the given maximum number of transitions, searching
+     * all the pairs at once.
+     *
+     * @param origins the origins of the route
+     * @param destinations the destinations
+     * @param maxStop the maximum number of transitions
+     *
+     * @return the destinations of the routes by origin
+     */
+    Map<L, Set<L>> findNetwork(Set<L> origins, Set<L> destinations, int maxStop);
 }
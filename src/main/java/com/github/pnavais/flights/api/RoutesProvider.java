@@ -16,6 +16,8 @@
 package com.github.pnavais.flights.api;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * A simple interface for external API providers
@@ -31,6 +33,13 @@ public interface RoutesProvider<T extends RoutesIndex<K, L>, K extends Path<L>,
      */
     T fetch();
 
+    /**
+     * Obtains the current routes
+     *
+     * @return the current routes
+     */
+    T getRoutes();
+
     /**
      * Find all routes between origin and destination
      * with the maximum number of transitions specified.
@@ -42,4 +51,28 @@ public interface RoutesProvider<T extends RoutesIndex<K, L>, K extends Path<L>,
      */
     List<K> findPaths(L origin, L destination, int maxTransitions);
 
+    /**
+     * Find the routes lying on some path between origin
+     * and destination with the maximum number of
+     * transitions specified.
+     *
+     * @param origin the origin
+     * @param destination the destination
+     * @param maxTransitions the maximum number of transitions
+     * @return the destinations of the routes by origin
+     */
+    Map<L, Set<L>> findNetwork(L origin, L destination, int maxTransitions);
+
+    /**
+     * Find the routes lying on some path between any of
+     * the origins and any of the destinations with the
+     * maximum number of transitions specified.
+     *
+     * @param origins the origins
+     * @param destinations the destinations
+     * @param maxTransitions the maximum number of transitions
+     * @return the destinations of the routes by origin
+     */
+    Map<L, Set<L>> findNetwork(Set<L> origins, Set<L> destinations, int maxTransitions);
+
 }
@@ -16,9 +16,13 @@
 package com.github.pnavais.flights.api;
 
 import com.github.pnavais.flights.model.Leg;
+import com.github.pnavais.flights.model.Timetable;
 
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Provides the schedules between two destinations
@@ -39,4 +43,58 @@ public interface SchedulesProvider<K> {
      * @return the scheduled flights
      */
     List<Leg<K>> getFlights(K origin, K destination, LocalDateTime departureDate, LocalDateTime arrivalDate);
+
+    /**
+     * Asynchronously retrieves the scheduled flights between an origin and
+     * destination for a given time frame.
+     *
+     * @param origin the origin node
+     * @param destination the destination node
+     * @param departureDate the departure date
+     * @param arrivalDate the arrival date
+     * @return the future scheduled flights
+     */
+    CompletableFuture<List<Leg<K>>> getFlightsAsync(K origin, K destination, LocalDateTime departureDate,
+                                                    LocalDateTime arrivalDate);
+
+    /**
+     * Asynchronously retrieves the compact timetable of the flights between
+     * an origin and destination departing in the given time frame.
+     *
+     * @param origin the origin node
+     * @param destination the destination node
+     * @param departureDate the departure date
+     * @param arrivalDate the arrival date
+     * @return the future timetable of the scheduled flights
+     */
+    CompletableFuture<Timetable<K>> getTimetableAsync(K origin, K destination, LocalDateTime departureDate,
+                                                      LocalDateTime arrivalDate);
+
+    /**
+     * Fetches the schedule of the flights between an origin and
+     * destination for a given month ahead of its reads, which are
+     * then served from the cache. The fetch is not recorded as a
+     * read of the schedule. Failures are logged and do not fail
+     * the fetch.
+     *
+     * @param origin the origin node
+     * @param destination the destination node
+     * @param month the month
+     * @return the future completed once fetched
+     */
+    CompletableFuture<Void> fetchAsync(K origin, K destination, YearMonth month);
+
+    /**
+     * Refreshes the schedule of the flights between an origin and
+     * destination for a given month, fetching it again from the
+     * origin using the given executor.
+     *
+     * @param origin the origin node
+     * @param destination the destination node
+     * @param month the month
+     * @param executor the executor fetching the schedule
+     * @return the future completed once refreshed, with whether the
+     * schedule was actually fetched
+     */
+    CompletableFuture<Boolean> refreshAsync(K origin, K destination, YearMonth month, Executor executor);
 }
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.pnavais.flights.api.RoutesIndex;
+import com.github.pnavais.flights.api.RoutesProvider;
+import com.github.pnavais.flights.metrics.FlightsMetrics;
+import com.github.pnavais.flights.model.ConnectionQuery;
+import com.github.pnavais.flights.model.FlightConnection;
+import com.github.pnavais.flights.model.FlightPath;
+import com.github.pnavais.flights.model.RouteMonth;
+import com.github.pnavais.flights.util.ReadVersions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Bounded in-memory cache of the connections found by the searches,
+ * keyed by their criteria with the time frame normalized to the
+ * granularity of the schedules (minutes).
+ * <p>
+ * Every result is tagged with the version of the routes and the
+ * versions of the monthly schedules it was computed from, and is
+ * discarded as soon as any of them is refreshed or evicted. The
+ * versions are those of the schedules the search actually read,
+ * recorded in its {@link ReadVersions}; results computed while the
+ * data changed, or from schedules failing or missing from the
+ * cache, are not cached.
+ * </p>
+ */
+@Component
+public class ConnectionsCache {
+
+    /** The logger */
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionsCache.class);
+
+    /** The cache of monthly schedules */
+    @Autowired
+    private SchedulesCache schedulesCache;
+
+    /** The routes provider */
+    @Autowired
+    private RoutesProvider<RoutesIndex<FlightPath, String>, FlightPath, String> routesProvider;
+
+    /** The application metrics */
+    @Autowired
+    private FlightsMetrics flightsMetrics;
+
+    /** Whether the results are cached */
+    @Value("${interconnections.cache.enabled:true}")
+    private boolean enabled;
+
+    /** The maximum number of results stored */
+    @Value("${interconnections.cache.size:10000}")
+    private long maximumSize;
+
+    /** The time-to-live of the entries in minutes */
+    @Value("${interconnections.cache.ttl:10}")
+    private long ttlMinutes;
+
+    /** The cache storage */
+    private Cache<ConnectionQuery, Entry> cache;
+
+    /**
+     * Creates the cache storage once the
+     * configuration has been injected.
+     */
+    @PostConstruct
+    public void init() {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttlMinutes, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+        flightsMetrics.registerCache(cache, "connections");
+
+        logger.info("Connections cache : {}, maximum size {}, TTL {} minutes", enabled ? "enabled" : "disabled",
+                maximumSize, ttlMinutes);
+    }
+
+    /**
+     * Retrieves the connections matching the given query, serving them
+     * from the cache when computed from the current routes and schedules
+     * or running the search otherwise.
+     *
+     * @param query the criteria of the search
+     * @param search the search of the connections of a query
+     * @return the future list of connections
+     */
+    public CompletableFuture<List<FlightConnection>> get(
+            ConnectionQuery query, Function<ConnectionQuery, CompletableFuture<List<FlightConnection>>> search) {
+        if (!enabled) {
+            return search.apply(query);
+        }
+
+        ConnectionQuery key = normalize(query);
+        Entry entry = cache.getIfPresent(key);
+
+        if (entry != null) {
+            if (isCurrent(entry)) {
+                return CompletableFuture.completedFuture(entry.connections);
+            }
+            logger.debug("Discarding outdated connections for {}", key);
+            cache.asMap().remove(key, entry);
+        }
+
+        long routesVersion = routesProvider.getRoutes().getVersion();
+        ReadVersions<RouteMonth> reads = new ReadVersions<>();
+
+        return reads.track(() -> search.apply(key)).thenApply(connections -> {
+            List<FlightConnection> result = Collections.unmodifiableList(connections);
+            Entry computed = new Entry(routesVersion, reads.getVersions(), result);
+
+            if (reads.isConsistent() && !computed.versions.containsValue(SchedulesCache.NO_VERSION)
+                    && isCurrent(computed)) {
+                cache.put(key, computed);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Discards all the cached results
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Retrieves the approximate number of cached results
+     *
+     * @return the number of cached entries
+     */
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * Checks whether the given entry was computed
+     * from the current routes and schedules.
+     *
+     * @param entry the entry
+     * @return true if current, false otherwise
+     */
+    private boolean isCurrent(Entry entry) {
+        if (entry.routesVersion != routesProvider.getRoutes().getVersion()) {
+            return false;
+        }
+
+        for (Map.Entry<RouteMonth, Long> version : entry.versions.entrySet()) {
+            if (schedulesCache.getVersion(version.getKey()) != version.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Normalizes the time frame of the query to whole minutes, the
+     * granularity of the schedules, so that searches matching the
+     * same flights share the same key.
+     *
+     * @param query the query
+     * @return the normalized query
+     */
+    static ConnectionQuery normalize(ConnectionQuery query) {
+        LocalDateTime departure = query.getDepartureDateTime().truncatedTo(ChronoUnit.MINUTES);
+        if (departure.isBefore(query.getDepartureDateTime())) {
+            departure = departure.plusMinutes(1);
+        }
+        LocalDateTime arrival = query.getArrivalDateTime().truncatedTo(ChronoUnit.MINUTES);
+
+        return new ConnectionQuery(query.getOrigins(), query.getDestinations(), departure, arrival,
+                query.getMaxStops(), query.getSort(), query.getLimit());
+    }
+
+    /**
+     * A cached result and the versions of the data used
+     */
+    private static final class Entry {
+
+        /** The version of the routes */
+        private final long routesVersion;
+
+        /** The versions of the schedules by route-month */
+        private final Map<RouteMonth, Long> versions;
+
+        /** The connections found */
+        private final List<FlightConnection> connections;
+
+        /**
+         * Constructor with all the fields
+         *
+         * @param routesVersion the version of the routes
+         * @param versions the versions of the schedules by route-month
+         * @param connections the connections found
+         */
+        private Entry(long routesVersion, Map<RouteMonth, Long> versions, List<FlightConnection> connections) {
+            this.routesVersion = routesVersion;
+            this.versions = versions;
+            this.connections = connections;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.cache;
+
+import com.github.pnavais.flights.model.ConnectionQuery;
+import com.github.pnavais.flights.model.RouteMonth;
+import com.github.pnavais.flights.util.DecayedCounts;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the decayed frequency of the pairs of airports searched
+ * and of the monthly schedules read by the searches, to find the
+ * hottest ones worth fetching ahead.
+ */
+@Component
+public class PopularityTracker {
+
+    /** The maximum number of pairs or route-months tracked */
+    @Value("${schedules.prefetch.max-tracked:10000}")
+    private int maxTracked;
+
+    /** The frequency of the pairs of airports (origin and destination) */
+    private DecayedCounts<List<String>> pairs;
+
+    /** The frequency of the route-months */
+    private DecayedCounts<RouteMonth> routeMonths;
+
+    /**
+     * Creates the counts once the
+     * configuration has been injected.
+     */
+    @PostConstruct
+    public void init() {
+        this.pairs = new DecayedCounts<>(maxTracked);
+        this.routeMonths = new DecayedCounts<>(maxTracked);
+    }
+
+    /**
+     * Records a search, counting every pair of
+     * its departure and arrival airports.
+     *
+     * @param query the criteria of the search
+     */
+    public void recordQuery(ConnectionQuery query) {
+        for (String origin : query.getOrigins()) {
+            for (String destination : query.getDestinations()) {
+                if (!origin.equals(destination)) {
+                    pairs.add(Arrays.asList(origin, destination));
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the read of the schedule of a route-month
+     *
+     * @param routeMonth the route-month
+     */
+    public void recordRouteMonth(RouteMonth routeMonth) {
+        routeMonths.add(routeMonth);
+    }
+
+    /**
+     * Decays all the frequencies by the given factor
+     *
+     * @param factor the factor applied (0 to 1)
+     */
+    public void decay(double factor) {
+        pairs.decay(factor);
+        routeMonths.decay(factor);
+    }
+
+    /**
+     * Retrieves the most searched pairs of airports
+     *
+     * @param n the maximum number of pairs
+     * @return the frequency of the top pairs (origin and destination), highest first
+     */
+    public Map<List<String>, Double> topPairs(int n) {
+        return pairs.top(n);
+    }
+
+    /**
+     * Retrieves the most read route-months
+     *
+     * @param n the maximum number of route-months
+     * @return the frequency of the top route-months, highest first
+     */
+    public Map<RouteMonth, Double> topRouteMonths(int n) {
+        return routeMonths.top(n);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.cache;
+
+import com.github.pnavais.flights.api.SchedulesProvider;
+import com.github.pnavais.flights.connections.FetchPlanner;
+import com.github.pnavais.flights.model.ConnectionQuery;
+import com.github.pnavais.flights.model.RouteMonth;
+import com.github.pnavais.flights.util.DecayedCounts;
+import com.github.pnavais.flights.util.ExecutorUtils;
+import com.github.pnavais.flights.util.RequestPriority;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Refreshes ahead the monthly schedules most likely to be searched,
+ * so that popular routes are rarely fetched while a user waits.
+ * <p>
+ * Periodically, the frequencies kept by the {@link PopularityTracker}
+ * are decayed and every route-month of the coming weeks is scored by
+ * how often it was read, plus how often the pairs of airports whose
+ * direct and one-stop paths fly it were searched. The hottest ones
+ * about to expire (or not cached) are fetched again by a dedicated,
+ * small executor so that prefetching never takes the threads fetching
+ * the schedules of the searches, and are requested upstream with the
+ * lowest priority.
+ * </p>
+ */
+@Component
+public class SchedulePrefetcher {
+
+    /** The logger */
+    private static final Logger logger = LoggerFactory.getLogger(SchedulePrefetcher.class);
+
+    /** The number of stops of the paths of the pairs searched */
+    private static final int PAIR_MAX_STOPS = 1;
+
+    /** The frequency of the searches and schedules */
+    @Autowired
+    private PopularityTracker popularityTracker;
+
+    /** The planner of the schedules of the pairs searched */
+    @Autowired
+    private FetchPlanner fetchPlanner;
+
+    /** The schedules provider */
+    @Autowired
+    private SchedulesProvider<String> schedulesProvider;
+
+    /** The cache of monthly schedules */
+    @Autowired
+    private SchedulesCache schedulesCache;
+
+    /** The registry of the meters */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** Whether the schedules are prefetched */
+    @Value("${schedules.prefetch.enabled:true}")
+    private boolean enabled;
+
+    /** The time between prefetches in minutes */
+    @Value("${schedules.prefetch.interval:5}")
+    private long intervalMinutes;
+
+    /** The time for the frequencies to halve in minutes */
+    @Value("${schedules.prefetch.half-life:60}")
+    private long halfLifeMinutes;
+
+    /** The maximum number of route-months (and pairs) considered per prefetch */
+    @Value("${schedules.prefetch.top:100}")
+    private int topCount;
+
+    /** The number of weeks ahead whose schedules are prefetched */
+    @Value("${schedules.prefetch.horizon:4}")
+    private int horizonWeeks;
+
+    /** The time before expiring from which schedules are refreshed in minutes */
+    @Value("${schedules.prefetch.refresh-ahead:10}")
+    private long refreshAheadMinutes;
+
+    /** The maximum number of schedules prefetched concurrently */
+    @Value("${schedules.prefetch.concurrency:2}")
+    private int concurrency;
+
+    /** The executor prefetching the schedules */
+    private ExecutorService prefetchExecutor;
+
+    /** The number of schedules prefetched */
+    private Counter prefetches;
+
+    /**
+     * Creates the executor and the meters
+     */
+    @PostConstruct
+    public void init() {
+        this.prefetchExecutor = ExecutorUtils.newBoundedExecutor("prefetch", concurrency, topCount);
+        this.prefetches = Counter.builder("flights.prefetch.schedules")
+                .description("Monthly schedules fetched ahead")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Releases the executor on bean destruction
+     */
+    @PreDestroy
+    public void destroy() {
+        ExecutorUtils.shutdown(prefetchExecutor);
+    }
+
+    /**
+     * Decays the frequencies and refreshes the
+     * hottest schedules about to expire.
+     */
+    @Scheduled(initialDelayString = "#{${schedules.prefetch.interval:5} * 60000}",
+            fixedDelayString = "#{${schedules.prefetch.interval:5} * 60000}")
+    public void prefetch() {
+        if (!enabled) {
+            return;
+        }
+
+        popularityTracker.decay(DecayedCounts.factor(intervalMinutes, halfLifeMinutes));
+
+        LocalDateTime from = LocalDateTime.now();
+        LocalDateTime to = from.plusWeeks(horizonWeeks);
+        long refreshAhead = TimeUnit.MINUTES.toMillis(refreshAheadMinutes);
+
+        List<RouteMonth> expiring = score(from, to).entrySet().stream()
+                .sorted(Map.Entry.<RouteMonth, Double>comparingByValue().reversed())
+                .limit(topCount)
+                .map(Map.Entry::getKey)
+                .filter(routeMonth -> schedulesCache.expiresWithin(routeMonth, refreshAhead))
+                .collect(Collectors.toList());
+
+        logger.info("Prefetching {} hot schedules from {} to {}", expiring.size(), from, to);
+
+        RequestPriority.PREFETCH.run(() -> expiring.forEach(routeMonth -> schedulesProvider.refreshAsync(
+                routeMonth.getOrigin(), routeMonth.getDestination(),
+                YearMonth.of(routeMonth.getYear(), routeMonth.getMonth()), prefetchExecutor)
+                .thenAccept(fetched -> {
+                    if (fetched) {
+                        prefetches.increment();
+                    }
+                })));
+    }
+
+    /**
+     * Scores the route-months of the given time frame by their frequency
+     * and the frequency of the pairs of airports whose paths fly them.
+     *
+     * @param from the start of the time frame
+     * @param to the end of the time frame
+     * @return the scores by route-month
+     */
+    private Map<RouteMonth, Double> score(LocalDateTime from, LocalDateTime to) {
+        Map<RouteMonth, Double> scores = new HashMap<>();
+
+        popularityTracker.topRouteMonths(topCount).forEach((routeMonth, count) -> {
+            if (!routeMonth.getEnd().isBefore(from) && !routeMonth.getStart().isAfter(to)) {
+                scores.merge(routeMonth, count, Double::sum);
+            }
+        });
+
+        popularityTracker.topPairs(topCount).forEach((pair, count) -> {
+            ConnectionQuery query = new ConnectionQuery(pair.get(0), pair.get(1), from, to, PAIR_MAX_STOPS,
+                    null, ConnectionQuery.UNLIMITED);
+            fetchPlanner.plan(Collections.singleton(query))
+                    .forEach(routeMonth -> scores.merge(routeMonth, count, Double::sum));
+        });
+
+        return scores;
+    }
+}
@@ -0,0 +1,587 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.cache;
+
+import com.github.pnavais.flights.model.RouteMonth;
+import com.github.pnavais.flights.model.Timetable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Persistent store of the monthly schedules fetched from the
+ * Schedules API, allowing a restarted node to serve warm data.
+ * <p>
+ * Schedules are appended to a log file as records keyed by route-month
+ * and tagged with the time they were fetched, the latest record of a
+ * route-month superseding the previous ones. The file is indexed lazily
+ * on first access and the records are only read on demand. Superseded
+ * and expired records are compacted away once they outnumber the
+ * latest ones, both when indexing and while appending.
+ * </p>
+ * <p>
+ * Stale schedules are only served after a restart : records stored by
+ * a previous run are served up to the maximum age (and refreshed in
+ * background), while records stored by the running node are served
+ * only until they are due for refresh.
+ * </p>
+ * Record layout :
+ * <pre>
+ * int    length of the record (excluding this field)
+ * long   fetched at (epoch millis)
+ * short  year
+ * byte   month
+ * byte   length of origin, origin (UTF-8)
+ * byte   length of destination, destination (UTF-8)
+ * int    number of flights
+ * int[]  departure, arrival, number of each flight
+ * </pre>
+ */
+@Component
+public class ScheduleSnapshotStore {
+
+    /** The logger */
+    private static final Logger logger = LoggerFactory.getLogger(ScheduleSnapshotStore.class);
+
+    /** Maximum size of a record header */
+    private static final int MAX_HEADER_BYTES = 4 + 8 + 2 + 1 + 1 + 255 + 1 + 255 + 4;
+
+    /** Size of the data of a flight */
+    private static final int FLIGHT_BYTES = 3 * 4;
+
+    /** Enables/Disables the store */
+    @Value("${schedules.snapshot.enabled:true}")
+    private volatile boolean enabled;
+
+    /** The location of the store */
+    @Value("${schedules.snapshot.file:${java.io.tmpdir}/interconnecting-flights/schedules.snapshot}")
+    private String file;
+
+    /** Age in minutes after which a stored schedule is refreshed */
+    @Value("${schedules.snapshot.refresh-after:60}")
+    private long refreshAfterMinutes;
+
+    /** Age in minutes after which a schedule stored by a previous run is no longer served */
+    @Value("${schedules.snapshot.max-age:1440}")
+    private long maxAgeMinutes;
+
+    /** The position of the latest record of each route-month */
+    private final Map<RouteMonth, RecordRef> index = new ConcurrentHashMap<>();
+
+    /** The store file channel */
+    private volatile FileChannel channel;
+
+    /** The number of records in the store file */
+    private int records;
+
+    /** Guards the file against reads while compacting */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Retrieves the stored schedule of the given route-month unless
+     * it is older than the maximum age if stored by a previous run,
+     * or due for refresh if stored by the running node.
+     *
+     * @param routeMonth the route-month
+     * @return the stored schedule or null if not present
+     */
+    public Snapshot get(RouteMonth routeMonth) {
+        if (!enabled || open() == null) {
+            return null;
+        }
+
+        lock.readLock().lock();
+        try {
+            FileChannel current = channel;
+            RecordRef ref = index.get(routeMonth);
+            if (current == null || ref == null || ageOf(ref.fetchedAt) > TimeUnit.MINUTES.toMillis(ref.restored
+                    ? maxAgeMinutes : refreshAfterMinutes)) {
+                return null;
+            }
+
+            try {
+                return new Snapshot(readTimetable(current, ref.position, routeMonth), ref.fetchedAt);
+            } catch (IOException e) {
+                logger.error("Error reading stored schedule for {} : {}", routeMonth, e.getLocalizedMessage());
+                index.remove(routeMonth, ref);
+                return null;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Appends the schedule of the given route-month to the store,
+     * compacting it once most of its records are superseded.
+     *
+     * @param routeMonth the route-month
+     * @param timetable the schedule
+     * @param fetchedAt the time it was fetched (epoch millis)
+     */
+    public void put(RouteMonth routeMonth, Timetable<String> timetable, long fetchedAt) {
+        if (!enabled || open() == null) {
+            return;
+        }
+
+        ByteBuffer record = encode(routeMonth, timetable, fetchedAt);
+
+        synchronized (this) {
+            try {
+                long position = channel.size();
+                while (record.hasRemaining()) {
+                    channel.write(record, position + record.position());
+                }
+                index.put(routeMonth, new RecordRef(position, fetchedAt, false));
+                records++;
+
+                if (needsCompaction()) {
+                    compact();
+                }
+            } catch (IOException e) {
+                logger.error("Error storing schedule for {} : {}", routeMonth, e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Checks whether a stored schedule is old enough
+     * to be refreshed.
+     *
+     * @param snapshot the stored schedule
+     * @return true if it must be refreshed, false otherwise
+     */
+    public boolean needsRefresh(Snapshot snapshot) {
+        return ageOf(snapshot.getFetchedAt()) > TimeUnit.MINUTES.toMillis(refreshAfterMinutes);
+    }
+
+    /**
+     * Retrieves the number of route-months stored
+     *
+     * @return the number of route-months
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Retrieves the size of the store file
+     *
+     * @return the size in bytes or 0 if not opened
+     */
+    public synchronized long fileSize() {
+        try {
+            return (channel != null) ? channel.size() : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Closes the store file on bean destruction
+     */
+    @PreDestroy
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Error closing schedules store : {}", e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Opens and indexes the store on first access
+     *
+     * @return the store channel or null if it could not be opened
+     */
+    private FileChannel open() {
+        if (channel == null) {
+            synchronized (this) {
+                if (channel == null && enabled) {
+                    try {
+                        Path path = Paths.get(file);
+                        if (path.getParent() != null) {
+                            Files.createDirectories(path.getParent());
+                        }
+                        channel = index(path);
+                        if (needsCompaction()) {
+                            compact();
+                        }
+                        logger.info("Schedules store loaded from {} : {} route-months", path, index.size());
+                    } catch (IOException e) {
+                        logger.error("Error opening schedules store {}, disabling it : {}", file,
+                                e.getLocalizedMessage());
+                        enabled = false;
+                    }
+                }
+            }
+        }
+        return channel;
+    }
+
+    /**
+     * Builds the index of the latest records in the given store,
+     * discarding any truncated or corrupted record at the end of
+     * the file.
+     *
+     * @param path the store location
+     * @return the opened channel
+     * @throws IOException on errors reading the store
+     */
+    private FileChannel index(Path path) throws IOException {
+        FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        long size = fileChannel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(MAX_HEADER_BYTES);
+
+        while (position + 4 <= size) {
+            header.clear();
+            while (header.hasRemaining() && fileChannel.read(header, position + header.position()) > 0) {
+                // Read as much of the header as available
+            }
+            header.flip();
+
+            int length = header.getInt();
+            if (length <= 0 || position + 4 + length > size) {
+                break;
+            }
+
+            long fetchedAt = header.getLong();
+            RouteMonth routeMonth;
+            try {
+                routeMonth = decodeKey(header);
+            } catch (RuntimeException e) {
+                logger.warn("Corrupted record at {} in {} : {}", position, path, e.toString());
+                break;
+            }
+            index.merge(routeMonth, new RecordRef(position, fetchedAt, true),
+                    (previous, latest) -> latest.fetchedAt >= previous.fetchedAt ? latest : previous);
+
+            position += 4 + length;
+            records++;
+        }
+
+        if (position < size) {
+            logger.warn("Discarding {} bytes of truncated or corrupted records in {}", size - position, path);
+            fileChannel.truncate(position);
+        }
+
+        return fileChannel;
+    }
+
+    /**
+     * Checks whether the superseded records outnumber the latest
+     * ones, so that compacting costs a constant time per record
+     * appended.
+     *
+     * @return true if the store must be compacted, false otherwise
+     */
+    private boolean needsCompaction() {
+        return records > 2 * index.size();
+    }
+
+    /**
+     * Rewrites the store keeping only the latest record of each
+     * route-month, dropping those older than the maximum age or
+     * unreadable. The index and the channel are only replaced once
+     * the rewritten file is in place, the store being left as it
+     * was otherwise. Reads wait for the compaction to complete.
+     *
+     * @throws IOException on errors rewriting the store
+     */
+    private void compact() throws IOException {
+        Path path = Paths.get(file);
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        long maxAge = TimeUnit.MINUTES.toMillis(maxAgeMinutes);
+        Map<RouteMonth, RecordRef> compactedIndex = new HashMap<>();
+
+        lock.writeLock().lock();
+        try {
+            try {
+                try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    for (Map.Entry<RouteMonth, RecordRef> entry : index.entrySet()) {
+                        RecordRef ref = entry.getValue();
+                        if (ageOf(ref.fetchedAt) > maxAge) {
+                            continue;
+                        }
+
+                        Timetable<String> timetable;
+                        try {
+                            timetable = readTimetable(channel, ref.position, entry.getKey());
+                        } catch (IOException e) {
+                            logger.warn("Dropping unreadable record of {} : {}", entry.getKey(),
+                                    e.getLocalizedMessage());
+                            continue;
+                        }
+
+                        ByteBuffer record = encode(entry.getKey(), timetable, ref.fetchedAt);
+                        long position = target.position();
+                        while (record.hasRemaining()) {
+                            target.write(record);
+                        }
+                        compactedIndex.put(entry.getKey(), new RecordRef(position, ref.fetchedAt, ref.restored));
+                    }
+                }
+
+                channel.close();
+                try {
+                    Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    reopen(path);
+                    throw e;
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(compacted);
+                throw e;
+            }
+
+            index.clear();
+            index.putAll(compactedIndex);
+            records = index.size();
+            reopen(path);
+            logger.info("Schedules store {} compacted to {} records", path, records);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reopens the store file closed for compaction. On failure the
+     * store is reset, so that it is opened and indexed again on the
+     * next access.
+     *
+     * @param path the store location
+     * @throws IOException on errors opening the store
+     */
+    private void reopen(Path path) throws IOException {
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            channel = null;
+            index.clear();
+            records = 0;
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the timetable of the record at the given position
+     *
+     * @param fileChannel the store channel
+     * @param position the record position
+     * @param routeMonth the route-month of the record
+     * @return the timetable
+     * @throws IOException on errors reading or decoding the record
+     */
+    private static Timetable<String> readTimetable(FileChannel fileChannel, long position, RouteMonth routeMonth)
+            throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(fileChannel, length, position);
+        length.flip();
+
+        try {
+            ByteBuffer record = ByteBuffer.allocate(length.getInt());
+            readFully(fileChannel, record, position + 4);
+            record.flip();
+
+            record.getLong();
+            decodeKey(record);
+
+            int count = record.getInt();
+            int[] departures = new int[count];
+            int[] arrivals = new int[count];
+            int[] numbers = new int[count];
+            for (int i = 0; i < count; i++) {
+                departures[i] = record.getInt();
+                arrivals[i] = record.getInt();
+                numbers[i] = record.getInt();
+            }
+
+            return Timetable.of(routeMonth.getOrigin(), routeMonth.getDestination(), departures, arrivals, numbers);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupted record at " + position + " : " + e, e);
+        }
+    }
+
+    /**
+     * Fills the buffer reading from the given position
+     *
+     * @param fileChannel the store channel
+     * @param buffer the buffer to fill
+     * @param position the position to read from
+     * @throws IOException on errors reading the store
+     */
+    private static void readFully(FileChannel fileChannel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (fileChannel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of schedules store");
+            }
+        }
+    }
+
+    /**
+     * Encodes the record of a schedule
+     *
+     * @param routeMonth the route-month
+     * @param timetable the schedule
+     * @param fetchedAt the time it was fetched
+     * @return the encoded record ready to be written
+     */
+    private static ByteBuffer encode(RouteMonth routeMonth, Timetable<String> timetable, long fetchedAt) {
+        byte[] origin = routeMonth.getOrigin().getBytes(StandardCharsets.UTF_8);
+        byte[] destination = routeMonth.getDestination().getBytes(StandardCharsets.UTF_8);
+        int length = 8 + 2 + 1 + 1 + origin.length + 1 + destination.length + 4 + timetable.size() * FLIGHT_BYTES;
+
+        ByteBuffer record = ByteBuffer.allocate(4 + length);
+        record.putInt(length);
+        record.putLong(fetchedAt);
+        record.putShort((short) routeMonth.getYear());
+        record.put((byte) routeMonth.getMonth());
+        record.put((byte) origin.length).put(origin);
+        record.put((byte) destination.length).put(destination);
+        record.putInt(timetable.size());
+        for (int i = 0; i < timetable.size(); i++) {
+            record.putInt(timetable.getDeparture(i));
+            record.putInt(timetable.getArrival(i));
+            record.putInt(timetable.getNumber(i));
+        }
+        record.flip();
+
+        return record;
+    }
+
+    /**
+     * Decodes the route-month of a record
+     *
+     * @param buffer the buffer positioned at the year of the record
+     * @return the route-month
+     * @throws java.nio.BufferUnderflowException if the record is truncated
+     * @throws java.time.DateTimeException if the year or month are invalid
+     */
+    private static RouteMonth decodeKey(ByteBuffer buffer) {
+        YearMonth yearMonth = YearMonth.of(buffer.getShort(), buffer.get());
+        byte[] origin = new byte[buffer.get() & 0xFF];
+        buffer.get(origin);
+        byte[] destination = new byte[buffer.get() & 0xFF];
+        buffer.get(destination);
+        return RouteMonth.of(new String(origin, StandardCharsets.UTF_8),
+                new String(destination, StandardCharsets.UTF_8), yearMonth.getYear(), yearMonth.getMonthValue());
+    }
+
+    /**
+     * Computes the age of a record
+     *
+     * @param fetchedAt the time the record was fetched
+     * @return the age in milliseconds
+     */
+    private static long ageOf(long fetchedAt) {
+        return System.currentTimeMillis() - fetchedAt;
+    }
+
+    /**
+     * The position and fetch time of a record
+     */
+    private static final class RecordRef {
+
+        /** The position of the record */
+        private final long position;
+
+        /** The time the record was fetched */
+        private final long fetchedAt;
+
+        /** Whether the record was stored by a previous run */
+        private final boolean restored;
+
+        /**
+         * Constructor with all the fields
+         *
+         * @param position the position of the record
+         * @param fetchedAt the time the record was fetched
+         * @param restored whether the record was stored by a previous run
+         */
+        private RecordRef(long position, long fetchedAt, boolean restored) {
+            this.position = position;
+            this.fetchedAt = fetchedAt;
+            this.restored = restored;
+        }
+    }
+
+    /**
+     * A stored schedule with the time it was fetched
+     */
+    public static final class Snapshot {
+
+        /** The schedule */
+        private final Timetable<String> timetable;
+
+        /** The time it was fetched (epoch millis) */
+        private final long fetchedAt;
+
+        /**
+         * Constructor with all the fields
+         *
+         * @param timetable the schedule
+         * @param fetchedAt the time it was fetched
+         */
+        public Snapshot(Timetable<String> timetable, long fetchedAt) {
+            this.timetable = timetable;
+            this.fetchedAt = fetchedAt;
+        }
+
+        /**
+         * Retrieves the schedule
+         *
+         * @return the schedule
+         */
+        public Timetable<String> getTimetable() {
+            return timetable;
+        }
+
+        /**
+         * Retrieves the time the schedule was fetched
+         *
+         * @return the time in epoch millis
+         */
+        public long getFetchedAt() {
+            return fetchedAt;
+        }
+    }
+}
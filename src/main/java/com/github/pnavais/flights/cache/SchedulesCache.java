@@ -0,0 +1,183 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.pnavais.flights.model.RouteMonth;
+import com.github.pnavais.flights.model.Timetable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded in-memory cache of the monthly schedules retrieved
+ * from the Schedules API, keyed by route and month and stored
+ * in their compact {@link Timetable} form.
+ * <p>
+ * Entries are evicted using a size-bounded frequency/recency
+ * policy (Window TinyLFU) and expire after a configurable
+ * time-to-live since they were stored.
+ * </p>
+ * <p>
+ * Every schedule is versioned by the time it was fetched from
+ * the Schedules API, so that results computed from it can be
+ * invalidated once refreshed. Schedules restored from a snapshot
+ * keep their version, hence may be older than their entry.
+ * </p>
+ */
+@Component
+public class SchedulesCache {
+
+    /** The version of the route-months not cached */
+    public static final long NO_VERSION = -1;
+
+    /** The logger */
+    private static final Logger logger = LoggerFactory.getLogger(SchedulesCache.class);
+
+    /** The maximum number of route-months stored */
+    @Value("${schedules.cache.size:10000}")
+    private long maximumSize;
+
+    /** The time-to-live of the entries in minutes */
+    @Value("${schedules.cache.ttl:60}")
+    private long ttlMinutes;
+
+    /** The cache storage */
+    private Cache<RouteMonth, Entry> cache;
+
+    /**
+     * Creates the cache storage once the
+     * configuration has been injected.
+     */
+    @PostConstruct
+    public void init() {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttlMinutes, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+
+        logger.info("Schedules cache : maximum size {}, TTL {} minutes", maximumSize, ttlMinutes);
+    }
+
+    /**
+     * Retrieves the cached schedule for the given route-month
+     *
+     * @param routeMonth the route-month
+     * @return the cached schedule or null if not present
+     */
+    public Timetable<String> get(RouteMonth routeMonth) {
+        Entry entry = cache.getIfPresent(routeMonth);
+        return (entry != null) ? entry.schedule : null;
+    }
+
+    /**
+     * Retrieves the version of the cached schedule
+     * for the given route-month
+     *
+     * @param routeMonth the route-month
+     * @return the time the schedule was fetched or {@link #NO_VERSION} if not present
+     */
+    public long getVersion(RouteMonth routeMonth) {
+        Entry entry = cache.getIfPresent(routeMonth);
+        return (entry != null) ? entry.fetchedAt : NO_VERSION;
+    }
+
+    /**
+     * Checks whether the cached schedule for the given route-month
+     * expires within the given time, counted since it was stored.
+     *
+     * @param routeMonth the route-month
+     * @param millis the time in milliseconds
+     * @return true if expiring or not present, false otherwise
+     */
+    public boolean expiresWithin(RouteMonth routeMonth, long millis) {
+        Entry entry = cache.getIfPresent(routeMonth);
+        return (entry == null)
+                || (entry.storedAt + TimeUnit.MINUTES.toMillis(ttlMinutes) - System.currentTimeMillis() < millis);
+    }
+
+    /**
+     * Stores the schedule of the given route-month
+     *
+     * @param routeMonth the route-month
+     * @param schedule the schedule
+     * @param fetchedAt the time the schedule was fetched from the Schedules API
+     */
+    public void put(RouteMonth routeMonth, Timetable<String> schedule, long fetchedAt) {
+        cache.put(routeMonth, new Entry(schedule, fetchedAt, System.currentTimeMillis()));
+    }
+
+    /**
+     * Discards all the cached schedules
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Retrieves the approximate number of cached route-months
+     *
+     * @return the number of cached entries
+     */
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * Retrieves the hit/miss/eviction statistics of the cache
+     *
+     * @return the cache statistics
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * A cached schedule, its version and the
+     * time it was stored
+     */
+    private static final class Entry {
+
+        /** The schedule */
+        private final Timetable<String> schedule;
+
+        /** The time the schedule was fetched */
+        private final long fetchedAt;
+
+        /** The time the entry was stored, from which it expires */
+        private final long storedAt;
+
+        /**
+         * Constructor with all the fields
+         *
+         * @param schedule the schedule
+         * @param fetchedAt the time the schedule was fetched
+         * @param storedAt the time the entry was stored
+         */
+        private Entry(Timetable<String> schedule, long fetchedAt, long storedAt) {
+            this.schedule = schedule;
+            this.fetchedAt = fetchedAt;
+            this.storedAt = storedAt;
+        }
+    }
+}
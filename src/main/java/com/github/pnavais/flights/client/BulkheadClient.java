@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.client;
+
+import com.github.pnavais.flights.util.RequestPriority;
+import feign.Client;
+import feign.Request;
+import feign.Response;
+
+import java.io.IOException;
+
+/**
+ * Decorates a Feign client admitting every request through
+ * the {@link PriorityBulkhead} with the priority of the
+ * current thread. The permit is held until the body of
+ * the response is consumed and closed.
+ */
+public class BulkheadClient implements Client {
+
+    /** The decorated client */
+    private final Client delegate;
+
+    /** The admission control of the requests */
+    private final PriorityBulkhead bulkhead;
+
+    /**
+     * Creates the decorator of the given client
+     *
+     * @param delegate the decorated client
+     * @param bulkhead the admission control of the requests
+     */
+    public BulkheadClient(Client delegate, PriorityBulkhead bulkhead) {
+        this.delegate = delegate;
+        this.bulkhead = bulkhead;
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        RequestPriority priority = RequestPriority.current();
+        bulkhead.acquire(priority);
+
+        Response response = null;
+        try {
+            response = delegate.execute(request, options);
+        } finally {
+            if (response == null) {
+                bulkhead.release(priority);
+            }
+        }
+        return ReleasingBody.wrap(response, () -> bulkhead.release(priority));
+    }
+}
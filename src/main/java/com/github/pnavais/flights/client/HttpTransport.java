@@ -0,0 +1,241 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.client;
+
+import com.github.pnavais.flights.util.RequestPriority;
+import feign.Request;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The HTTP transport shared by all the upstream clients, so that
+ * connections, TLS sessions and threads are pooled across them.
+ * <p>
+ * HTTP/2 is negotiated where available and responses are gzipped
+ * transparently (the client asks for gzip and inflates the body).
+ * As upstream calls are synchronous, the concurrent requests to
+ * every host are bounded by a semaphore, waiting up to the connect
+ * timeout for a permit.
+ * </p>
+ * <p>
+ * Requests are admitted by a {@link PriorityBulkhead}, so that
+ * interactive searches go first, then batch searches and last
+ * background prefetches, within a global limit of requests in
+ * flight.
+ * </p>
+ */
+@Component
+public class HttpTransport {
+
+    /** The logger instance */
+    private static final Logger logger = LoggerFactory.getLogger(HttpTransport.class);
+
+    /** The proxy for client requests */
+    @Autowired
+    private ProxyConfig proxyBuilder;
+
+    /** The registry of the pool gauges */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** The maximum number of idle connections kept in the pool */
+    @Value("${http.pool.max-idle:16}")
+    private int maxIdleConnections;
+
+    /** The time idle connections are kept alive (seconds) */
+    @Value("${http.pool.keep-alive:300}")
+    private long keepAliveSeconds;
+
+    /** The maximum number of concurrent requests per host */
+    @Value("${http.max-requests-per-host:32}")
+    private int maxRequestsPerHost;
+
+    /** The connect timeout (ms) */
+    @Value("${http.connect-timeout:2000}")
+    private long connectTimeout;
+
+    /** The read timeout (ms) */
+    @Value("${http.read-timeout:10000}")
+    private long readTimeout;
+
+    /** The maximum number of upstream requests in flight */
+    @Value("${http.bulkhead.max-concurrent:32}")
+    private int bulkheadMaxConcurrent;
+
+    /** The maximum number of interactive requests in flight */
+    @Value("${http.bulkhead.interactive.max-concurrent:32}")
+    private int bulkheadInteractive;
+
+    /** The maximum number of batch requests in flight */
+    @Value("${http.bulkhead.batch.max-concurrent:16}")
+    private int bulkheadBatch;
+
+    /** The maximum number of prefetch requests in flight */
+    @Value("${http.bulkhead.prefetch.max-concurrent:4}")
+    private int bulkheadPrefetch;
+
+    /** The maximum wait of a request for admission (ms) */
+    @Value("${http.bulkhead.max-wait:5000}")
+    private long bulkheadMaxWait;
+
+    /** The admission control of the requests */
+    private PriorityBulkhead bulkhead;
+
+    /** The pool of connections */
+    private ConnectionPool connectionPool;
+
+    /** The permits of the concurrent requests by host */
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    /** The number of requests in flight */
+    private final AtomicInteger activeRequests = new AtomicInteger();
+
+    /** The shared client, created on first use */
+    private OkHttpClient httpClient;
+
+    /**
+     * Creates the pool of connections and
+     * registers its gauges.
+     */
+    @PostConstruct
+    public void init() {
+        this.connectionPool = new ConnectionPool(maxIdleConnections, keepAliveSeconds, TimeUnit.SECONDS);
+
+        Gauge.builder("flights.http.pool.connections", connectionPool,
+                p -> p.connectionCount() - p.idleConnectionCount())
+                .description("Connections of the upstream pool")
+                .tag("state", "active")
+                .register(meterRegistry);
+        Gauge.builder("flights.http.pool.connections", connectionPool, ConnectionPool::idleConnectionCount)
+                .description("Connections of the upstream pool")
+                .tag("state", "idle")
+                .register(meterRegistry);
+        Gauge.builder("flights.http.requests.active", activeRequests, AtomicInteger::get)
+                .description("Upstream requests in flight")
+                .register(meterRegistry);
+
+        Map<RequestPriority, Integer> limits = new EnumMap<>(RequestPriority.class);
+        limits.put(RequestPriority.INTERACTIVE, bulkheadInteractive);
+        limits.put(RequestPriority.BATCH, bulkheadBatch);
+        limits.put(RequestPriority.PREFETCH, bulkheadPrefetch);
+        this.bulkhead = new PriorityBulkhead(bulkheadMaxConcurrent, limits, bulkheadMaxWait, meterRegistry);
+    }
+
+    /**
+     * Closes the pooled connections
+     */
+    @PreDestroy
+    public void destroy() {
+        connectionPool.evictAll();
+    }
+
+    /**
+     * Retrieves the shared client, creating it on first use
+     * once the proxy configuration is available.
+     *
+     * @return the shared client
+     */
+    public synchronized OkHttpClient getClient() {
+        if (httpClient == null) {
+            httpClient = new OkHttpClient.Builder()
+                    .proxy(proxyBuilder.getProxy())
+                    .connectionPool(connectionPool)
+                    .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                    .connectTimeout(connectTimeout, TimeUnit.MILLISECONDS)
+                    .readTimeout(readTimeout, TimeUnit.MILLISECONDS)
+                    .addInterceptor(this::limitPerHost)
+                    .build();
+
+            logger.info("HTTP transport created : {} idle connections kept {}s, {} requests per host, " +
+                    "timeouts {}ms/{}ms", maxIdleConnections, keepAliveSeconds, maxRequestsPerHost,
+                    connectTimeout, readTimeout);
+        }
+        return httpClient;
+    }
+
+    /**
+     * Retrieves the options of the Feign requests matching the
+     * timeouts of the shared client, as Feign rebuilds the client
+     * for every request whose options differ.
+     *
+     * @return the request options
+     */
+    public Request.Options getRequestOptions() {
+        return new Request.Options((int) connectTimeout, (int) readTimeout);
+    }
+
+    /**
+     * Retrieves the admission control of the
+     * requests shared by all the clients.
+     *
+     * @return the bulkhead
+     */
+    public PriorityBulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    /**
+     * Proceeds with the request once a permit
+     * of its host is available.
+     *
+     * @param chain the chain of the request
+     * @return the response
+     * @throws IOException if no permit is available in time
+     */
+    private Response limitPerHost(Interceptor.Chain chain) throws IOException {
+        String host = chain.request().url().host();
+        Semaphore permits = hostPermits.computeIfAbsent(host, h -> new Semaphore(maxRequestsPerHost));
+
+        try {
+            if (!permits.tryAcquire(connectTimeout, TimeUnit.MILLISECONDS)) {
+                throw new UpstreamCapacityException("Too many concurrent requests to " + host);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a request to " + host);
+        }
+
+        activeRequests.incrementAndGet();
+        try {
+            return chain.proceed(chain.request());
+        } finally {
+            activeRequests.decrementAndGet();
+            permits.release();
+        }
+    }
+}
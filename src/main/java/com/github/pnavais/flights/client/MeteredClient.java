@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.client;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decorates a Feign client timing every request sent upstream,
+ * tagged by client, HTTP method and status (IO_ERROR when no
+ * response is received). Requests are timed until the body of
+ * the response is consumed and closed.
+ */
+public class MeteredClient implements Client {
+
+    /** The name of the upstream requests timer */
+    public static final String UPSTREAM_REQUESTS = "flights.upstream.requests";
+
+    /** The status of the requests failing without response */
+    private static final String IO_ERROR = "IO_ERROR";
+
+    /** The decorated client */
+    private final Client delegate;
+
+    /** The name of the client */
+    private final String name;
+
+    /** The registry of the timers */
+    private final MeterRegistry meterRegistry;
+
+    /** The timers by HTTP method and status */
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the decorator of the given client
+     *
+     * @param delegate the decorated client
+     * @param name the name of the client
+     * @param meterRegistry the registry of the timers
+     */
+    public MeteredClient(Client delegate, String name, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.name = name;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        long start = System.nanoTime();
+        Response response;
+
+        try {
+            response = delegate.execute(request, options);
+        } catch (IOException | RuntimeException e) {
+            timer(request.method(), IO_ERROR).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+
+        Timer timer = timer(request.method(), String.valueOf(response.status()));
+        return ReleasingBody.wrap(response, () -> timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Retrieves the timer of the requests with the given
+     * method and status, registering it on first use.
+     *
+     * @param method the HTTP method
+     * @param status the status of the response
+     * @return the timer
+     */
+    private Timer timer(String method, String status) {
+        return timers.computeIfAbsent(method + " " + status, key -> Timer.builder(UPSTREAM_REQUESTS)
+                .description("Requests sent to the upstream APIs")
+                .tag("client", name)
+                .tag("method", method)
+                .tag("status", status)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+}
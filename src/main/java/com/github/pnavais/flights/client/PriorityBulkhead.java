@@ -0,0 +1,270 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.client;
+
+import com.github.pnavais.flights.util.RequestPriority;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control of the upstream requests by priority. The
+ * requests in flight are bounded globally and by priority, and
+ * requests over the limits wait in a queue per priority : once
+ * a request completes, the waiting requests of the highest
+ * priority with room left are admitted first, in arrival order.
+ * <p>
+ * Requests waiting longer than the maximum wait are rejected,
+ * and the wait of every admitted request is timed by priority.
+ * </p>
+ */
+public class PriorityBulkhead {
+
+    /** The priorities, highest first */
+    private static final RequestPriority[] PRIORITIES = RequestPriority.values();
+
+    /** The maximum number of requests in flight */
+    private final int maxConcurrent;
+
+    /** The maximum number of requests in flight by priority */
+    private final Map<RequestPriority, Integer> limits;
+
+    /** The maximum wait of a request (ms) */
+    private final long maxWait;
+
+    /** The number of requests in flight */
+    private int inFlight;
+
+    /** The number of requests in flight by priority */
+    private final int[] inFlightByPriority = new int[PRIORITIES.length];
+
+    /** The requests waiting by priority */
+    private final Map<RequestPriority, Deque<Waiter>> waiting = new EnumMap<>(RequestPriority.class);
+
+    /** The wait of the admitted requests by priority */
+    private final Map<RequestPriority, Timer> waits = new EnumMap<>(RequestPriority.class);
+
+    /**
+     * Constructor with all the fields
+     *
+     * @param maxConcurrent the maximum number of requests in flight
+     * @param limits the maximum number of requests in flight by priority
+     * @param maxWait the maximum wait of a request (ms)
+     * @param meterRegistry the registry of the meters
+     */
+    public PriorityBulkhead(int maxConcurrent, Map<RequestPriority, Integer> limits, long maxWait,
+                            MeterRegistry meterRegistry) {
+        this.maxConcurrent = maxConcurrent;
+        this.limits = new EnumMap<>(RequestPriority.class);
+        this.limits.putAll(limits);
+        this.maxWait = maxWait;
+
+        for (RequestPriority priority : PRIORITIES) {
+            String tag = priority.name().toLowerCase();
+            waiting.put(priority, new ArrayDeque<>());
+            waits.put(priority, Timer.builder("flights.upstream.queue.wait")
+                    .description("Wait of the upstream requests for admission")
+                    .tag("priority", tag)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+            Gauge.builder("flights.upstream.inflight", this, b -> b.getInFlight(priority))
+                    .description("Upstream requests in flight")
+                    .tag("priority", tag)
+                    .register(meterRegistry);
+            Gauge.builder("flights.upstream.queued", this, b -> b.getQueued(priority))
+                    .description("Upstream requests waiting for admission")
+                    .tag("priority", tag)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Waits until a request of the given priority can be sent.
+     * Every successful call must be followed by a {@link #release(RequestPriority)}.
+     *
+     * @param priority the priority of the request
+     * @throws IOException if not admitted within the maximum wait
+     */
+    public void acquire(RequestPriority priority) throws IOException {
+        long start = System.nanoTime();
+
+        synchronized (this) {
+            if (!hasPrecedingWaiters(priority) && hasRoom(priority)) {
+                admit(priority);
+            } else {
+                await(priority, start);
+            }
+        }
+
+        waits.get(priority).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Releases the admission of a completed request,
+     * admitting the waiting ones with room left.
+     *
+     * @param priority the priority of the request
+     */
+    public synchronized void release(RequestPriority priority) {
+        inFlight--;
+        inFlightByPriority[priority.ordinal()]--;
+        dispatch();
+    }
+
+    /**
+     * Checks whether any request is waiting for admission
+     *
+     * @return true if the capacity is exhausted, false otherwise
+     */
+    public synchronized boolean isSaturated() {
+        return waiting.values().stream().anyMatch(queue -> !queue.isEmpty());
+    }
+
+    /**
+     * Retrieves the number of requests in flight of the given priority
+     *
+     * @param priority the priority
+     * @return the number of requests
+     */
+    public synchronized int getInFlight(RequestPriority priority) {
+        return inFlightByPriority[priority.ordinal()];
+    }
+
+    /**
+     * Retrieves the number of requests waiting of the given priority
+     *
+     * @param priority the priority
+     * @return the number of requests
+     */
+    public synchronized int getQueued(RequestPriority priority) {
+        return waiting.get(priority).size();
+    }
+
+    /**
+     * Queues the request and waits until admitted,
+     * holding the monitor of the bulkhead.
+     *
+     * @param priority the priority of the request
+     * @param start the start of the wait (ns)
+     * @throws IOException if not admitted within the maximum wait
+     */
+    private void await(RequestPriority priority, long start) throws IOException {
+        Waiter waiter = new Waiter();
+        waiting.get(priority).add(waiter);
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxWait);
+
+        try {
+            while (!waiter.admitted) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    waiting.get(priority).remove(waiter);
+                    throw new UpstreamCapacityException("No upstream capacity for " + priority.name().toLowerCase() +
+                            " request after " + maxWait + "ms");
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        } catch (InterruptedException e) {
+            if (waiter.admitted) {
+                release(priority);
+            } else {
+                waiting.get(priority).remove(waiter);
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for upstream capacity");
+        }
+    }
+
+    /**
+     * Admits the waiting requests in priority order
+     * while there is room left.
+     */
+    private void dispatch() {
+        boolean admitted = false;
+
+        for (RequestPriority priority : PRIORITIES) {
+            Deque<Waiter> queue = waiting.get(priority);
+            while (!queue.isEmpty() && hasRoom(priority)) {
+                queue.poll().admitted = true;
+                admit(priority);
+                admitted = true;
+            }
+        }
+
+        if (admitted) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Checks whether requests of the given or higher
+     * priorities are waiting.
+     *
+     * @param priority the priority
+     * @return true if waiting requests precede it, false otherwise
+     */
+    private boolean hasPrecedingWaiters(RequestPriority priority) {
+        for (int p = 0; p <= priority.ordinal(); p++) {
+            if (!waiting.get(PRIORITIES[p]).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a request of the given priority fits
+     * within the global and the priority limits.
+     *
+     * @param priority the priority
+     * @return true if there is room, false otherwise
+     */
+    private boolean hasRoom(RequestPriority priority) {
+        return (inFlight < maxConcurrent)
+                && (inFlightByPriority[priority.ordinal()] < limits.getOrDefault(priority, maxConcurrent));
+    }
+
+    /**
+     * Counts a request of the given priority in flight
+     *
+     * @param priority the priority
+     */
+    private void admit(RequestPriority priority) {
+        inFlight++;
+        inFlightByPriority[priority.ordinal()]++;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PriorityBulkhead{inFlight=" + inFlight + "/" + maxConcurrent + ", limits=" + limits + "}";
+    }
+
+    /**
+     * A request waiting for admission
+     */
+    private static final class Waiter {
+
+        /** Whether the request has been admitted */
+        private boolean admitted;
+    }
+}
@@ -20,10 +20,9 @@ import com.github.pnavais.flights.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.event.ContextRefreshedEvent;
-import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 
@@ -47,12 +46,11 @@ public class ProxyConfig {
     private Proxy proxy;
 
     /**
-     * Creates the proxy after bean configuration.
-     *
-     * @param event the context event
+     * Creates the proxy after bean configuration,
+     * before any client is created.
      */
-    @EventListener
-    public void onApplicationEvent(ContextRefreshedEvent event) {
+    @PostConstruct
+    public void init() {
         this.proxy = Proxy.NO_PROXY;
 
         if (useProxy && !StringUtils.empty(httpProxyHost) && httpProxyPort>=0) {
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.client;
+
+import feign.Response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decorates the body of a response running an action once
+ * when it is closed, that is, once Feign has consumed it.
+ * The upstream connection stays busy until then, since the
+ * body is streamed.
+ */
+final class ReleasingBody implements Response.Body {
+
+    /** The decorated body */
+    private final Response.Body delegate;
+
+    /** The action run when the body is closed */
+    private final Runnable release;
+
+    /** Whether the action already run */
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    /**
+     * Creates the decorator of the given body
+     *
+     * @param delegate the decorated body
+     * @param release the action run when the body is closed
+     */
+    private ReleasingBody(Response.Body delegate, Runnable release) {
+        this.delegate = delegate;
+        this.release = release;
+    }
+
+    /**
+     * Decorates the body of the given response running the
+     * action when closed, or runs it at once if there is no body.
+     *
+     * @param response the response
+     * @param release the action run when the body is closed
+     * @return the decorated response
+     */
+    static Response wrap(Response response, Runnable release) {
+        if (response.body() == null) {
+            release.run();
+            return response;
+        }
+        return response.toBuilder().body(new ReleasingBody(response.body(), release)).build();
+    }
+
+    @Override
+    public Integer length() {
+        return delegate.length();
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return delegate.isRepeatable();
+    }
+
+    @Override
+    public InputStream asInputStream() throws IOException {
+        return delegate.asInputStream();
+    }
+
+    @Override
+    public Reader asReader() throws IOException {
+        return delegate.asReader();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            delegate.close();
+        } finally {
+            if (released.compareAndSet(false, true)) {
+                release.run();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
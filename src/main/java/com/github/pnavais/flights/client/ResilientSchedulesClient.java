@@ -0,0 +1,328 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.client;
+
+import com.github.pnavais.flights.model.Schedule;
+import com.github.pnavais.flights.model.Timetable;
+import com.github.pnavais.flights.util.RetryBudget;
+import feign.FeignException;
+import feign.RetryableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Decorates the Schedules API client with hedged requests and retries.
+ * <p>
+ * Once enough latencies have been observed, a call unanswered after the
+ * configured percentile of the recent latencies (never earlier than the
+ * minimum delay) is hedged : a second request is sent and the first
+ * successful response wins. Failed calls (I/O errors, throttling and
+ * server errors) are retried up to the configured attempts, unless
+ * rejected locally for lack of capacity. Both hedges and retries are
+ * paid from a {@link RetryBudget} so that they cannot amplify an outage,
+ * and no hedge is sent while the upstream capacity is exhausted. Abandoned requests run to completion, as blocking
+ * calls cannot be cancelled, and their responses are discarded.
+ * </p>
+ */
+public class ResilientSchedulesClient implements SchedulesClient {
+
+    /** The logger instance */
+    private static final Logger logger = LoggerFactory.getLogger(ResilientSchedulesClient.class);
+
+    /** The number of recent latencies kept */
+    private static final int WINDOW_SIZE = 256;
+
+    /** The number of latencies needed before hedging */
+    private static final int MIN_SAMPLES = 32;
+
+    /** The number of latencies between updates of the percentile */
+    private static final int UPDATE_INTERVAL = 16;
+
+    /** The decorated client */
+    private final SchedulesClient delegate;
+
+    /** The executor sending the requests when hedging */
+    private final Executor executor;
+
+    /** The budget of hedges and retries */
+    private final RetryBudget budget;
+
+    /** Whether the upstream capacity is exhausted */
+    private final BooleanSupplier saturated;
+
+    /** The minimum delay before hedging (ms) */
+    private final long hedgeMinDelay;
+
+    /** The maximum number of retries of a failed call */
+    private final int maxRetries;
+
+    /** The recent latencies */
+    private final LatencyWindow latencies;
+
+    /** The number of hedged requests sent */
+    private final Counter hedges;
+
+    /** The number of retries sent */
+    private final Counter retries;
+
+    /**
+     * Creates the decorator of the given client
+     *
+     * @param delegate the decorated client
+     * @param executor the executor sending the requests when hedging
+     * @param budget the budget of hedges and retries
+     * @param saturated whether the upstream capacity is exhausted, suppressing hedges
+     * @param hedgePercentile the percentile of the latencies after which calls are hedged (0 to disable)
+     * @param hedgeMinDelay the minimum delay before hedging (ms)
+     * @param maxRetries the maximum number of retries of a failed call
+     * @param meterRegistry the registry of the counters
+     */
+    public ResilientSchedulesClient(SchedulesClient delegate, Executor executor, RetryBudget budget,
+                                    BooleanSupplier saturated, double hedgePercentile, long hedgeMinDelay,
+                                    int maxRetries, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.executor = executor;
+        this.budget = budget;
+        this.saturated = saturated;
+        this.hedgeMinDelay = hedgeMinDelay;
+        this.maxRetries = maxRetries;
+        this.latencies = new LatencyWindow(hedgePercentile);
+        this.hedges = Counter.builder("flights.upstream.hedges")
+                .description("Hedged requests sent to the Schedules API")
+                .register(meterRegistry);
+        this.retries = Counter.builder("flights.upstream.retries")
+                .description("Retries sent to the Schedules API")
+                .register(meterRegistry);
+        Gauge.builder("flights.upstream.budget", budget, RetryBudget::getTokens)
+                .description("Tokens available for hedges and retries")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Schedule getScheduledFlights(String srcAirport, String targetAirport, int year, int month) {
+        return call(() -> delegate.getScheduledFlights(srcAirport, targetAirport, year, month));
+    }
+
+    @Override
+    public Timetable<String> getTimetable(String srcAirport, String targetAirport, int year, int month) {
+        return call(() -> delegate.getTimetable(srcAirport, targetAirport, year, month));
+    }
+
+    /**
+     * Performs the given call, retrying it on
+     * transient failures while budget remains.
+     *
+     * @param request the call
+     * @param <T> the type of response
+     * @return the response
+     */
+    private <T> T call(Supplier<T> request) {
+        budget.deposit();
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return hedged(request);
+            } catch (FeignException e) {
+                if ((attempt >= maxRetries) || !isRetryable(e) || !budget.tryWithdraw()) {
+                    throw e;
+                }
+                retries.increment();
+                logger.debug("Retrying schedules request after : {}", e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Performs the given call, sending a second request
+     * if it takes longer than the hedging delay.
+     *
+     * @param request the call
+     * @param <T> the type of response
+     * @return the first successful response
+     */
+    private <T> T hedged(Supplier<T> request) {
+        long hedgeDelay = latencies.getPercentileMillis();
+
+        if (hedgeDelay < 0) {
+            return timed(request);
+        }
+
+        CompletableFuture<T> primary = CompletableFuture.supplyAsync(() -> timed(request), executor);
+        try {
+            return primary.get(Math.max(hedgeMinDelay, hedgeDelay), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (saturated.getAsBoolean() || !budget.tryWithdraw()) {
+                return join(primary);
+            }
+            hedges.increment();
+            CompletableFuture<T> hedge = CompletableFuture.supplyAsync(() -> timed(request), executor);
+            return join(firstSuccessful(primary, hedge));
+        } catch (ExecutionException e) {
+            throw propagate(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for schedules", e);
+        }
+    }
+
+    /**
+     * Performs the given call recording its latency on success
+     *
+     * @param request the call
+     * @param <T> the type of response
+     * @return the response
+     */
+    private <T> T timed(Supplier<T> request) {
+        long start = System.nanoTime();
+        T response = request.get();
+        latencies.record(System.nanoTime() - start);
+        return response;
+    }
+
+    /**
+     * Completes with the first of the given requests succeeding,
+     * or with the failure of the last one if both fail.
+     *
+     * @param first the first request
+     * @param second the second request
+     * @param <T> the type of response
+     * @return the future first successful response
+     */
+    private static <T> CompletableFuture<T> firstSuccessful(CompletableFuture<T> first, CompletableFuture<T> second) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+
+        for (CompletableFuture<T> request : Arrays.asList(first, second)) {
+            request.whenComplete((response, e) -> {
+                if (e == null) {
+                    result.complete(response);
+                } else if (failures.incrementAndGet() == 2) {
+                    result.completeExceptionally(e);
+                }
+            });
+        }
+
+        return result;
+    }
+
+    /**
+     * Waits for the given request, rethrowing its failure
+     *
+     * @param request the request
+     * @param <T> the type of response
+     * @return the response
+     */
+    private static <T> T join(CompletableFuture<T> request) {
+        try {
+            return request.join();
+        } catch (RuntimeException e) {
+            throw propagate(e.getCause() != null ? e.getCause() : e);
+        }
+    }
+
+    /**
+     * Unwraps the failure of an asynchronous request
+     *
+     * @param cause the failure
+     * @return the runtime exception to throw
+     */
+    private static RuntimeException propagate(Throwable cause) {
+        while ((cause instanceof CompletionException) && (cause.getCause() != null)) {
+            cause = cause.getCause();
+        }
+        return (cause instanceof RuntimeException) ? (RuntimeException) cause : new IllegalStateException(cause);
+    }
+
+    /**
+     * Checks whether the given failure is transient
+     *
+     * @param e the failure
+     * @return true if I/O error (other than a local rejection), throttling or server error
+     */
+    private static boolean isRetryable(FeignException e) {
+        if (e instanceof RetryableException) {
+            return !(e.getCause() instanceof UpstreamCapacityException);
+        }
+        return (e.status() == 429) || (e.status() >= 500);
+    }
+
+    /**
+     * The recent latencies of successful
+     * requests and their percentile
+     */
+    private static class LatencyWindow {
+
+        /** The percentile computed (0 to disable) */
+        private final double percentile;
+
+        /** The latencies in nanoseconds (ring buffer) */
+        private final long[] samples = new long[WINDOW_SIZE];
+
+        /** The number of latencies recorded */
+        private long count;
+
+        /** The current percentile in ms or -1 if unknown */
+        private volatile long percentileMillis = -1;
+
+        /**
+         * Creates the window of the given percentile
+         *
+         * @param percentile the percentile (0 to disable)
+         */
+        LatencyWindow(double percentile) {
+            this.percentile = percentile;
+        }
+
+        /**
+         * Records a latency, updating periodically the percentile
+         *
+         * @param nanos the latency in nanoseconds
+         */
+        synchronized void record(long nanos) {
+            samples[(int) (count++ % WINDOW_SIZE)] = nanos;
+
+            if ((percentile > 0) && (count >= MIN_SAMPLES) && (count % UPDATE_INTERVAL == 0)) {
+                long[] sorted = Arrays.copyOf(samples, (int) Math.min(count, WINDOW_SIZE));
+                Arrays.sort(sorted);
+                int rank = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+                percentileMillis = TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, rank)]);
+            }
+        }
+
+        /**
+         * Retrieves the current percentile
+         *
+         * @return the percentile in ms or -1 if not enough latencies
+         */
+        long getPercentileMillis() {
+            return percentileMillis;
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package com.github.pnavais.flights.client;
 
 import com.github.pnavais.flights.model.Schedule;
+import com.github.pnavais.flights.model.Timetable;
 import feign.Param;
 import feign.RequestLine;
 
@@ -42,5 +43,23 @@ public interface SchedulesClient {
                                  @Param("year")int year,
                                  @Param("month")int month);
 
+    /**
+     * Retrieves the timetable of the available flights for a given departure airport IATA code,
+     * an arrival airport IATA code, a year and a month.
+     *
+     * @param srcAirport the origin airport
+     * @param targetAirport the destination airport
+     * @param year the year
+     * @param month the month
+     *
+     * @return the timetable of available flights
+     * @see com.github.pnavais.flights.jackson.TimetableDecoder
+     */
+    @RequestLine("GET /{departure}/{arrival}/years/{year}/months/{month}")
+    Timetable<String> getTimetable(@Param("departure")String srcAirport,
+                                   @Param("arrival")String targetAirport,
+                                   @Param("year")int year,
+                                   @Param("month")int month);
+
 
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.client;
+
+import java.io.IOException;
+
+/**
+ * Signals an upstream request rejected locally for lack of
+ * capacity (admission or per-host limits), without reaching
+ * the upstream service. Such failures must not be retried,
+ * as retrying only adds load to the saturated client.
+ */
+public class UpstreamCapacityException extends IOException {
+
+    /**
+     * Constructor with the message
+     *
+     * @param message the detail message
+     */
+    public UpstreamCapacityException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.connections;
+
+import com.github.pnavais.flights.api.ConnectionAnalyzer;
+import com.github.pnavais.flights.api.RoutesIndex;
+import com.github.pnavais.flights.api.RoutesProvider;
+import com.github.pnavais.flights.api.SchedulesProvider;
+import com.github.pnavais.flights.model.ConnectionQuery;
+import com.github.pnavais.flights.model.FlightConnection;
+import com.github.pnavais.flights.model.FlightPath;
+import com.github.pnavais.flights.model.Route;
+import com.github.pnavais.flights.model.Timetable;
+import com.github.pnavais.flights.util.RequestTiming;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+/**
+ * Flight connection analyzer for journeys with any number of stops.
+ * <p>
+ * Instead of enumerating every path and joining its schedules, the
+ * timetables of all the routes lying on some path between origin and
+ * destination are retrieved (once each) and scanned in a single pass
+ * by the {@link ConnectionScanner}.
+ * </p>
+ * <p>
+ * Searches between several departure and arrival airports are answered
+ * by a single scan of the network joining all of them.
+ * </p>
+ */
+@Component
+public class ConnectionScanAnalyzer implements ConnectionAnalyzer<FlightPath, String, FlightConnection> {
+
+    /** The logger instance */
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionScanAnalyzer.class);
+
+    /**
+     * The routes provider
+     */
+    @Autowired
+    private RoutesProvider<RoutesIndex<FlightPath, String>, FlightPath, String> routesProvider;
+
+    /**
+     * The schedules provider
+     */
+    @Autowired
+    private SchedulesProvider<String> schedulesProvider;
+
+    /**
+     * Retrieves valid connections for the given route
+     * and specified date time constraints.
+     *
+     * @param routes            the routes to analyze
+     * @param departureDateTime the departure date time
+     * @param arrivalDateTime   the arrival date time
+     * @return the list of valid connections
+     */
+    @Override
+    public List<FlightConnection> findValidConnections(List<Route> routes, LocalDateTime departureDateTime,
+                                                       LocalDateTime arrivalDateTime) {
+        return findValidConnectionsAsync(routes, departureDateTime, arrivalDateTime, Runnable::run).join();
+    }
+
+    /**
+     * Asynchronously retrieves valid connections for the given route
+     * and specified date time constraints, scanning the flights of
+     * its steps.
+     *
+     * @param routes            the routes to analyze
+     * @param departureDateTime the departure date time
+     * @param arrivalDateTime   the arrival date time
+     * @param executor          the executor assembling the connections
+     * @return the future list of valid connections
+     */
+    @Override
+    public CompletableFuture<List<FlightConnection>> findValidConnectionsAsync(List<Route> routes,
+                                                                               LocalDateTime departureDateTime,
+                                                                               LocalDateTime arrivalDateTime,
+                                                                               Executor executor) {
+        if (routes.isEmpty()) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+
+        return scanAsync(Collections.singleton(routes.get(0).getAirportFrom()),
+                Collections.singleton(routes.get(routes.size() - 1).getAirportTo()), routes, departureDateTime,
+                arrivalDateTime, routes.size(), null, executor);
+    }
+
+    /**
+     * Asynchronously retrieves the valid connections matching the given
+     * query, scanning the flights of all the routes where they can be
+     * found.
+     *
+     * @param query    the criteria of the search
+     * @param executor the executor assembling the connections
+     * @return the future list of valid connections sorted by stops,
+     * departure and arrival, or best first if ranked
+     */
+    @Override
+    public CompletableFuture<List<FlightConnection>> findConnectionsAsync(ConnectionQuery query,
+                                                                          Executor executor) {
+        Map<String, Set<String>> network = RequestTiming.time("paths", () -> routesProvider.findNetwork(
+                query.getOrigins(), query.getDestinations(), query.getMaxStops() + 1));
+
+        List<Route> routes = network.entrySet().stream()
+                .flatMap(e -> e.getValue().stream().map(to -> new Route(e.getKey(), to)))
+                .collect(Collectors.toList());
+
+        logger.info("Found {} routes between {} and {} with {} stops at most", routes.size(), query.getOrigins(),
+                query.getDestinations(), query.getMaxStops());
+
+        TopConnections best = query.isRanked() ? new TopConnections(query.getSort(), query.getLimit()) : null;
+
+        return scanAsync(query.getOrigins(), query.getDestinations(), routes, query.getDepartureDateTime(),
+                query.getArrivalDateTime(), query.getMaxStops() + 1, best, executor);
+    }
+
+    /**
+     * Retrieves the timetables of the given routes and scans them
+     *
+     * @param origins           the origins
+     * @param destinations      the destinations
+     * @param routes            the routes to scan
+     * @param departureDateTime the departure date time
+     * @param arrivalDateTime   the arrival date time
+     * @param maxLegs           the maximum number of flights
+     * @param best              the collector of the best connections or null to collect all
+     * @param executor          the executor scanning the flights
+     * @return the future list of valid connections
+     */
+    private CompletableFuture<List<FlightConnection>> scanAsync(Set<String> origins, Set<String> destinations,
+                                                                List<Route> routes,
+                                                                LocalDateTime departureDateTime,
+                                                                LocalDateTime arrivalDateTime,
+                                                                int maxLegs, TopConnections best,
+                                                                Executor executor) {
+        List<CompletableFuture<Timetable<String>>> timetables = routes.stream()
+                .map(r -> schedulesProvider.getTimetableAsync(r.getAirportFrom(), r.getAirportTo(),
+                        departureDateTime, arrivalDateTime))
+                .collect(Collectors.toList());
+
+        return CompletableFuture.allOf(timetables.toArray(new CompletableFuture<?>[0]))
+                .thenApplyAsync(v -> {
+                    List<Timetable<String>> flights = timetables.stream()
+                            .map(CompletableFuture::join)
+                            .collect(Collectors.toList());
+
+                    List<FlightConnection> connections = RequestTiming.time("scan", () -> {
+                        if (best != null) {
+                            ConnectionScanner.scan(origins, destinations, flights, maxLegs, best);
+                            return best.toList();
+                        }
+                        return ConnectionScanner.scan(origins, destinations, flights, maxLegs);
+                    });
+
+                    logger.info("Scanned {} routes between {} and {} : {} connections", flights.size(), origins,
+                            destinations, connections.size());
+                    return connections;
+                }, executor);
+    }
+
+    /**
+     * Retrieves all valid flight paths between the origin and destination
+     * given a maximum number of transitions.
+     *
+     * @param origin         the origin
+     * @param destination    the destination
+     * @param maxTransitions the maximum number of transitions
+     * @return the list of valid flight paths
+     */
+    @Override
+    public List<FlightPath> findPaths(String origin, String destination, int maxTransitions) {
+        return routesProvider.findPaths(origin, destination, maxTransitions);
+    }
+}
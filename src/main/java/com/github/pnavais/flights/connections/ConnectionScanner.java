@@ -0,0 +1,615 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.connections;
+
+import com.github.pnavais.flights.model.ConnectionSort;
+import com.github.pnavais.flights.model.FlightConnection;
+import com.github.pnavais.flights.model.Leg;
+import com.github.pnavais.flights.model.Timetable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the journeys between two airports (or between any of several
+ * origins and any of several destinations) with any number of stops by
+ * a single scan of the flights of the network, in the spirit of the
+ * Connection Scan Algorithm.
+ * <p>
+ * The flights of all the timetables are sorted by departure and
+ * scanned once. Every partial journey reaching an airport waits in a
+ * per-airport queue until the minimum connection time has elapsed,
+ * after which it is extended by every flight departing the airport.
+ * Journeys are stored as parent pointers over primitive arrays, so
+ * that only complete journeys are turned into legs. Partial journeys
+ * unable to reach the destination within the stops left are pruned,
+ * and journeys never visit an airport twice. Journeys end at the first
+ * destination reached and never stop at an origin.
+ * </p>
+ * <p>
+ * Arrivals earlier than the departure (overnight flights placed on
+ * their departure day) are considered to happen the next day when
+ * checking connections.
+ * </p>
+ */
+public final class ConnectionScanner {
+
+    /** The minimum connection time in minutes */
+    private static final int MIN_CONNECTION_MINUTES = (int) LegJoiner.MIN_CONNECTION_TIME.toMinutes();
+
+    /** Marks an airport unable to reach the destination */
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /** Marks a journey without parent */
+    private static final int NONE = -1;
+
+    /**
+     * Private constructor to avoid
+     * instantiation
+     */
+    private ConnectionScanner() {}
+
+    /**
+     * Finds all the journeys between origin and destination with the given
+     * maximum number of flights using the flights of the given timetables.
+     * <p>
+     * Journeys are sorted by number of stops, departure and arrival.
+     * </p>
+     *
+     * @param origin the origin airport
+     * @param destination the destination airport
+     * @param timetables the flights of the network
+     * @param maxLegs the maximum number of flights of a journey
+     * @return the list of connections
+     */
+    public static List<FlightConnection> scan(String origin, String destination,
+                                              List<Timetable<String>> timetables, int maxLegs) {
+        return scan(Collections.singleton(origin), Collections.singleton(destination), timetables, maxLegs);
+    }
+
+    /**
+     * Finds all the journeys between any of the origins and any of the
+     * destinations with the given maximum number of flights using the
+     * flights of the given timetables, in a single scan.
+     * <p>
+     * Journeys are sorted by number of stops, departure and arrival.
+     * </p>
+     *
+     * @param origins the origin airports
+     * @param destinations the destination airports
+     * @param timetables the flights of the network
+     * @param maxLegs the maximum number of flights of a journey
+     * @return the list of connections
+     */
+    public static List<FlightConnection> scan(Set<String> origins, Set<String> destinations,
+                                              List<Timetable<String>> timetables, int maxLegs) {
+        return new Scan(origins, destinations, timetables, maxLegs, null).run();
+    }
+
+    /**
+     * Finds the best ranked journeys between origin and destination with the
+     * given maximum number of flights using the flights of the given timetables.
+     * <p>
+     * Partial journeys which cannot be ranked among the best ones are
+     * abandoned and, when ranking by arrival, the scan terminates as soon
+     * as the flights scanned depart after the worst arrival kept.
+     * </p>
+     *
+     * @param origin the origin airport
+     * @param destination the destination airport
+     * @param timetables the flights of the network
+     * @param maxLegs the maximum number of flights of a journey
+     * @param best the collector of the best journeys
+     */
+    public static void scan(String origin, String destination, List<Timetable<String>> timetables, int maxLegs,
+                            TopConnections best) {
+        scan(Collections.singleton(origin), Collections.singleton(destination), timetables, maxLegs, best);
+    }
+
+    /**
+     * Finds the best ranked journeys between any of the origins and any of
+     * the destinations with the given maximum number of flights using the
+     * flights of the given timetables, in a single scan.
+     *
+     * @param origins the origin airports
+     * @param destinations the destination airports
+     * @param timetables the flights of the network
+     * @param maxLegs the maximum number of flights of a journey
+     * @param best the collector of the best journeys
+     */
+    public static void scan(Set<String> origins, Set<String> destinations, List<Timetable<String>> timetables,
+                            int maxLegs, TopConnections best) {
+        new Scan(origins, destinations, timetables, maxLegs, best).run();
+    }
+
+    /**
+     * The state of a single scan
+     */
+    private static final class Scan {
+
+        /** The airports by identifier */
+        private final Map<String, Integer> ids = new HashMap<>();
+
+        /** The timetables scanned */
+        private final List<Timetable<String>> timetables;
+
+        /** The maximum number of flights of a journey */
+        private final int maxLegs;
+
+        /** The collector of the best journeys (null to collect all) */
+        private final TopConnections best;
+
+        /** Whether each airport is an origin */
+        private final boolean[] origins;
+
+        /** Whether each airport is a destination */
+        private final boolean[] destinations;
+
+        /** The origin airport of each timetable */
+        private final int[] tableOrigins;
+
+        /** The destination airport of each timetable */
+        private final int[] tableDestinations;
+
+        /** The first flight of each timetable in the flights numbering */
+        private final int[] tableOffsets;
+
+        /** The timetable of each flight */
+        private final int[] flightTables;
+
+        /** The minimum number of flights to the destination by airport */
+        private final int[] distances;
+
+        /** The journeys waiting for the connection time by airport */
+        private final LongHeap[] waiting;
+
+        /** The journeys ready to connect by airport */
+        private final int[][] ready;
+
+        /** The number of journeys ready to connect by airport */
+        private final int[] readyCounts;
+
+        /** The last flight of each journey */
+        private int[] journeyFlights = new int[64];
+
+        /** The previous journey of each journey */
+        private int[] journeyParents = new int[64];
+
+        /** The number of flights of each journey */
+        private int[] journeyLengths = new int[64];
+
+        /** The departure of the first flight of each journey */
+        private int[] journeyStarts = new int[64];
+
+        /** The number of journeys */
+        private int journeyCount;
+
+        /** The complete journeys */
+        private final List<Integer> complete = new ArrayList<>();
+
+        /** The legs created by flight */
+        private final Map<Integer, Leg<String>> legsByFlight = new HashMap<>();
+
+        /**
+         * Prepares the scan of the given timetables
+         *
+         * @param origins the origin airports
+         * @param destinations the destination airports
+         * @param timetables the flights of the network
+         * @param maxLegs the maximum number of flights of a journey
+         * @param best the collector of the best journeys or null to collect all
+         */
+        private Scan(Set<String> origins, Set<String> destinations, List<Timetable<String>> timetables,
+                     int maxLegs, TopConnections best) {
+            this.timetables = timetables;
+            this.maxLegs = maxLegs;
+            this.best = best;
+            origins.forEach(this::intern);
+            destinations.forEach(this::intern);
+
+            int tableCount = timetables.size();
+            this.tableOrigins = new int[tableCount];
+            this.tableDestinations = new int[tableCount];
+            this.tableOffsets = new int[tableCount + 1];
+
+            for (int t = 0; t < tableCount; t++) {
+                tableOrigins[t] = intern(timetables.get(t).getOrigin());
+                tableDestinations[t] = intern(timetables.get(t).getDestination());
+                tableOffsets[t + 1] = tableOffsets[t] + timetables.get(t).size();
+            }
+
+            this.flightTables = new int[tableOffsets[tableCount]];
+            for (int t = 0; t < tableCount; t++) {
+                Arrays.fill(flightTables, tableOffsets[t], tableOffsets[t + 1], t);
+            }
+
+            int airportCount = ids.size();
+            this.origins = new boolean[airportCount];
+            origins.forEach(airport -> this.origins[ids.get(airport)] = true);
+            this.destinations = new boolean[airportCount];
+            destinations.forEach(airport -> this.destinations[ids.get(airport)] = true);
+
+            this.distances = distancesToDestination(airportCount);
+            this.waiting = new LongHeap[airportCount];
+            this.ready = new int[airportCount][];
+            this.readyCounts = new int[airportCount];
+        }
+
+        /**
+         * Scans the flights in departure order
+         *
+         * @return the complete journeys
+         */
+        private List<FlightConnection> run() {
+            if (!canDepart()) {
+                return new ArrayList<>();
+            }
+
+            for (long flight : sortedFlights()) {
+                int departure = (int) (flight >>> 32);
+                int number = (int) flight;
+                int table = table(number);
+                int from = tableOrigins[table];
+                int to = tableDestinations[table];
+
+                // Journeys completed from now on arrive after this departure
+                if (best != null && best.getSort() == ConnectionSort.ARRIVAL && !best.canImprove(departure)) {
+                    break;
+                }
+
+                // Skip flights unable to reach the destination within the flights left
+                if (distances[to] >= maxLegs || origins[to]) {
+                    continue;
+                }
+
+                collectReady(from, departure);
+
+                if (origins[from]) {
+                    reach(to, number, NONE, 1, departure);
+                }
+
+                for (int i = 0; i < readyCounts[from]; i++) {
+                    int journey = ready[from][i];
+                    int length = journeyLengths[journey] + 1;
+                    if (length + distances[to] <= maxLegs && !visits(journey, to)) {
+                        reach(to, number, journey, length, journeyStarts[journey]);
+                    }
+                }
+            }
+
+            return toConnections();
+        }
+
+        /**
+         * Records a new journey reaching the given airport, which
+         * is complete if the airport is the destination or waits
+         * otherwise for the connection time at the airport (unless
+         * it cannot be ranked among the best journeys).
+         *
+         * @param airport the airport reached
+         * @param flight the last flight
+         * @param parent the previous journey
+         * @param length the number of flights
+         * @param start the departure of the first flight
+         */
+        private void reach(int airport, int flight, int parent, int length, int start) {
+            int arrival = arrival(flight);
+            int available = arrival + MIN_CONNECTION_MINUTES;
+
+            if (!destinations[airport] && best != null && !best.canImprove(best.getSort().primary(start, available))) {
+                return;
+            }
+
+            int journey = newJourney(flight, parent, length, start);
+
+            if (destinations[airport]) {
+                if (best != null) {
+                    best.offer(start, arrival, () -> toConnection(journey));
+                } else {
+                    complete.add(journey);
+                }
+            } else {
+                if (waiting[airport] == null) {
+                    waiting[airport] = new LongHeap();
+                }
+                waiting[airport].add(((long) available << 32) | journey);
+            }
+        }
+
+        /**
+         * Checks whether some origin can reach a
+         * destination within the maximum flights.
+         *
+         * @return true if some journey may exist, false otherwise
+         */
+        private boolean canDepart() {
+            for (int airport = 0; airport < origins.length; airport++) {
+                if (origins[airport] && distances[airport] <= maxLegs) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Moves to the ready list of the given airport all the journeys
+         * whose connection time has elapsed at the given time.
+         *
+         * @param airport the airport
+         * @param minute the current time
+         */
+        private void collectReady(int airport, int minute) {
+            LongHeap heap = waiting[airport];
+
+            while (heap != null && !heap.isEmpty() && (heap.peek() >>> 32) <= minute) {
+                int journey = (int) heap.poll();
+                if (ready[airport] == null) {
+                    ready[airport] = new int[8];
+                } else if (readyCounts[airport] == ready[airport].length) {
+                    ready[airport] = Arrays.copyOf(ready[airport], readyCounts[airport] * 2);
+                }
+                ready[airport][readyCounts[airport]++] = journey;
+            }
+        }
+
+        /**
+         * Checks whether the given journey departs
+         * from or stops at the given airport.
+         *
+         * @param journey the journey
+         * @param airport the airport
+         * @return true if visited, false otherwise
+         */
+        private boolean visits(int journey, int airport) {
+            for (int j = journey; j != NONE; j = journeyParents[j]) {
+                if (tableOrigins[table(journeyFlights[j])] == airport) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Stores a new journey
+         *
+         * @param flight the last flight
+         * @param parent the previous journey
+         * @param length the number of flights
+         * @param start the departure of the first flight
+         * @return the journey identifier
+         */
+        private int newJourney(int flight, int parent, int length, int start) {
+            if (journeyCount == journeyFlights.length) {
+                journeyFlights = Arrays.copyOf(journeyFlights, journeyCount * 2);
+                journeyParents = Arrays.copyOf(journeyParents, journeyCount * 2);
+                journeyLengths = Arrays.copyOf(journeyLengths, journeyCount * 2);
+                journeyStarts = Arrays.copyOf(journeyStarts, journeyCount * 2);
+            }
+            journeyFlights[journeyCount] = flight;
+            journeyParents[journeyCount] = parent;
+            journeyLengths[journeyCount] = length;
+            journeyStarts[journeyCount] = start;
+            return journeyCount++;
+        }
+
+        /**
+         * Numbers all the flights and sorts them by departure, encoding
+         * each one as its departure followed by its number.
+         *
+         * @return the sorted flights
+         */
+        private long[] sortedFlights() {
+            long[] flights = new long[tableOffsets[timetables.size()]];
+
+            for (int t = 0; t < timetables.size(); t++) {
+                Timetable<String> timetable = timetables.get(t);
+                for (int i = 0; i < timetable.size(); i++) {
+                    flights[tableOffsets[t] + i] = ((long) timetable.getDeparture(i) << 32) | (tableOffsets[t] + i);
+                }
+            }
+
+            Arrays.sort(flights);
+            return flights;
+        }
+
+        /**
+         * Computes the minimum number of flights from every airport
+         * to the closest destination by a breadth-first search over
+         * the routes of the timetables.
+         *
+         * @param airportCount the number of airports
+         * @return the distances by airport
+         */
+        private int[] distancesToDestination(int airportCount) {
+            int[] result = new int[airportCount];
+            Arrays.fill(result, UNREACHABLE);
+            for (int airport = 0; airport < airportCount; airport++) {
+                if (destinations[airport]) {
+                    result[airport] = 0;
+                }
+            }
+
+            boolean changed = true;
+            for (int distance = 1; changed && distance <= maxLegs; distance++) {
+                changed = false;
+                for (int t = 0; t < timetables.size(); t++) {
+                    if (result[tableDestinations[t]] == distance - 1 && result[tableOrigins[t]] == UNREACHABLE
+                            && !timetables.get(t).isEmpty()) {
+                        result[tableOrigins[t]] = distance;
+                        changed = true;
+                    }
+                }
+            }
+
+            return result;
+        }
+
+        /**
+         * Creates the connections of the complete journeys
+         *
+         * @return the list of connections
+         */
+        private List<FlightConnection> toConnections() {
+            complete.sort(Comparator.<Integer>comparingInt(j -> journeyLengths[j])
+                    .thenComparingInt(j -> journeyStarts[j])
+                    .thenComparingInt(j -> arrival(journeyFlights[j])));
+
+            List<FlightConnection> connections = new ArrayList<>(complete.size());
+            complete.forEach(journey -> connections.add(toConnection(journey)));
+            return connections;
+        }
+
+        /**
+         * Creates the connection of a complete journey,
+         * sharing the legs of the flights.
+         *
+         * @param journey the journey
+         * @return the connection
+         */
+        private FlightConnection toConnection(int journey) {
+            List<Leg<String>> legs = new ArrayList<>(Collections.nCopies(journeyLengths[journey], null));
+            for (int j = journey; j != NONE; j = journeyParents[j]) {
+                legs.set(journeyLengths[j] - 1, legsByFlight.computeIfAbsent(journeyFlights[j], this::toLeg));
+            }
+
+            FlightConnection connection = new FlightConnection();
+            connection.setStops(legs.size() - 1);
+            connection.setLegs(legs);
+            return connection;
+        }
+
+        /**
+         * Retrieves the arrival time of a flight, moved to the
+         * next day if earlier than its departure.
+         *
+         * @param flight the flight number
+         * @return the arrival time
+         */
+        private int arrival(int flight) {
+            int table = table(flight);
+            return timetables.get(table).getActualArrival(flight - tableOffsets[table]);
+        }
+
+        /**
+         * Creates the leg of a flight
+         *
+         * @param flight the flight number
+         * @return the leg
+         */
+        private Leg<String> toLeg(int flight) {
+            int table = table(flight);
+            return timetables.get(table).toLeg(flight - tableOffsets[table]);
+        }
+
+        /**
+         * Finds the timetable of a flight
+         *
+         * @param flight the flight number
+         * @return the timetable position
+         */
+        private int table(int flight) {
+            return flightTables[flight];
+        }
+
+        /**
+         * Retrieves the identifier of the given airport,
+         * assigning the next one if not yet known.
+         *
+         * @param airport the airport
+         * @return the identifier
+         */
+        private int intern(String airport) {
+            return ids.computeIfAbsent(airport, a -> ids.size());
+        }
+    }
+
+    /**
+     * A minimal binary min-heap of primitive longs
+     */
+    private static final class LongHeap {
+
+        /** The elements in heap order */
+        private long[] elements = new long[8];
+
+        /** The number of elements */
+        private int size;
+
+        /**
+         * Checks whether the heap is empty
+         *
+         * @return true if empty, false otherwise
+         */
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Retrieves the minimum element
+         *
+         * @return the minimum element
+         */
+        private long peek() {
+            return elements[0];
+        }
+
+        /**
+         * Adds an element
+         *
+         * @param element the element
+         */
+        private void add(long element) {
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, size * 2);
+            }
+            int i = size++;
+            while (i > 0 && elements[(i - 1) >>> 1] > element) {
+                elements[i] = elements[(i - 1) >>> 1];
+                i = (i - 1) >>> 1;
+            }
+            elements[i] = element;
+        }
+
+        /**
+         * Removes the minimum element
+         *
+         * @return the minimum element
+         */
+        private long poll() {
+            long minimum = elements[0];
+            long last = elements[--size];
+            int i = 0;
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && elements[child + 1] < elements[child]) {
+                    child++;
+                }
+                if (elements[child] >= last) {
+                    break;
+                }
+                elements[i] = elements[child];
+                i = child;
+            }
+            elements[i] = last;
+            return minimum;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.connections;
+
+import com.github.pnavais.flights.api.RoutesIndex;
+import com.github.pnavais.flights.api.RoutesProvider;
+import com.github.pnavais.flights.api.SchedulesProvider;
+import com.github.pnavais.flights.model.ConnectionQuery;
+import com.github.pnavais.flights.model.FlightPath;
+import com.github.pnavais.flights.model.Route;
+import com.github.pnavais.flights.model.RouteMonth;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Plans the monthly schedules needed to answer a set of queries,
+ * so that every route-month is fetched once however many queries
+ * share it.
+ */
+@Component
+public class FetchPlanner {
+
+    /** The logger instance */
+    private static final Logger logger = LoggerFactory.getLogger(FetchPlanner.class);
+
+    /**
+     * The routes provider
+     */
+    @Autowired
+    private RoutesProvider<RoutesIndex<FlightPath, String>, FlightPath, String> routesProvider;
+
+    /**
+     * The schedules provider
+     */
+    @Autowired
+    private SchedulesProvider<String> schedulesProvider;
+
+    /**
+     * Retrieves the distinct route-months whose schedules
+     * are needed to answer the given queries.
+     *
+     * @param queries the queries
+     * @return the route-months in planning order
+     */
+    public Set<RouteMonth> plan(Collection<ConnectionQuery> queries) {
+        Set<RouteMonth> plan = new LinkedHashSet<>();
+
+        for (ConnectionQuery query : queries) {
+            findRoutes(query).forEach(route -> plan.addAll(RouteMonth.spanning(route.getAirportFrom(),
+                    route.getAirportTo(), query.getDepartureDateTime(), query.getArrivalDateTime())));
+        }
+
+        logger.debug("Planned {} route-months for {} queries", plan.size(), queries.size());
+        return plan;
+    }
+
+    /**
+     * Retrieves the routes flown by the journeys of the given query :
+     * those of its paths when searched by path, or those of the
+     * network between its airports otherwise (always the case when
+     * searching several airports).
+     *
+     * @param query the query
+     * @return the routes of the query
+     */
+    public List<Route> findRoutes(ConnectionQuery query) {
+        if (query.isPathSearch()) {
+            return routesProvider.findPaths(query.getOrigin(), query.getDestination(), query.getMaxStops() + 1)
+                    .stream()
+                    .flatMap(path -> path.toRoutes().stream())
+                    .collect(Collectors.toList());
+        }
+
+        return routesProvider.findNetwork(query.getOrigins(), query.getDestinations(), query.getMaxStops() + 1)
+                .entrySet().stream()
+                .flatMap(e -> e.getValue().stream().map(to -> new Route(e.getKey(), to)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Fetches concurrently the schedules of the given route-months,
+     * which are then served from the cache. The fetches are not
+     * recorded as reads, the searches evaluated afterwards being.
+     * Failures are logged by the schedules provider and do not fail
+     * the fetch.
+     *
+     * @param plan the route-months to fetch
+     * @return the future completed once all fetched
+     */
+    public CompletableFuture<Void> fetchAsync(Set<RouteMonth> plan) {
+        return CompletableFuture.allOf(plan.stream()
+                .map(rm -> schedulesProvider.fetchAsync(rm.getOrigin(), rm.getDestination(),
+                        YearMonth.of(rm.getYear(), rm.getMonth())))
+                .toArray(CompletableFuture<?>[]::new));
+    }
+}
@@ -19,25 +19,40 @@ import com.github.pnavais.flights.api.ConnectionAnalyzer;
 import com.github.pnavais.flights.api.RoutesIndex;
 import com.github.pnavais.flights.api.RoutesProvider;
 import com.github.pnavais.flights.api.SchedulesProvider;
+import com.github.pnavais.flights.metrics.FlightsMetrics;
+import com.github.pnavais.flights.model.ConnectionQuery;
 import com.github.pnavais.flights.model.FlightConnection;
 import com.github.pnavais.flights.model.FlightPath;
 import com.github.pnavais.flights.model.Leg;
 import com.github.pnavais.flights.model.Route;
+import com.github.pnavais.flights.model.Timetable;
+import com.github.pnavais.flights.util.RequestTiming;
+import com.github.pnavais.flights.util.TimeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Flight connection analyzer for routes with a maximum of one intermediate stop.
  */
+@Primary
 @Component
 public class FlightsConnectionAnalyzer implements ConnectionAnalyzer<FlightPath, String, FlightConnection> {
 
+    /** The logger instance */
+    private static final Logger logger = LoggerFactory.getLogger(FlightsConnectionAnalyzer.class);
+
     /**
      * The routes provider
      */
@@ -50,6 +65,12 @@ public class FlightsConnectionAnalyzer implements ConnectionAnalyzer<FlightPath,
     @Autowired
     private SchedulesProvider<String> schedulesProvider;
 
+    /**
+     * The application metrics
+     */
+    @Autowired
+    private FlightsMetrics flightsMetrics;
+
     /**
      * Retrieves valid connections for the given route
      * and specified date time constraints.
@@ -60,42 +81,251 @@ public class FlightsConnectionAnalyzer implements ConnectionAnalyzer<FlightPath,
      * @return the list of valid connections
      */
     @Override
-    public List<FlightConnection> findValidConnections(List<Route> routes, LocalDateTime departureDateTime, LocalDateTime
-            arrivalDateTime) {
-        List<FlightConnection> connections = new ArrayList<>();
-
-        if (!routes.isEmpty()) {
-
-            // Retrieve initial legs
-            List<Leg<String>> initialLegs = schedulesProvider.getFlights(routes.get(0).getAirportFrom(), routes.get(0).getAirportTo(),
-                    departureDateTime,
-                    arrivalDateTime);
-
-            // Obtain all direct connections
-            if (routes.size() == 1) {
-                processDirectRoute(initialLegs, connections);
-            } else if (routes.size() == 2) {
-                // Get all intermediate flights starting from minimum departure + 2h
-                processIntermediateRoute(routes, arrivalDateTime, initialLegs, connections);
-            }
+    public List<FlightConnection> findValidConnections(List<Route> routes, LocalDateTime departureDateTime,
+                                                       LocalDateTime arrivalDateTime) {
+        return findValidConnectionsAsync(routes, departureDateTime, arrivalDateTime, Runnable::run).join();
+    }
+
+    /**
+     * Asynchronously retrieves valid connections for the given route
+     * and specified date time constraints.
+     *
+     * @param routes            the routes to analyze
+     * @param departureDateTime the departure date time
+     * @param arrivalDateTime   the arrival date time
+     * @param executor          the executor assembling the connections
+     * @return the future list of valid connections
+     */
+    @Override
+    public CompletableFuture<List<FlightConnection>> findValidConnectionsAsync(List<Route> routes,
+                                                                               LocalDateTime departureDateTime,
+                                                                               LocalDateTime arrivalDateTime,
+                                                                               Executor executor) {
+        if (routes.isEmpty()) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+
+        // Retrieve initial legs
+        return schedulesProvider.getTimetableAsync(routes.get(0).getAirportFrom(), routes.get(0).getAirportTo(),
+                departureDateTime,
+                arrivalDateTime)
+                .thenComposeAsync(initialFlights -> {
+                    List<FlightConnection> connections = new ArrayList<>();
+
+                    // Obtain all direct connections
+                    if (routes.size() == 1) {
+                        flightsMetrics.recordLegs(initialFlights.size());
+                        processDirectRoute(initialFlights, connections);
+                    } else if (routes.size() == 2) {
+                        // Get all intermediate flights starting from minimum departure + 2h
+                        return processIntermediateRoute(routes, arrivalDateTime, initialFlights, executor);
+                    }
+
+                    return CompletableFuture.completedFuture(connections);
+                }, executor);
+    }
+
+    /**
+     * Asynchronously retrieves the valid connections matching the given
+     * query, evaluating concurrently all the paths with the maximum
+     * number of stops.
+     *
+     * @param query    the criteria of the search
+     * @param executor the executor assembling the connections
+     * @return the future list of valid connections in path order, or
+     * best first if ranked
+     */
+    @Override
+    public CompletableFuture<List<FlightConnection>> findConnectionsAsync(ConnectionQuery query,
+                                                                          Executor executor) {
+        // Find all available paths
+        List<FlightPath> pathList = findPaths(query.getOrigin(), query.getDestination(), query.getMaxStops() + 1);
+
+        logger.info("Found {} paths between {} and {}", pathList.size(), query.getOrigin(), query.getDestination());
+        flightsMetrics.recordPaths(pathList.size());
+
+        if (query.isRanked()) {
+            return findBestConnectionsAsync(pathList, query, executor);
         }
 
-        return connections;
+        // Evaluate all paths concurrently
+        List<CompletableFuture<List<FlightConnection>>> pathConnections = pathList.stream()
+                .map(flightPath -> {
+
+                    logger.info("Analyzing path : [ {} ]", flightPath);
+
+                    // Find valid legs for the route
+                    return findValidConnectionsAsync(flightPath.toRoutes(), query.getDepartureDateTime(),
+                            query.getArrivalDateTime(), executor);
+                })
+                .collect(Collectors.toList());
+
+        // Gather the connections in path order
+        return CompletableFuture.allOf(pathConnections.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> {
+                    List<FlightConnection> connections = new ArrayList<>();
+                    pathConnections.forEach(f -> connections.addAll(f.join()));
+                    return connections;
+                });
+    }
+
+    /**
+     * Asynchronously retrieves the valid connections matching the given
+     * query, handing the connections of every path to the sink as soon
+     * as it has been evaluated. Ranked searches are handed once complete.
+     *
+     * @param query    the criteria of the search
+     * @param sink     the consumer of the connections found
+     * @param executor the executor assembling the connections
+     * @return the future completed once all the connections are consumed
+     */
+    @Override
+    public CompletableFuture<Void> streamConnectionsAsync(ConnectionQuery query, Consumer<List<FlightConnection>> sink,
+                                                          Executor executor) {
+        if (query.isRanked()) {
+            return findConnectionsAsync(query, executor).thenAccept(sink);
+        }
+
+        List<FlightPath> pathList = findPaths(query.getOrigin(), query.getDestination(), query.getMaxStops() + 1);
+
+        logger.info("Found {} paths between {} and {}", pathList.size(), query.getOrigin(), query.getDestination());
+        flightsMetrics.recordPaths(pathList.size());
+
+        // Hand the connections of each path as soon as evaluated
+        List<CompletableFuture<Void>> evaluations = pathList.stream()
+                .map(flightPath -> findValidConnectionsAsync(flightPath.toRoutes(), query.getDepartureDateTime(),
+                        query.getArrivalDateTime(), executor).thenAccept(sink))
+                .collect(Collectors.toList());
+
+        return CompletableFuture.allOf(evaluations.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Asynchronously retrieves the best ranked connections of the
+     * given paths, evaluated concurrently while sharing the bound
+     * of the ranking.
+     *
+     * @param pathList the paths to analyze
+     * @param query    the criteria of the search
+     * @param executor the executor assembling the connections
+     * @return the future list of best connections, best first
+     */
+    private CompletableFuture<List<FlightConnection>> findBestConnectionsAsync(List<FlightPath> pathList,
+                                                                               ConnectionQuery query,
+                                                                               Executor executor) {
+        TopConnections best = new TopConnections(query.getSort(), query.getLimit());
+
+        List<CompletableFuture<Void>> evaluations = pathList.stream()
+                .map(flightPath -> {
+
+                    logger.info("Ranking path : [ {} ]", flightPath);
+
+                    return collectBestConnectionsAsync(flightPath.toRoutes(), query, best, executor);
+                })
+                .collect(Collectors.toList());
+
+        return CompletableFuture.allOf(evaluations.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> best.toList());
+    }
+
+    /**
+     * Asynchronously offers the connections of the given route
+     * to the collector of the best connections.
+     *
+     * @param routes   the routes to analyze
+     * @param query    the criteria of the search
+     * @param best     the collector of the best connections
+     * @param executor the executor assembling the connections
+     * @return the future completed once evaluated
+     */
+    private CompletableFuture<Void> collectBestConnectionsAsync(List<Route> routes, ConnectionQuery query,
+                                                                TopConnections best, Executor executor) {
+        if (routes.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return schedulesProvider.getTimetableAsync(routes.get(0).getAirportFrom(), routes.get(0).getAirportTo(),
+                query.getDepartureDateTime(), query.getArrivalDateTime())
+                .thenComposeAsync(initialFlights -> {
+                    if (routes.size() == 1) {
+                        flightsMetrics.recordLegs(initialFlights.size());
+                        for (int i = 0; i < initialFlights.size(); i++) {
+                            int index = i;
+                            best.offer(initialFlights.getDeparture(i), initialFlights.getActualArrival(i),
+                                    () -> directConnection(initialFlights.toLeg(index)));
+                        }
+                    } else if (routes.size() == 2) {
+                        return collectBestIntermediateAsync(routes, query, initialFlights, best, executor);
+                    }
+
+                    return CompletableFuture.completedFuture(null);
+                }, executor);
+    }
+
+    /**
+     * Offers the connections of a route with one intermediate stop,
+     * abandoning it before retrieving its final flights if none of
+     * its connections can be ranked among the best ones.
+     *
+     * @param routes         the interconnected route
+     * @param query          the criteria of the search
+     * @param initialFlights initial valid flights
+     * @param best           the collector of the best connections
+     * @param executor       the executor assembling the connections
+     * @return the future completed once evaluated
+     */
+    private CompletableFuture<Void> collectBestIntermediateAsync(List<Route> routes, ConnectionQuery query,
+                                                                 Timetable<String> initialFlights,
+                                                                 TopConnections best, Executor executor) {
+        // Connections arrive after the next departure, ranked as the joiner does
+        int lowerBound = Integer.MAX_VALUE;
+        for (int i = 0; i < initialFlights.size(); i++) {
+            lowerBound = Math.min(lowerBound, query.getSort().primary(initialFlights.getDeparture(i),
+                    initialFlights.getActualArrival(i) + (int) LegJoiner.MIN_CONNECTION_TIME.toMinutes()));
+        }
+
+        if (initialFlights.isEmpty() || !best.canImprove(lowerBound)) {
+            logger.debug("Abandoning route {} : no connection can be ranked", routes);
+            flightsMetrics.recordLegs(initialFlights.size());
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Flights are sorted by departure
+        LocalDateTime nextMinDeparture = TimeUtils.toLocalDateTime(initialFlights.getDeparture(0))
+                .plus(LegJoiner.MIN_CONNECTION_TIME);
+
+        return schedulesProvider.getTimetableAsync(routes.get(1).getAirportFrom(),
+                routes.get(1).getAirportTo(), nextMinDeparture, query.getArrivalDateTime())
+                .thenAcceptAsync(finalFlights -> {
+                    flightsMetrics.recordLegs(initialFlights.size() + finalFlights.size());
+                    RequestTiming.time("join", () -> {
+                        LegJoiner.joinBest(initialFlights, finalFlights, best);
+                        return null;
+                    });
+                }, executor);
     }
 
     /**
      * Process routes with no interconnected flights
-     *  @param initialLegs the initial valid legs
+     *  @param initialFlights the initial valid flights
      * @param connections the connections target
      */
-    private void processDirectRoute(List<Leg<String>> initialLegs, List<FlightConnection> connections) {
+    private void processDirectRoute(Timetable<String> initialFlights, List<FlightConnection> connections) {
         // Create a new connection for each direct leg
-        initialLegs.forEach(l -> {
-            FlightConnection connection = new FlightConnection();
-            connection.setStops(0);
-            connection.setLegs(Arrays.asList(l));
-            connections.add(connection);
-        });
+        initialFlights.toLegs().forEach(l -> connections.add(directConnection(l)));
+    }
+
+    /**
+     * Creates a connection with no stops
+     *
+     * @param leg the direct leg
+     * @return the connection
+     */
+    private static FlightConnection directConnection(Leg<String> leg) {
+        FlightConnection connection = new FlightConnection();
+        connection.setStops(0);
+        connection.setLegs(Arrays.asList(leg));
+        return connection;
     }
 
     /**
@@ -103,32 +333,31 @@ public class FlightsConnectionAnalyzer implements ConnectionAnalyzer<FlightPath,
      *
      * @param routes the interconnected route
      * @param arrivalDateTime the arrival time
-     * @param initialLegs initial valid legs
-     * @param connections the connections target
+     * @param initialFlights initial valid flights
+     * @param executor the executor assembling the connections
+     * @return the future connections
      */
-    private void processIntermediateRoute(List<Route> routes, LocalDateTime arrivalDateTime, List<Leg<String>> initialLegs, List<FlightConnection> connections) {
-        initialLegs.stream().min(Comparator.comparing(Leg::getDepartureDateTime))
-                .ifPresent(min -> {
-
-                    LocalDateTime nextMinDeparture = min.getDepartureDateTime().plusHours(2);
-
-                    // Find final route step valid legs
-                    List<Leg<String>> finalLegs = schedulesProvider.getFlights(routes.get(1).getAirportFrom(),
-                            routes.get(1).getAirportTo(), nextMinDeparture, arrivalDateTime);
-
-                    // For each initial leg, combine with compatible final leg
-                    initialLegs.forEach(i -> finalLegs.stream()
-                            .filter(f -> (i.getArrivalDateTime().plusHours(2).compareTo(f.getDepartureDateTime()) <= 0))
-                            .forEach(f -> {
-                                FlightConnection connection = new FlightConnection();
-                                connection.setStops(1);
-                                List<Leg<String>> legs = new ArrayList<>();
-                                legs.add(i);
-                                legs.add(f);
-                                connection.setLegs(legs);
-                                connections.add(connection);
-                            }));
-                });
+    private CompletableFuture<List<FlightConnection>> processIntermediateRoute(List<Route> routes,
+                                                                               LocalDateTime arrivalDateTime,
+                                                                               Timetable<String> initialFlights,
+                                                                               Executor executor) {
+        if (initialFlights.isEmpty()) {
+            flightsMetrics.recordLegs(0);
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+
+        // Flights are sorted by departure
+        LocalDateTime nextMinDeparture = TimeUtils.toLocalDateTime(initialFlights.getDeparture(0))
+                .plus(LegJoiner.MIN_CONNECTION_TIME);
+
+        // Find final route step valid legs
+        return schedulesProvider.getTimetableAsync(routes.get(1).getAirportFrom(),
+                routes.get(1).getAirportTo(), nextMinDeparture, arrivalDateTime)
+                // For each initial leg, combine with compatible final legs
+                .thenApplyAsync(finalFlights -> {
+                    flightsMetrics.recordLegs(initialFlights.size() + finalFlights.size());
+                    return RequestTiming.time("join", () -> LegJoiner.join(initialFlights, finalFlights));
+                }, executor);
     }
 
     /**
@@ -142,7 +371,7 @@ public class FlightsConnectionAnalyzer implements ConnectionAnalyzer<FlightPath,
      */
     @Override
     public List<FlightPath> findPaths(String origin, String destination, int maxTransitions) {
-        return routesProvider.findPaths(origin, destination, maxTransitions);
+        return RequestTiming.time("paths", () -> routesProvider.findPaths(origin, destination, maxTransitions));
     }
 
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.connections;
+
+import com.github.pnavais.flights.model.ConnectionSort;
+import com.github.pnavais.flights.model.FlightConnection;
+import com.github.pnavais.flights.model.Leg;
+import com.github.pnavais.flights.model.Timetable;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Pairs the flights of the two steps of a route with one intermediate
+ * stop, honouring the minimum connection time at the stop.
+ * <p>
+ * Both steps are compact timetables sorted by departure : for every
+ * initial flight, the first compatible departure is located by binary
+ * search, so that every compatible final flight is a suffix of the
+ * final timetable. The join runs on primitive times and legs are only
+ * created for the flights belonging to some connection.
+ * </p>
+ * <p>
+ * As in the {@link ConnectionScanner}, arrivals earlier than the
+ * departure (overnight flights placed on their departure day) are
+ * considered to happen the next day when checking connections.
+ * </p>
+ */
+public final class LegJoiner {
+
+    /** The minimum time between the arrival and the next departure */
+    public static final Duration MIN_CONNECTION_TIME = Duration.ofHours(2);
+
+    /** The minimum connection time in minutes */
+    private static final int MIN_CONNECTION_MINUTES = (int) MIN_CONNECTION_TIME.toMinutes();
+
+    /**
+     * Private constructor to avoid
+     * instantiation
+     */
+    private LegJoiner() {}
+
+    /**
+     * Combines each initial flight with all the final flights departing
+     * at least the minimum connection time after its arrival.
+     * <p>
+     * Connections are produced in initial flight order and, for each of
+     * them, in final flight departure order.
+     * </p>
+     *
+     * @param initialFlights the flights of the first step
+     * @param finalFlights the flights of the second step
+     * @return the list of connections with one stop
+     */
+    public static List<FlightConnection> join(Timetable<String> initialFlights, Timetable<String> finalFlights) {
+        List<FlightConnection> connections = new ArrayList<>();
+
+        // Legs of the final step, created on first use
+        List<Leg<String>> finalLegs = new ArrayList<>(Collections.nCopies(finalFlights.size(), null));
+
+        for (int i = 0; i < initialFlights.size(); i++) {
+            int first = finalFlights.firstDepartureFrom(initialFlights.getActualArrival(i) + MIN_CONNECTION_MINUTES);
+
+            if (first < finalFlights.size()) {
+                Leg<String> initialLeg = initialFlights.toLeg(i);
+
+                for (int f = first; f < finalFlights.size(); f++) {
+                    Leg<String> finalLeg = finalLegs.get(f);
+                    if (finalLeg == null) {
+                        finalLeg = finalFlights.toLeg(f);
+                        finalLegs.set(f, finalLeg);
+                    }
+
+                    connections.add(connection(initialLeg, finalLeg));
+                }
+            }
+        }
+
+        return connections;
+    }
+
+    /**
+     * Offers the connections of each initial flight with the final flights
+     * departing at least the minimum connection time after its arrival,
+     * abandoning the initial flights and the final flights which cannot
+     * be ranked among the best connections. As final flights are sorted
+     * by departure, the scan of the compatible ones stops at the first
+     * departing too late to improve the ranking.
+     *
+     * @param initialFlights the flights of the first step
+     * @param finalFlights the flights of the second step
+     * @param best the collector of the best connections
+     */
+    public static void joinBest(Timetable<String> initialFlights, Timetable<String> finalFlights,
+                                TopConnections best) {
+        ConnectionSort sort = best.getSort();
+        List<Leg<String>> finalLegs = new ArrayList<>(Collections.nCopies(finalFlights.size(), null));
+
+        for (int i = 0; i < initialFlights.size(); i++) {
+            int departure = initialFlights.getDeparture(i);
+            int nextDeparture = initialFlights.getActualArrival(i) + MIN_CONNECTION_MINUTES;
+
+            if (!best.canImprove(sort.primary(departure, nextDeparture))) {
+                continue;
+            }
+
+            Leg<String> initialLeg = null;
+
+            for (int f = finalFlights.firstDepartureFrom(nextDeparture); f < finalFlights.size(); f++) {
+                // Final flights arrive after departing
+                if (!best.canImprove(sort.primary(departure, finalFlights.getDeparture(f)))) {
+                    break;
+                }
+
+                if (initialLeg == null) {
+                    initialLeg = initialFlights.toLeg(i);
+                }
+                Leg<String> first = initialLeg;
+                int index = f;
+
+                best.offer(departure, finalFlights.getActualArrival(f), () -> {
+                    Leg<String> finalLeg = finalLegs.get(index);
+                    if (finalLeg == null) {
+                        finalLeg = finalFlights.toLeg(index);
+                        finalLegs.set(index, finalLeg);
+                    }
+                    return connection(first, finalLeg);
+                });
+            }
+        }
+    }
+
+    /**
+     * Creates a connection with one stop
+     *
+     * @param initialLeg the leg of the first step
+     * @param finalLeg the leg of the second step
+     * @return the connection
+     */
+    private static FlightConnection connection(Leg<String> initialLeg, Leg<String> finalLeg) {
+        FlightConnection connection = new FlightConnection();
+        connection.setStops(1);
+        List<Leg<String>> legs = new ArrayList<>(2);
+        legs.add(initialLeg);
+        legs.add(finalLeg);
+        connection.setLegs(legs);
+        return connection;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.connections;
+
+import com.github.pnavais.flights.model.ConnectionSort;
+import com.github.pnavais.flights.model.FlightConnection;
+import com.github.pnavais.flights.model.Leg;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe collector of the best ranked connections of a search,
+ * keeping at most the given number of them in a bounded heap.
+ * <p>
+ * Once full, the rank of the worst connection kept bounds the search :
+ * any candidate whose rank cannot be lower can be abandoned (see
+ * {@link #canImprove(int)}) before its connections are even built.
+ * </p>
+ * <p>
+ * Connections of equal rank are ordered by their number of stops and
+ * then by their legs, so that the connections kept and their order do
+ * not depend on the order in which they are offered.
+ * </p>
+ */
+public final class TopConnections {
+
+    /** The order of the connections, best first */
+    private static final Comparator<Ranked> ORDER = Comparator.comparingLong((Ranked r) -> r.rank)
+            .thenComparingInt(r -> r.connection.getStops())
+            .thenComparing(r -> r.key);
+
+    /** The ranking of the connections */
+    private final ConnectionSort sort;
+
+    /** The maximum number of connections kept (0 if unlimited) */
+    private final int limit;
+
+    /** The connections kept, worst first */
+    private final PriorityQueue<Ranked> heap;
+
+    /** The rank of the worst connection kept once full */
+    private volatile long bound = Long.MAX_VALUE;
+
+    /**
+     * Constructor with the ranking and limit
+     *
+     * @param sort the ranking of the connections
+     * @param limit the maximum number of connections or 0 if unlimited
+     */
+    public TopConnections(ConnectionSort sort, int limit) {
+        this.sort = sort;
+        this.limit = limit;
+        this.heap = new PriorityQueue<>(ORDER.reversed());
+    }
+
+    /**
+     * Retrieves the ranking of the connections
+     *
+     * @return the ranking
+     */
+    public ConnectionSort getSort() {
+        return sort;
+    }
+
+    /**
+     * Checks whether a connection with the given lower bound
+     * of its primary key could still be kept.
+     *
+     * @param primaryLowerBound the lower bound of the primary key
+     * @return true if it could be kept, false otherwise
+     */
+    public boolean canImprove(int primaryLowerBound) {
+        return primaryLowerBound <= ConnectionSort.primaryOf(bound);
+    }
+
+    /**
+     * Offers a connection, which is only created
+     * if ranked among the best ones (or tied with
+     * the worst one kept).
+     *
+     * @param departure the departure of the first flight
+     * @param arrival the arrival of the last flight
+     * @param connection the supplier of the connection
+     * @return true if kept, false otherwise
+     */
+    public synchronized boolean offer(int departure, int arrival, Supplier<FlightConnection> connection) {
+        long rank = sort.rank(departure, arrival);
+
+        if (rank > bound) {
+            return false;
+        }
+
+        Ranked candidate = new Ranked(rank, connection.get());
+        if (limit != 0 && heap.size() == limit && ORDER.compare(candidate, heap.peek()) >= 0) {
+            return false;
+        }
+
+        heap.add(candidate);
+        if (limit != 0 && heap.size() > limit) {
+            heap.poll();
+        }
+        if (limit != 0 && heap.size() == limit) {
+            bound = heap.peek().rank;
+        }
+
+        return true;
+    }
+
+    /**
+     * Retrieves the connections kept, best first
+     *
+     * @return the list of connections
+     */
+    public synchronized List<FlightConnection> toList() {
+        List<Ranked> ranked = new ArrayList<>(heap);
+        ranked.sort(ORDER);
+
+        List<FlightConnection> connections = new ArrayList<>(ranked.size());
+        ranked.forEach(r -> connections.add(r.connection));
+        return connections;
+    }
+
+    /**
+     * A connection with its rank
+     */
+    private static final class Ranked {
+
+        /** The rank of the connection */
+        private final long rank;
+
+        /** The airports and times of the legs, breaking ties */
+        private final String key;
+
+        /** The connection */
+        private final FlightConnection connection;
+
+        /**
+         * Constructor with the rank and the connection
+         *
+         * @param rank the rank
+         * @param connection the connection
+         */
+        private Ranked(long rank, FlightConnection connection) {
+            this.rank = rank;
+            this.key = keyOf(connection);
+            this.connection = connection;
+        }
+
+        /**
+         * Builds the key of the legs of a connection
+         *
+         * @param connection the connection
+         * @return the key
+         */
+        private static String keyOf(FlightConnection connection) {
+            StringBuilder key = new StringBuilder();
+            for (Leg<String> leg : connection.getLegs()) {
+                key.append(leg.getDepartureDateTime()).append(' ').append(leg.getDepartureAirport()).append(' ')
+                        .append(leg.getArrivalAirport()).append(' ').append(leg.getArrivalDateTime()).append('|');
+            }
+            return key.toString();
+        }
+    }
+}
@@ -15,34 +15,143 @@
  */
 package com.github.pnavais.flights.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.pnavais.flights.api.ConnectionAnalyzer;
+import com.github.pnavais.flights.cache.ConnectionsCache;
+import com.github.pnavais.flights.cache.PopularityTracker;
+import com.github.pnavais.flights.connections.FetchPlanner;
+import com.github.pnavais.flights.metrics.FlightsMetrics;
+import com.github.pnavais.flights.model.ConnectionQuery;
+import com.github.pnavais.flights.model.ConnectionRequest;
+import com.github.pnavais.flights.model.ConnectionSort;
 import com.github.pnavais.flights.model.FlightConnection;
 import com.github.pnavais.flights.model.FlightPath;
+import com.github.pnavais.flights.model.RouteMonth;
+import com.github.pnavais.flights.util.ExecutorUtils;
+import com.github.pnavais.flights.util.RequestPriority;
+import com.github.pnavais.flights.util.RequestTiming;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/interconnections")
 public class InterconnectionsController {
 
-    /** Default number of stops */
-    private static final int DEFAULT_MAX_ROUTE_SIZE = 2;
+    /** The media type of newline delimited JSON */
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    /** The media type of newline delimited JSON */
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType(APPLICATION_NDJSON_VALUE);
+
+    /** The header holding the timing of the stages of the request */
+    private static final String SERVER_TIMING = "Server-Timing";
 
     /** The flight connection Analyzer */
     @Autowired
     private ConnectionAnalyzer<FlightPath, String, FlightConnection> connectionAnalyzer;
 
+    /** The flight connection Analyzer for journeys with several stops */
+    @Autowired
+    @Qualifier("connectionScanAnalyzer")
+    private ConnectionAnalyzer<FlightPath, String, FlightConnection> connectionScanAnalyzer;
+
+    /** The cache of the connections found */
+    @Autowired
+    private ConnectionsCache connectionsCache;
+
+    /** The frequency of the searches */
+    @Autowired
+    private PopularityTracker popularityTracker;
+
+    /** The planner of the schedules of batch requests */
+    @Autowired
+    private FetchPlanner fetchPlanner;
+
+    /** The mapper of the streamed connections */
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /** The application metrics */
+    @Autowired
+    private FlightsMetrics flightsMetrics;
+
+    /** The maximum number of stops allowed in a query */
+    @Value("${interconnections.stops.max:3}")
+    private int maxStopsAllowed;
+
+    /** The maximum number of departure or arrival airports of a query */
+    @Value("${interconnections.airports.max:10}")
+    private int maxAirportsAllowed;
+
+    /** The maximum number of queries of a batch request */
+    @Value("${interconnections.batch.max-queries:500}")
+    private int maxBatchQueries;
+
+    /** Whether the stages of the requests are timed */
+    @Value("${interconnections.timing.enabled:true}")
+    private boolean timingEnabled;
+
+    /** The fraction of the requests logging the timing of their stages */
+    @Value("${interconnections.timing.log-sample-rate:0.0}")
+    private double timingLogSampleRate;
+
     /** The logger instance */
     private static final Logger logger = LoggerFactory.getLogger(InterconnectionsController.class);
 
+    /** The maximum number of paths evaluated concurrently */
+    @Value("${interconnections.paths.pool.size:8}")
+    private int pathsPoolSize;
+
+    /** The maximum number of paths waiting to be evaluated */
+    @Value("${interconnections.paths.queue.size:64}")
+    private int pathsQueueSize;
+
+    /** The executor assembling the connections of the paths */
+    private ExecutorService pathsExecutor;
+
+    /**
+     * Creates the executor used to evaluate
+     * the paths of a query.
+     */
+    @PostConstruct
+    public void init() {
+        this.pathsExecutor = ExecutorUtils.newBoundedExecutor("paths", pathsPoolSize, pathsQueueSize);
+    }
+
+    /**
+     * Releases the executor on bean destruction
+     */
+    @PreDestroy
+    public void destroy() {
+        ExecutorUtils.shutdown(pathsExecutor);
+    }
+
     /**
      * Provides a list of flights departing from a given departure airport not earlier
      * than the specified departure datetime and arriving to a given arrival airport not later than the
@@ -55,56 +164,326 @@ public class InterconnectionsController {
      * (for example: DUB - STN - WRO)
      * </p>
      * <p>
+     * Journeys with more stops can be requested up to the configured maximum,
+     * in which case they are searched by a scan of all the flights involved.
+     * </p>
+     * <p>
+     * Several departure or arrival airports can be given separated by commas
+     * (for example: STN,LTN,LGW to WRO,KRK), in which case the flights between
+     * any of them are searched at once in a single scan of the network.
+     * </p>
+     * <p>
+     * When a limit or a sort is given, only the best ranked flights are returned
+     * (earliest arrival or shortest duration first) and any route unable to
+     * improve the ranking is abandoned as soon as possible.
+     * </p>
+     * <p>
      * For interconnected flights the difference between the arrival and the next departure should be 2h
      * or greater
      * </p>
-     * @param srcAirport the origin airport
-     * @param targetAirport the destination airport
+     * <p>
+     * Identical searches are served from a cache until the routes or any of
+     * the schedules they used are refreshed.
+     * </p>
+     * <p>
+     * The time spent in every stage of the search is returned in a Server-Timing header.
+     * </p>
+     * @param srcAirport the origin airport, or several separated by commas
+     * @param targetAirport the destination airport, or several separated by commas
      * @param departure the departure date time
      * @param arrival the arrival date time
-     * @return the list of flights matching the criteria
+     * @param maxStops the maximum number of stops (1 by default)
+     * @param limit the maximum number of flights, best ranked first (unlimited by default)
+     * @param sort the ranking of the flights : arrival (default if limited) or duration
+     * @return the future response with the list of flights matching the criteria,
+     * completed asynchronously without holding the servlet thread
      */
     @ResponseStatus(HttpStatus.OK)
     @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public List<FlightConnection> getPaths(@RequestParam("departure") String srcAirport,
-                                     @RequestParam("arrival")String targetAirport,
-                                     @RequestParam("departureDateTime")String departure,
-                                     @RequestParam("arrivalDateTime")String arrival) {
+    public CompletableFuture<ResponseEntity<List<FlightConnection>>> getPaths(
+            @RequestParam("departure") String srcAirport,
+            @RequestParam("arrival")String targetAirport,
+            @RequestParam("departureDateTime")String departure,
+            @RequestParam("arrivalDateTime")String arrival,
+            @RequestParam(value = "maxStops", defaultValue = "1") int maxStops,
+            @RequestParam(value = "limit", defaultValue = "0") int limit,
+            @RequestParam(value = "sort", required = false) String sort) {
 
-        LocalDateTime departureDateTime = LocalDateTime.parse(departure);
-        LocalDateTime arrivalDateTime = LocalDateTime.parse(arrival);
+        RequestTiming timing = timingEnabled ? RequestTiming.begin() : null;
 
-        logger.info("Departure      =>  {}", srcAirport);
-        logger.info("Arrival        =>  {}", targetAirport);
-        logger.info("Departure Time =>  {}", departureDateTime);
-        logger.info("Arrival Time   =>  {}", arrivalDateTime);
+        try {
+            ConnectionQuery query = toQuery(srcAirport, targetAirport, departure, arrival, maxStops, limit, sort);
 
+            if (query == null) {
+                return CompletableFuture.completedFuture(ResponseEntity.ok(new ArrayList<>()));
+            }
+            popularityTracker.recordQuery(query);
 
-        List<FlightConnection> connections = new ArrayList<>();
+            return connectionsCache.get(query, q -> analyzerFor(q).findConnectionsAsync(q, pathsExecutor))
+                    .thenApply(connections -> {
+                        flightsMetrics.recordConnections(connections.size());
 
-        // Check dates are consistent
-        if (arrivalDateTime.compareTo(departureDateTime)>=0) {
+                        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                        if (timing != null) {
+                            completeTiming(query, timing);
+                            response.header(SERVER_TIMING, timing.toServerTiming());
+                        }
+                        return response.body(connections);
+                    });
+        } finally {
+            RequestTiming.end();
+        }
+    }
+
+    /**
+     * Streams the flights matching the criteria as newline delimited JSON
+     * (one connection per line), writing the connections of every path as
+     * soon as it has been evaluated. Ranked searches are written once
+     * complete.
+     *
+     * @param srcAirport the origin airport, or several separated by commas
+     * @param targetAirport the destination airport, or several separated by commas
+     * @param departure the departure date time
+     * @param arrival the arrival date time
+     * @param maxStops the maximum number of stops (1 by default)
+     * @param limit the maximum number of flights, best ranked first (unlimited by default)
+     * @param sort the ranking of the flights : arrival (default if limited) or duration
+     * @return the emitter of the flights matching the criteria
+     * @see #getPaths(String, String, String, String, int, int, String)
+     */
+    @ResponseStatus(HttpStatus.OK)
+    @GetMapping(produces = APPLICATION_NDJSON_VALUE)
+    public ResponseBodyEmitter streamPaths(@RequestParam("departure") String srcAirport,
+                                           @RequestParam("arrival")String targetAirport,
+                                           @RequestParam("departureDateTime")String departure,
+                                           @RequestParam("arrivalDateTime")String arrival,
+                                           @RequestParam(value = "maxStops", defaultValue = "1") int maxStops,
+                                           @RequestParam(value = "limit", defaultValue = "0") int limit,
+                                           @RequestParam(value = "sort", required = false) String sort) {
+
+        RequestTiming timing = timingEnabled ? RequestTiming.begin() : null;
+
+        try {
+            ConnectionQuery query = toQuery(srcAirport, targetAirport, departure, arrival, maxStops, limit, sort);
+            ResponseBodyEmitter emitter = new ResponseBodyEmitter();
 
-            // Find all available paths
-            List<FlightPath> pathList = connectionAnalyzer.findPaths(srcAirport, targetAirport, DEFAULT_MAX_ROUTE_SIZE);
+            if (query == null) {
+                emitter.complete();
+                return emitter;
+            }
+            popularityTracker.recordQuery(query);
 
-            logger.info("Found {} paths between {} and {}", pathList.size(), srcAirport, targetAirport);
+            AtomicInteger sent = new AtomicInteger();
+            analyzerFor(query).streamConnectionsAsync(query, connections -> {
+                        send(emitter, connections);
+                        sent.addAndGet(connections.size());
+                    }, pathsExecutor)
+                    .whenComplete((v, e) -> {
+                        if (e != null) {
+                            logger.warn("Error streaming flights for {} : {}", query, e.getLocalizedMessage());
+                            emitter.completeWithError(e);
+                        } else {
+                            flightsMetrics.recordConnections(sent.get());
+                            if (timing != null) {
+                                completeTiming(query, timing);
+                            }
+                            emitter.complete();
+                        }
+                    });
 
-            // Find all valid connection flights for each route
-            pathList.forEach(flightPath -> {
+            return emitter;
+        } finally {
+            RequestTiming.end();
+        }
+    }
+
+    /**
+     * Provides the flights matching every search of a batch. The monthly
+     * schedules needed by all the searches are planned and fetched once
+     * (each route-month at most once, concurrently), then every search is
+     * evaluated against the schedules already retrieved. Both stages run
+     * with batch priority, so that any schedule requested upstream waits
+     * behind interactive searches.
+     *
+     * @param requests the searches, with the same criteria as single searches
+     * @return the future list of the flights matching every search, in order
+     * @see #getPaths(String, String, String, String, int, int, String)
+     */
+    @ResponseStatus(HttpStatus.OK)
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public CompletableFuture<List<List<FlightConnection>>> getBatchPaths(
+            @RequestBody List<ConnectionRequest> requests) {
 
-                logger.info("Analyzing path : [ {} ]", flightPath);
+        if (requests.size() > maxBatchQueries) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Too many queries " + requests.size() +
+                    " (maximum " + maxBatchQueries + ")");
+        }
+
+        List<ConnectionQuery> queries = requests.stream()
+                .map(r -> toQuery(r.getDeparture(), r.getArrival(), r.getDepartureDateTime(),
+                        r.getArrivalDateTime(), r.getMaxStops(), r.getLimit(), r.getSort()))
+                .collect(Collectors.toList());
 
-                // Find valid legs for the route
-                connections.addAll(connectionAnalyzer.findValidConnections(flightPath.toRoutes(), departureDateTime,
-                        arrivalDateTime));
+        List<ConnectionQuery> validQueries = queries.stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        validQueries.forEach(popularityTracker::recordQuery);
+        Set<RouteMonth> plan = fetchPlanner.plan(validQueries);
+        logger.info("Batch of {} queries ({} valid) needing {} route-months", queries.size(),
+                validQueries.size(), plan.size());
 
-            });
+        return RequestPriority.BATCH.call(() -> fetchPlanner.fetchAsync(plan)).thenCompose(v -> {
+            List<CompletableFuture<List<FlightConnection>>> results = RequestPriority.BATCH.call(() -> queries.stream()
+                    .map(query -> (query == null)
+                            ? CompletableFuture.<List<FlightConnection>>completedFuture(new ArrayList<>())
+                            : analyzerFor(query).findConnectionsAsync(query, pathsExecutor))
+                    .collect(Collectors.toList()));
+
+            return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+                    .thenApply(all -> results.stream()
+                            .map(CompletableFuture::join)
+                            .peek(connections -> flightsMetrics.recordConnections(connections.size()))
+                            .collect(Collectors.toList()));
+        });
+    }
+
+    /**
+     * Records the total time of the request and logs
+     * the timing of its stages if sampled.
+     *
+     * @param query the criteria of the search
+     * @param timing the timing of the request
+     */
+    private void completeTiming(ConnectionQuery query, RequestTiming timing) {
+        timing.record("total", timing.elapsedNanos());
+
+        if ((timingLogSampleRate > 0) && (ThreadLocalRandom.current().nextDouble() < timingLogSampleRate)) {
+            logger.info("Timing {} : {}", query, timing);
         }
+    }
 
-        return connections;
+    /**
+     * Writes the given connections to the emitter in a single
+     * chunk, one JSON document per line.
+     *
+     * @param emitter the emitter
+     * @param connections the connections to write
+     */
+    private void send(ResponseBodyEmitter emitter, List<FlightConnection> connections) {
+        if (connections.isEmpty()) {
+            return;
+        }
+
+        try {
+            StringBuilder chunk = new StringBuilder();
+            for (FlightConnection connection : connections) {
+                chunk.append(objectMapper.writeValueAsString(connection)).append('\n');
+            }
+            emitter.send(chunk.toString(), APPLICATION_NDJSON);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
+    /**
+     * Parses and validates the criteria of a search.
+     *
+     * @param srcAirport the origin airports separated by commas
+     * @param targetAirport the destination airports separated by commas
+     * @param departure the departure date time
+     * @param arrival the arrival date time
+     * @param maxStops the maximum number of stops
+     * @param limit the maximum number of flights
+     * @param sort the ranking of the flights
+     * @return the query or null if no flights can match
+     */
+    private ConnectionQuery toQuery(String srcAirport, String targetAirport, String departure, String arrival,
+                                    int maxStops, int limit, String sort) {
+        Set<String> origins = parseAirports(srcAirport);
+        Set<String> destinations = parseAirports(targetAirport);
+        LocalDateTime departureDateTime = LocalDateTime.parse(departure);
+        LocalDateTime arrivalDateTime = LocalDateTime.parse(arrival);
 
+        logger.debug("Departure      =>  {}", srcAirport);
+        logger.debug("Arrival        =>  {}", targetAirport);
+        logger.debug("Departure Time =>  {}", departureDateTime);
+        logger.debug("Arrival Time   =>  {}", arrivalDateTime);
+        logger.debug("Max Stops      =>  {}", maxStops);
+
+        // Check dates are consistent
+        if (arrivalDateTime.compareTo(departureDateTime)<0) {
+            return null;
+        }
+
+        // Check ranking is consistent
+        if (limit < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid limit " + limit);
+        }
+        ConnectionSort connectionSort = parseSort(sort, limit);
+
+        // Check stops are within bounds
+        if (maxStops < 0) {
+            return null;
+        } else if (maxStops > maxStopsAllowed) {
+            logger.warn("Max stops {} limited to {}", maxStops, maxStopsAllowed);
+            maxStops = maxStopsAllowed;
+        }
+
+        return new ConnectionQuery(origins, destinations, departureDateTime, arrivalDateTime, maxStops,
+                connectionSort, limit);
+    }
+
+    /**
+     * Parses a list of airports separated by commas
+     *
+     * @param airports the airports
+     * @return the distinct airports in order
+     */
+    private Set<String> parseAirports(String airports) {
+        Set<String> codes = Arrays.stream(airports.split(","))
+                .map(String::trim)
+                .filter(code -> !code.isEmpty())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+
+        if (codes.isEmpty() || codes.size() > maxAirportsAllowed) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid airports " + airports +
+                    " (1 to " + maxAirportsAllowed + " expected)");
+        }
+        return codes;
+    }
+
+    /**
+     * Selects the analyzer of the given query, scanning all the
+     * flights when enumerating paths would explode or when several
+     * airports are searched at once.
+     *
+     * @param query the criteria of the search
+     * @return the analyzer
+     */
+    private ConnectionAnalyzer<FlightPath, String, FlightConnection> analyzerFor(ConnectionQuery query) {
+        return query.isPathSearch() ? connectionAnalyzer : connectionScanAnalyzer;
+    }
+
+    /**
+     * Parses the ranking of the flights, which defaults
+     * to the earliest arrival when limited.
+     *
+     * @param sort the name of the ranking
+     * @param limit the maximum number of flights
+     * @return the ranking or null if unsorted
+     */
+    private static ConnectionSort parseSort(String sort, int limit) {
+        if (sort == null) {
+            return (limit != ConnectionQuery.UNLIMITED) ? ConnectionSort.ARRIVAL : null;
+        }
+
+        try {
+            return ConnectionSort.from(sort);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.jackson;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.time.Month;
+
+/**
+ * Provides the object mapper shared by the REST clients,
+ * configured once with the custom modules.
+ */
+public class Mappers {
+
+    /**
+     * Private constructor to avoid
+     * instantiation
+     */
+    private Mappers() {}
+
+    /**
+     * Retrieves the shared mapper ignoring unknown
+     * properties and decoding months and times.
+     *
+     * @return the shared mapper
+     */
+    public static ObjectMapper getDefault() {
+        return MapperHolder.instance;
+    }
+
+    /**
+     * Creates the shared mapper
+     *
+     * @return the mapper
+     */
+    private static ObjectMapper create() {
+        SimpleModule extraModule = new SimpleModule();
+        extraModule.addDeserializer(Month.class, MonthDeserializer.getDefault());
+
+        return new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .registerModule(extraModule)
+                .registerModule(new JavaTimeModule())
+                .registerModule(new Jdk8Module());
+    }
+
+    /**
+     * Holder of the shared instance
+     */
+    private static class MapperHolder {
+        private static final ObjectMapper instance = create();
+    }
+}
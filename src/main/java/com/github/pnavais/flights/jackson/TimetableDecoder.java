@@ -0,0 +1,365 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.jackson;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.pnavais.flights.model.RouteMonth;
+import com.github.pnavais.flights.model.Timetable;
+import com.github.pnavais.flights.util.TimeUtils;
+import feign.Response;
+import feign.codec.DecodeException;
+import feign.codec.Decoder;
+import feign.jackson.JacksonDecoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * A Feign decoder parsing the monthly schedules of the Schedules API
+ * straight into compact timetables with the streaming parser. Times
+ * are read from the characters of the tokens (no intermediate model
+ * nor {@link java.time.LocalTime}) and any other field is skipped.
+ * The route and month are those of the request URL, i.e.
+ * {@code .../{departure}/{arrival}/years/{year}/months/{month}}.
+ * <p>
+ * Any other type is decoded by a {@link JacksonDecoder} sharing the
+ * same mapper.
+ * </p>
+ */
+public class TimetableDecoder implements Decoder {
+
+    /** The segment of the URL preceding the year */
+    private static final String YEARS_SEGMENT = "years";
+
+    /** The initial capacity of the flights of a month */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** The mapper providing the parsers */
+    private final ObjectMapper mapper;
+
+    /** The decoder of any other type */
+    private final Decoder delegate;
+
+    /**
+     * Creates the decoder with the given mapper
+     *
+     * @param mapper the mapper
+     */
+    public TimetableDecoder(ObjectMapper mapper) {
+        this.mapper = mapper;
+        this.delegate = new JacksonDecoder(mapper);
+    }
+
+    @Override
+    public Object decode(Response response, Type type) throws IOException {
+        if (!isTimetable(type)) {
+            return delegate.decode(response, type);
+        }
+
+        RouteMonth routeMonth = toRouteMonth(response.request().url());
+
+        if (response.body() == null) {
+            return Timetable.empty(routeMonth.getOrigin(), routeMonth.getDestination());
+        }
+
+        try (InputStream in = response.body().asInputStream();
+             JsonParser parser = mapper.getFactory().createParser(in)) {
+            return parse(parser, routeMonth);
+        }
+    }
+
+    /**
+     * Parses the monthly schedule of the given route-month.
+     * The arrival of each flight is placed on its departure day.
+     *
+     * @param parser the parser positioned before the schedule
+     * @param routeMonth the route-month
+     * @return the timetable
+     * @throws IOException on malformed schedules
+     */
+    public static Timetable<String> parse(JsonParser parser, RouteMonth routeMonth) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a schedule");
+        }
+
+        Flights flights = new Flights(LocalDate.of(routeMonth.getYear(), routeMonth.getMonth(), 1).toEpochDay());
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            if ((parser.nextToken() == JsonToken.START_ARRAY) && "days".equals(field)) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    parseDay(parser, flights);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        return flights.toTimetable(routeMonth.getOrigin(), routeMonth.getDestination());
+    }
+
+    /**
+     * Parses the flights of a day of the month
+     *
+     * @param parser the parser positioned at the start of the day
+     * @param flights the flights parsed
+     * @throws IOException on malformed schedules
+     */
+    private static void parseDay(JsonParser parser, Flights flights) throws IOException {
+        int first = flights.size;
+        int day = 0;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("day".equals(field)) {
+                day = toInt(parser);
+            } else if ((token == JsonToken.START_ARRAY) && "flights".equals(field)) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    parseFlight(parser, flights);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (day < 1) {
+            throw new JsonParseException(parser, "Missing day of the month");
+        }
+
+        // The day may follow its flights
+        flights.placeOnDay(first, day);
+    }
+
+    /**
+     * Parses a flight
+     *
+     * @param parser the parser positioned at the start of the flight
+     * @param flights the flights parsed
+     * @throws IOException on malformed schedules
+     */
+    private static void parseFlight(JsonParser parser, Flights flights) throws IOException {
+        int number = 0;
+        int departure = -1;
+        int arrival = -1;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "number":
+                    number = toInt(parser);
+                    break;
+                case "departureTime":
+                    departure = toMinuteOfDay(parser);
+                    break;
+                case "arrivalTime":
+                    arrival = toMinuteOfDay(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        if ((departure < 0) || (arrival < 0)) {
+            throw new JsonParseException(parser, "Missing departure or arrival time");
+        }
+
+        flights.add(departure, arrival, number);
+    }
+
+    /**
+     * Reads the current number, given as such or as a string
+     *
+     * @param parser the parser positioned at the number
+     * @return the number
+     * @throws IOException if not a number
+     */
+    private static int toInt(JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getIntValue();
+        }
+
+        char[] text = parser.getTextCharacters();
+        int end = parser.getTextOffset() + parser.getTextLength();
+        int value = 0;
+        for (int i = parser.getTextOffset(); i < end; i++) {
+            int digit = text[i] - '0';
+            if ((digit < 0) || (digit > 9)) {
+                throw new JsonParseException(parser, "Invalid number " + parser.getText());
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Reads the current time of the day, formatted as HH:mm
+     * (seconds, if any, are ignored)
+     *
+     * @param parser the parser positioned at the time
+     * @return the minute of the day
+     * @throws IOException if not a time
+     */
+    private static int toMinuteOfDay(JsonParser parser) throws IOException {
+        char[] text = parser.getTextCharacters();
+        int end = parser.getTextOffset() + parser.getTextLength();
+        int hours = 0;
+        int minutes = 0;
+        boolean separated = false;
+
+        for (int i = parser.getTextOffset(); i < end; i++) {
+            char c = text[i];
+            if (c == ':') {
+                if (separated) {
+                    break;
+                }
+                separated = true;
+            } else if ((c >= '0') && (c <= '9')) {
+                if (separated) {
+                    minutes = minutes * 10 + (c - '0');
+                } else {
+                    hours = hours * 10 + (c - '0');
+                }
+            } else {
+                throw new JsonParseException(parser, "Invalid time " + parser.getText());
+            }
+        }
+
+        if (!separated || (hours > 23) || (minutes > 59)) {
+            throw new JsonParseException(parser, "Invalid time " + parser.getText());
+        }
+        return hours * 60 + minutes;
+    }
+
+    /**
+     * Extracts the route-month from the URL of a schedule request
+     *
+     * @param url the request URL
+     * @return the route-month
+     */
+    static RouteMonth toRouteMonth(String url) {
+        int query = url.indexOf('?');
+        String[] segments = ((query < 0) ? url : url.substring(0, query)).split("/");
+
+        for (int i = 2; i + 3 < segments.length; i++) {
+            if (YEARS_SEGMENT.equals(segments[i])) {
+                try {
+                    return new RouteMonth(segments[i - 2], segments[i - 1], Integer.parseInt(segments[i + 1]),
+                            Integer.parseInt(segments[i + 3]));
+                } catch (NumberFormatException e) {
+                    break;
+                }
+            }
+        }
+
+        throw new DecodeException("Not a schedule request : " + url);
+    }
+
+    /**
+     * Checks whether the given type is a timetable
+     *
+     * @param type the type
+     * @return true if a timetable, false otherwise
+     */
+    private static boolean isTimetable(Type type) {
+        Type raw = (type instanceof ParameterizedType) ? ((ParameterizedType) type).getRawType() : type;
+        return raw == Timetable.class;
+    }
+
+    /**
+     * Growable arrays of the flights of a month
+     */
+    private static class Flights {
+
+        /** The epoch day of the first day of the month */
+        private final long firstDay;
+
+        /** The departure times */
+        private int[] departures = new int[INITIAL_CAPACITY];
+
+        /** The arrival times */
+        private int[] arrivals = new int[INITIAL_CAPACITY];
+
+        /** The flight numbers */
+        private int[] numbers = new int[INITIAL_CAPACITY];
+
+        /** The number of flights */
+        private int size;
+
+        /**
+         * Creates the flights of the month starting on the given day
+         *
+         * @param firstDay the epoch day of the first day of the month
+         */
+        Flights(long firstDay) {
+            this.firstDay = firstDay;
+        }
+
+        /**
+         * Adds a flight, with its times relative to its day
+         *
+         * @param departure the minute of the day of the departure
+         * @param arrival the minute of the day of the arrival
+         * @param number the flight number
+         */
+        void add(int departure, int arrival, int number) {
+            if (size == departures.length) {
+                departures = Arrays.copyOf(departures, size * 2);
+                arrivals = Arrays.copyOf(arrivals, size * 2);
+                numbers = Arrays.copyOf(numbers, size * 2);
+            }
+            departures[size] = departure;
+            arrivals[size] = arrival;
+            numbers[size] = number;
+            size++;
+        }
+
+        /**
+         * Places on the given day of the month the
+         * flights added from the given position
+         *
+         * @param first the position of the first flight of the day
+         * @param day the day of the month
+         */
+        void placeOnDay(int first, int day) {
+            int dayMinute = (int) ((firstDay + day - 1) * TimeUtils.MINUTES_PER_DAY);
+            for (int i = first; i < size; i++) {
+                departures[i] += dayMinute;
+                arrivals[i] += dayMinute;
+            }
+        }
+
+        /**
+         * Creates the timetable of the flights
+         *
+         * @param origin the origin airport
+         * @param destination the destination airport
+         * @return the timetable
+         */
+        Timetable<String> toTimetable(String origin, String destination) {
+            return Timetable.of(origin, destination, Arrays.copyOf(departures, size),
+                    Arrays.copyOf(arrivals, size), Arrays.copyOf(numbers, size));
+        }
+    }
+}
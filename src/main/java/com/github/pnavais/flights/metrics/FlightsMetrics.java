@@ -0,0 +1,169 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.metrics;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.pnavais.flights.api.RoutesIndex;
+import com.github.pnavais.flights.util.RequestCoalescer;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Application meters describing the work done by every
+ * query : paths evaluated, legs fetched and connections
+ * returned, as well as the search and size of the routes.
+ */
+@Component
+public class FlightsMetrics {
+
+    /** The registry of the meters */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** The number of paths evaluated per query */
+    private DistributionSummary pathsPerQuery;
+
+    /** The number of legs fetched per path */
+    private DistributionSummary legsPerPath;
+
+    /** The number of connections returned per query */
+    private DistributionSummary connectionsPerQuery;
+
+    /** The latency of the search of paths in the routes */
+    private Timer routesSearch;
+
+    /**
+     * Registers the meters
+     */
+    @PostConstruct
+    public void init() {
+        pathsPerQuery = DistributionSummary.builder("flights.query.paths")
+                .description("Paths evaluated per query")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        legsPerPath = DistributionSummary.builder("flights.path.legs")
+                .description("Legs fetched per path")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        connectionsPerQuery = DistributionSummary.builder("flights.query.connections")
+                .description("Connections returned per query")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        routesSearch = Timer.builder("flights.routes.search")
+                .description("Search of the paths between two airports")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Registers the gauges of the size of the current routes
+     * (gauges only keep a weak reference to the holder).
+     *
+     * @param routes the holder of the current routes
+     */
+    public void registerRoutes(AtomicReference<? extends RoutesIndex<?, ?>> routes) {
+        Gauge.builder("flights.routes.airports", routes, r -> r.get().getAirportCount())
+                .description("Airports of the current routes")
+                .register(meterRegistry);
+        Gauge.builder("flights.routes.count", routes, r -> r.get().getRouteCount())
+                .description("Routes between airports of the current routes")
+                .register(meterRegistry);
+        Gauge.builder("flights.routes.version", routes, r -> r.get().getVersion())
+                .description("Version of the current routes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Registers the meters of the given cache (size, hits,
+     * misses, evictions and loads)
+     *
+     * @param cache the cache
+     * @param name the name of the cache
+     */
+    public void registerCache(Cache<?, ?> cache, String name) {
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+    }
+
+    /**
+     * Registers the meters of the given coalescer (requests
+     * executed, requests coalesced and requests in flight)
+     *
+     * @param coalescer the coalescer
+     * @param name the name of the coalesced requests
+     */
+    public void registerCoalescer(RequestCoalescer<?, ?> coalescer, String name) {
+        FunctionCounter.builder("flights.coalescer.executed", coalescer, RequestCoalescer::getExecutedCount)
+                .description("Requests executed by the coalescer")
+                .tag("name", name)
+                .register(meterRegistry);
+        FunctionCounter.builder("flights.coalescer.coalesced", coalescer, RequestCoalescer::getCoalescedCount)
+                .description("Requests joined to an identical request in flight")
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("flights.coalescer.in-flight", coalescer, RequestCoalescer::getInFlightCount)
+                .description("Requests in flight in the coalescer")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Records the number of paths evaluated by a query
+     *
+     * @param paths the number of paths
+     */
+    public void recordPaths(int paths) {
+        pathsPerQuery.record(paths);
+    }
+
+    /**
+     * Records the number of legs fetched for a path
+     *
+     * @param legs the number of legs
+     */
+    public void recordLegs(int legs) {
+        legsPerPath.record(legs);
+    }
+
+    /**
+     * Records the number of connections returned by a query
+     *
+     * @param connections the number of connections
+     */
+    public void recordConnections(int connections) {
+        connectionsPerQuery.record(connections);
+    }
+
+    /**
+     * Times the search of paths in the routes
+     *
+     * @param search the search
+     * @param <T> the type of result
+     * @return the result of the search
+     */
+    public <T> T timeRoutesSearch(Supplier<T> search) {
+        return routesSearch.record(search);
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.model;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The criteria of a search of connections between two airports, or
+ * between any of several departure airports and any of several
+ * arrival airports.
+ */
+public final class ConnectionQuery {
+
+    /** Marks a search without limit of results */
+    public static final int UNLIMITED = 0;
+
+    /** Maximum number of stops of the searches evaluated path by path */
+    public static final int PATH_MAX_STOPS = 1;
+
+    /** The departure Airport IATA codes */
+    private final Set<String> origins;
+
+    /** The arrival Airport IATA codes */
+    private final Set<String> destinations;
+
+    /** The minimum departure time */
+    private final LocalDateTime departureDateTime;
+
+    /** The maximum arrival time */
+    private final LocalDateTime arrivalDateTime;
+
+    /** The maximum number of intermediate stops */
+    private final int maxStops;
+
+    /** The ranking of the results (null if unsorted) */
+    private final ConnectionSort sort;
+
+    /** The maximum number of results (0 if unlimited) */
+    private final int limit;
+
+    /**
+     * Constructor with all the fields
+     *
+     * @param origin the origin airport
+     * @param destination the destination airport
+     * @param departureDateTime the minimum departure time
+     * @param arrivalDateTime the maximum arrival time
+     * @param maxStops the maximum number of intermediate stops
+     * @param sort the ranking of the results or null if unsorted
+     * @param limit the maximum number of results or 0 if unlimited
+     */
+    public ConnectionQuery(String origin, String destination, LocalDateTime departureDateTime,
+                           LocalDateTime arrivalDateTime, int maxStops, ConnectionSort sort, int limit) {
+        this(Collections.singleton(origin), Collections.singleton(destination), departureDateTime, arrivalDateTime,
+                maxStops, sort, limit);
+    }
+
+    /**
+     * Constructor with several departure and arrival airports
+     *
+     * @param origins the origin airports
+     * @param destinations the destination airports
+     * @param departureDateTime the minimum departure time
+     * @param arrivalDateTime the maximum arrival time
+     * @param maxStops the maximum number of intermediate stops
+     * @param sort the ranking of the results or null if unsorted
+     * @param limit the maximum number of results or 0 if unlimited
+     */
+    public ConnectionQuery(Set<String> origins, Set<String> destinations, LocalDateTime departureDateTime,
+                           LocalDateTime arrivalDateTime, int maxStops, ConnectionSort sort, int limit) {
+        this.origins = Collections.unmodifiableSet(new LinkedHashSet<>(origins));
+        this.destinations = Collections.unmodifiableSet(new LinkedHashSet<>(destinations));
+        this.departureDateTime = departureDateTime;
+        this.arrivalDateTime = arrivalDateTime;
+        this.maxStops = maxStops;
+        this.sort = sort;
+        this.limit = limit;
+    }
+
+    /**
+     * Retrieves the origin airport
+     *
+     * @return the origin airport, the first one if several
+     */
+    public String getOrigin() {
+        return origins.iterator().next();
+    }
+
+    /**
+     * Retrieves the destination airport
+     *
+     * @return the destination airport, the first one if several
+     */
+    public String getDestination() {
+        return destinations.iterator().next();
+    }
+
+    /**
+     * Retrieves the origin airports
+     *
+     * @return the origin airports
+     */
+    public Set<String> getOrigins() {
+        return origins;
+    }
+
+    /**
+     * Retrieves the destination airports
+     *
+     * @return the destination airports
+     */
+    public Set<String> getDestinations() {
+        return destinations;
+    }
+
+    /**
+     * Checks whether the search departs from or
+     * arrives to several airports.
+     *
+     * @return true if several airports, false otherwise
+     */
+    public boolean isMultiAirport() {
+        return (origins.size() > 1) || (destinations.size() > 1);
+    }
+
+    /**
+     * Checks whether the search is evaluated path by path,
+     * or by scanning all the flights otherwise, when
+     * enumerating paths would explode or when several
+     * airports are searched at once.
+     *
+     * @return true if searched by path, false otherwise
+     */
+    public boolean isPathSearch() {
+        return (maxStops <= PATH_MAX_STOPS) && !isMultiAirport();
+    }
+
+    /**
+     * Retrieves the minimum departure time
+     *
+     * @return the departure time
+     */
+    public LocalDateTime getDepartureDateTime() {
+        return departureDateTime;
+    }
+
+    /**
+     * Retrieves the maximum arrival time
+     *
+     * @return the arrival time
+     */
+    public LocalDateTime getArrivalDateTime() {
+        return arrivalDateTime;
+    }
+
+    /**
+     * Retrieves the maximum number of intermediate stops
+     *
+     * @return the maximum number of stops
+     */
+    public int getMaxStops() {
+        return maxStops;
+    }
+
+    /**
+     * Retrieves the ranking of the results
+     *
+     * @return the ranking or null if unsorted
+     */
+    public ConnectionSort getSort() {
+        return sort;
+    }
+
+    /**
+     * Retrieves the maximum number of results
+     *
+     * @return the limit or 0 if unlimited
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Checks whether only the best ranked
+     * results are requested.
+     *
+     * @return true if ranked, false otherwise
+     */
+    public boolean isRanked() {
+        return sort != null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ConnectionQuery that = (ConnectionQuery) o;
+        return maxStops == that.maxStops &&
+                limit == that.limit &&
+                Objects.equals(origins, that.origins) &&
+                Objects.equals(destinations, that.destinations) &&
+                Objects.equals(departureDateTime, that.departureDateTime) &&
+                Objects.equals(arrivalDateTime, that.arrivalDateTime) &&
+                sort == that.sort;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(origins, destinations, departureDateTime, arrivalDateTime, maxStops, sort, limit);
+    }
+
+    @Override
+    public String toString() {
+        return String.join(",", origins) + " -> " + String.join(",", destinations) +
+                " [" + departureDateTime + ", " + arrivalDateTime + "]" +
+                " maxStops=" + maxStops +
+                (sort != null ? ", sort=" + sort.name().toLowerCase() : "") +
+                (limit != UNLIMITED ? ", limit=" + limit : "");
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.model;
+
+/**
+ * The criteria of a search of connections, as sent in
+ * a batch request (same fields as the query parameters
+ * of a single search).
+ */
+public class ConnectionRequest {
+
+    /** The departure Airport IATA code */
+    private String departure;
+
+    /** The arrival Airport IATA code */
+    private String arrival;
+
+    /** The departure date time (ISO) */
+    private String departureDateTime;
+
+    /** The arrival date time (ISO) */
+    private String arrivalDateTime;
+
+    /** The maximum number of stops */
+    private int maxStops = 1;
+
+    /** The maximum number of results (0 if unlimited) */
+    private int limit = ConnectionQuery.UNLIMITED;
+
+    /** The ranking of the results (optional) */
+    private String sort;
+
+    /**
+     * Retrieves the departure Airport
+     *
+     * @return the departure airport
+     */
+    public String getDeparture() {
+        return departure;
+    }
+
+    /**
+     * Sets the departure Airport
+     *
+     * @param departure the departure airport
+     */
+    public void setDeparture(String departure) {
+        this.departure = departure;
+    }
+
+    /**
+     * Retrieves the arrival Airport
+     *
+     * @return the arrival airport
+     */
+    public String getArrival() {
+        return arrival;
+    }
+
+    /**
+     * Sets the arrival Airport
+     *
+     * @param arrival the arrival airport
+     */
+    public void setArrival(String arrival) {
+        this.arrival = arrival;
+    }
+
+    /**
+     * Retrieves the departure date time
+     *
+     * @return the departure date time
+     */
+    public String getDepartureDateTime() {
+        return departureDateTime;
+    }
+
+    /**
+     * Sets the departure date time
+     *
+     * @param departureDateTime the departure date time
+     */
+    public void setDepartureDateTime(String departureDateTime) {
+        this.departureDateTime = departureDateTime;
+    }
+
+    /**
+     * Retrieves the arrival date time
+     *
+     * @return the arrival date time
+     */
+    public String getArrivalDateTime() {
+        return arrivalDateTime;
+    }
+
+    /**
+     * Sets the arrival date time
+     *
+     * @param arrivalDateTime the arrival date time
+     */
+    public void setArrivalDateTime(String arrivalDateTime) {
+        this.arrivalDateTime = arrivalDateTime;
+    }
+
+    /**
+     * Retrieves the maximum number of stops
+     *
+     * @return the maximum number of stops
+     */
+    public int getMaxStops() {
+        return maxStops;
+    }
+
+    /**
+     * Sets the maximum number of stops
+     *
+     * @param maxStops the maximum number of stops
+     */
+    public void setMaxStops(int maxStops) {
+        this.maxStops = maxStops;
+    }
+
+    /**
+     * Retrieves the maximum number of results
+     *
+     * @return the maximum number of results
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Sets the maximum number of results
+     *
+     * @param limit the maximum number of results
+     */
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Retrieves the ranking of the results
+     *
+     * @return the ranking of the results
+     */
+    public String getSort() {
+        return sort;
+    }
+
+    /**
+     * Sets the ranking of the results
+     *
+     * @param sort the ranking of the results
+     */
+    public void setSort(String sort) {
+        this.sort = sort;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionRequest{" +
+                "departure='" + departure + '\'' +
+                ", arrival='" + arrival + '\'' +
+                ", departureDateTime='" + departureDateTime + '\'' +
+                ", arrivalDateTime='" + arrivalDateTime + '\'' +
+                ", maxStops=" + maxStops +
+                ", limit=" + limit +
+                ", sort='" + sort + '\'' +
+                '}';
+    }
+}
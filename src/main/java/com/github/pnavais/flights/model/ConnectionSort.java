@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.model;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * The criteria to rank the connections of a search.
+ * <p>
+ * Connections are ranked by a primary key (arrival time or total
+ * duration in minutes) and, on ties, by the other one. Both keys grow
+ * with the arrival, so a lower bound of the arrival yields a lower
+ * bound of the rank.
+ * </p>
+ */
+public enum ConnectionSort {
+
+    /** Earliest arrival first (shortest duration on ties) */
+    ARRIVAL,
+
+    /** Shortest duration first (earliest arrival on ties) */
+    DURATION;
+
+    /**
+     * Computes the primary key of a connection
+     *
+     * @param departure the departure of the first flight
+     * @param arrival the arrival of the last flight
+     * @return the primary key in minutes
+     */
+    public int primary(int departure, int arrival) {
+        return (this == ARRIVAL) ? arrival : arrival - departure;
+    }
+
+    /**
+     * Computes the rank of a connection, combining
+     * the primary and secondary keys.
+     *
+     * @param departure the departure of the first flight
+     * @param arrival the arrival of the last flight
+     * @return the rank (lower is better)
+     */
+    public long rank(int departure, int arrival) {
+        int secondary = (this == ARRIVAL) ? arrival - departure : arrival;
+        return ((long) primary(departure, arrival) << 32) | (secondary & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Retrieves the primary key of the given rank
+     *
+     * @param rank the rank
+     * @return the primary key in minutes
+     */
+    public static int primaryOf(long rank) {
+        return (int) (rank >> 32);
+    }
+
+    /**
+     * Retrieves the criteria with the given name (case insensitive)
+     *
+     * @param name the name of the criteria
+     * @return the criteria
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static ConnectionSort from(String name) {
+        return Arrays.stream(values())
+                .filter(s -> s.name().equalsIgnoreCase(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown sort " + name + ", expected one of "
+                        + Arrays.stream(values()).map(s -> s.name().toLowerCase()).collect(Collectors.joining(", "))));
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.model;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Identifies the monthly schedule of a route between
+ * two airports, i.e. the unit of data served by the
+ * Schedules API.
+ */
+public final class RouteMonth {
+
+    /** The departure Airport IATA code */
+    private final String origin;
+
+    /** The arrival Airport IATA code */
+    private final String destination;
+
+    /** The year */
+    private final int year;
+
+    /** The month of the year (1-12) */
+    private final int month;
+
+    /**
+     * Constructor with all the fields
+     *
+     * @param origin the origin airport
+     * @param destination the destination airport
+     * @param year the year
+     * @param month the month of the year (1-12)
+     */
+    public RouteMonth(String origin, String destination, int year, int month) {
+        this.origin = origin;
+        this.destination = destination;
+        this.year = year;
+        this.month = month;
+    }
+
+    /**
+     * Static factory constructor
+     *
+     * @param origin the origin airport
+     * @param destination the destination airport
+     * @param year the year
+     * @param month the month of the year (1-12)
+     * @return the RouteMonth instance
+     */
+    public static RouteMonth of(String origin, String destination, int year, int month) {
+        return new RouteMonth(origin, destination, year, month);
+    }
+
+    /**
+     * Retrieves the route-months spanned by the given time frame
+     *
+     * @param origin the origin airport
+     * @param destination the destination airport
+     * @param from the start of the time frame
+     * @param to the end of the time frame
+     * @return the list of route-months in date order
+     */
+    public static List<RouteMonth> spanning(String origin, String destination, LocalDateTime from,
+                                            LocalDateTime to) {
+        List<RouteMonth> routeMonths = new ArrayList<>();
+
+        YearMonth month = YearMonth.from(from);
+        YearMonth lastMonth = YearMonth.from(to);
+        do {
+            routeMonths.add(of(origin, destination, month.getYear(), month.getMonthValue()));
+            month = month.plusMonths(1);
+        } while (month.compareTo(lastMonth) <= 0);
+
+        return routeMonths;
+    }
+
+    /**
+     * Retrieves the start of the month
+     *
+     * @return the first minute of the month
+     */
+    public LocalDateTime getStart() {
+        return LocalDateTime.of(year, month, 1, 0, 0);
+    }
+
+    /**
+     * Retrieves the end of the month
+     *
+     * @return the last minute of the month
+     */
+    public LocalDateTime getEnd() {
+        return YearMonth.of(year, month).atEndOfMonth().atTime(23, 59);
+    }
+
+    /**
+     * Retrieves the origin airport
+     *
+     * @return the origin airport
+     */
+    public String getOrigin() {
+        return origin;
+    }
+
+    /**
+     * Retrieves the destination airport
+     *
+     * @return the destination airport
+     */
+    public String getDestination() {
+        return destination;
+    }
+
+    /**
+     * Retrieves the year
+     *
+     * @return the year
+     */
+    public int getYear() {
+        return year;
+    }
+
+    /**
+     * Retrieves the month of the year (1-12)
+     *
+     * @return the month of the year
+     */
+    public int getMonth() {
+        return month;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        RouteMonth that = (RouteMonth) o;
+        return year == that.year &&
+                month == that.month &&
+                Objects.equals(origin, that.origin) &&
+                Objects.equals(destination, that.destination);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(origin, destination, year, month);
+    }
+
+    @Override
+    public String toString() {
+        return origin + " -> " + destination + " (" + year + "-" + (month < 10 ? "0" : "") + month + ")";
+    }
+}
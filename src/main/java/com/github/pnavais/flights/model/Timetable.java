@@ -0,0 +1,376 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.model;
+
+import com.github.pnavais.flights.util.TimeUtils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Compact, immutable representation of the flights between two
+ * airports.
+ * <p>
+ * Flights are stored as parallel arrays of departure and arrival
+ * times (minutes since the epoch) and flight numbers sorted by
+ * departure, so that filtering and joining can be performed on
+ * primitives. {@link Leg} objects are only created on demand.
+ * </p>
+ *
+ * @param <K> the type of the airports
+ */
+public final class Timetable<K> {
+
+    /** An empty array of times */
+    private static final int[] NONE = new int[0];
+
+    /** The departure airport */
+    private final K origin;
+
+    /** The arrival airport */
+    private final K destination;
+
+    /** The departure times (sorted) */
+    private final int[] departures;
+
+    /** The arrival times */
+    private final int[] arrivals;
+
+    /** The flight numbers */
+    private final int[] numbers;
+
+    /** The position of the first flight in the arrays */
+    private final int offset;
+
+    /** The number of flights */
+    private final int size;
+
+    /**
+     * Constructor with all the fields
+     *
+     * @param origin the origin airport
+     * @param destination the destination airport
+     * @param departures the sorted departure times
+     * @param arrivals the arrival times
+     * @param numbers the flight numbers
+     * @param offset the position of the first flight
+     * @param size the number of flights
+     */
+    private Timetable(K origin, K destination, int[] departures, int[] arrivals, int[] numbers, int offset,
+                      int size) {
+        this.origin = origin;
+        this.destination = destination;
+        this.departures = departures;
+        this.arrivals = arrivals;
+        this.numbers = numbers;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    /**
+     * Creates an empty timetable
+     *
+     * @param origin the origin airport
+     * @param destination the destination airport
+     * @param <K> the type of the airports
+     * @return the empty timetable
+     */
+    public static <K> Timetable<K> empty(K origin, K destination) {
+        return new Timetable<>(origin, destination, NONE, NONE, NONE, 0, 0);
+    }
+
+    /**
+     * Creates a timetable from the given flights, which are
+     * sorted by departure if needed (keeping the original order
+     * of flights departing at the same time).
+     *
+     * @param origin the origin airport
+     * @param destination the destination airport
+     * @param departures the departure times
+     * @param arrivals the arrival times
+     * @param numbers the flight numbers
+     * @param <K> the type of the airports
+     * @return the timetable
+     */
+    public static <K> Timetable<K> of(K origin, K destination, int[] departures, int[] arrivals, int[] numbers) {
+        int size = departures.length;
+
+        if (isSorted(departures)) {
+            return new Timetable<>(origin, destination, departures, arrivals, numbers, 0, size);
+        }
+
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> departures[i]));
+
+        int[] sortedDepartures = new int[size];
+        int[] sortedArrivals = new int[size];
+        int[] sortedNumbers = new int[size];
+        for (int i = 0; i < size; i++) {
+            sortedDepartures[i] = departures[order[i]];
+            sortedArrivals[i] = arrivals[order[i]];
+            sortedNumbers[i] = numbers[order[i]];
+        }
+
+        return new Timetable<>(origin, destination, sortedDepartures, sortedArrivals, sortedNumbers, 0, size);
+    }
+
+    /**
+     * Creates the timetable of a monthly schedule. The arrival of each
+     * flight is placed on its departure day.
+     *
+     * @param origin the origin airport
+     * @param destination the destination airport
+     * @param schedule the monthly schedule
+     * @param <K> the type of the airports
+     * @return the timetable
+     */
+    public static <K> Timetable<K> from(K origin, K destination, Schedule schedule) {
+        int size = schedule.getDays().stream().mapToInt(fd -> fd.getFlights().size()).sum();
+        int[] departures = new int[size];
+        int[] arrivals = new int[size];
+        int[] numbers = new int[size];
+
+        int i = 0;
+        for (FlightsDay fd : schedule.getDays()) {
+            LocalDate date = LocalDate.of(schedule.getYear(), schedule.getMonth(), fd.getDay());
+            for (FlightInfo f : fd.getFlights()) {
+                departures[i] = TimeUtils.toEpochMinute(date, f.getDepartureTime());
+                arrivals[i] = TimeUtils.toEpochMinute(date, f.getArrivalTime());
+                numbers[i] = f.getNumber();
+                i++;
+            }
+        }
+
+        return of(origin, destination, departures, arrivals, numbers);
+    }
+
+    /**
+     * Concatenates consecutive timetables of the same route.
+     *
+     * @param origin the origin airport
+     * @param destination the destination airport
+     * @param timetables the timetables in chronological order
+     * @param <K> the type of the airports
+     * @return the concatenated timetable
+     */
+    public static <K> Timetable<K> concat(K origin, K destination, List<Timetable<K>> timetables) {
+        if (timetables.size() == 1) {
+            return timetables.get(0);
+        }
+
+        int size = timetables.stream().mapToInt(Timetable::size).sum();
+        int[] departures = new int[size];
+        int[] arrivals = new int[size];
+        int[] numbers = new int[size];
+
+        int position = 0;
+        for (Timetable<K> t : timetables) {
+            System.arraycopy(t.departures, t.offset, departures, position, t.size);
+            System.arraycopy(t.arrivals, t.offset, arrivals, position, t.size);
+            System.arraycopy(t.numbers, t.offset, numbers, position, t.size);
+            position += t.size;
+        }
+
+        return of(origin, destination, departures, arrivals, numbers);
+    }
+
+    /**
+     * Retrieves a view of the flights departing within the given
+     * time frame (both inclusive). No data is copied.
+     *
+     * @param fromMinute the minimum departure time
+     * @param toMinute the maximum departure time
+     * @return the flights in the time frame
+     */
+    public Timetable<K> slice(int fromMinute, int toMinute) {
+        int from = lowerBound(fromMinute);
+        int to = Math.max(from, lowerBound(toMinute + 1L));
+
+        return (from == 0 && to == size) ? this
+                : new Timetable<>(origin, destination, departures, arrivals, numbers, offset + from, to - from);
+    }
+
+    /**
+     * Finds the position of the first flight departing
+     * at or after the given time.
+     *
+     * @param minute the minimum departure time
+     * @return the position of the flight or the size if none
+     */
+    public int firstDepartureFrom(int minute) {
+        return lowerBound(minute);
+    }
+
+    /**
+     * Binary searches the position of the first flight
+     * departing at or after the given time.
+     *
+     * @param minute the minimum departure time
+     * @return the position of the flight or the size if none
+     */
+    private int lowerBound(long minute) {
+        int low = 0;
+        int high = size;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (departures[offset + middle] < minute) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Retrieves the departure airport
+     *
+     * @return the departure airport
+     */
+    public K getOrigin() {
+        return origin;
+    }
+
+    /**
+     * Retrieves the arrival airport
+     *
+     * @return the arrival airport
+     */
+    public K getDestination() {
+        return destination;
+    }
+
+    /**
+     * Retrieves the number of flights
+     *
+     * @return the number of flights
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether there are no flights
+     *
+     * @return true if empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Retrieves the departure time of a flight
+     *
+     * @param index the position of the flight
+     * @return the departure time in minutes since the epoch
+     */
+    public int getDeparture(int index) {
+        return departures[offset + index];
+    }
+
+    /**
+     * Retrieves the arrival time of a flight
+     *
+     * @param index the position of the flight
+     * @return the arrival time in minutes since the epoch
+     */
+    public int getArrival(int index) {
+        return arrivals[offset + index];
+    }
+
+    /**
+     * Retrieves the arrival time of a flight, moved to the next day
+     * if earlier than its departure (overnight flights are placed on
+     * their departure day).
+     *
+     * @param index the position of the flight
+     * @return the arrival time in minutes since the epoch
+     */
+    public int getActualArrival(int index) {
+        int arrival = arrivals[offset + index];
+        return (arrival < departures[offset + index]) ? arrival + TimeUtils.MINUTES_PER_DAY : arrival;
+    }
+
+    /**
+     * Retrieves the number of a flight
+     *
+     * @param index the position of the flight
+     * @return the flight number
+     */
+    public int getNumber(int index) {
+        return numbers[offset + index];
+    }
+
+    /**
+     * Creates the leg of a flight
+     *
+     * @param index the position of the flight
+     * @return the leg
+     */
+    public Leg<K> toLeg(int index) {
+        Leg<K> leg = new Leg<>();
+        leg.setDepartureAirport(origin);
+        leg.setArrivalAirport(destination);
+        leg.setDepartureDateTime(TimeUtils.toLocalDateTime(getDeparture(index)));
+        leg.setArrivalDateTime(TimeUtils.toLocalDateTime(getArrival(index)));
+        return leg;
+    }
+
+    /**
+     * Creates the legs of all the flights
+     *
+     * @return the list of legs in departure order
+     */
+    public List<Leg<K>> toLegs() {
+        List<Leg<K>> legs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            legs.add(toLeg(i));
+        }
+        return legs;
+    }
+
+    /**
+     * Checks whether the given times are in ascending order
+     *
+     * @param times the times to check
+     * @return true if sorted, false otherwise
+     */
+    private static boolean isSorted(int[] times) {
+        for (int i = 1; i < times.length; i++) {
+            if (times[i - 1] > times[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "Timetable{" +
+                "origin=" + origin +
+                ", destination=" + destination +
+                ", flights=" + size +
+                '}';
+    }
+}
@@ -0,0 +1,521 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.routes;
+
+import com.github.pnavais.flights.api.RoutesIndex;
+import com.github.pnavais.flights.model.FlightPath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Compact index of the connections between incoming/outgoing airports.
+ * <p>
+ * Airports are interned to dense integer identifiers and the network
+ * is stored in compressed sparse row form : the outgoing routes of the
+ * airport {@code i} are the targets between {@code outOffsets[i]} and
+ * {@code outOffsets[i + 1]} (likewise for the incoming routes). Searches
+ * walk primitive arrays and only allocate the paths found : paths with
+ * one stop at most are found by merging the sorted routes of both ends
+ * and longer ones by a depth-first walk pruning the airports that
+ * cannot reach the destination within the remaining transitions.
+ * </p>
+ * <p>
+ * Routes are collected until the index is built, after which it is
+ * frozen and can be safely shared between request threads.
+ * </p>
+ */
+public class CompactRoutesIndex implements RoutesIndex<FlightPath, String> {
+
+    /** The logger instance */
+    private static final Logger logger = LoggerFactory.getLogger(CompactRoutesIndex.class);
+
+    /** Marks an airport unable to reach the destination */
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /** The version of the routes */
+    private final long version;
+
+    /** The identifiers of the airports */
+    private final Map<String, Integer> ids;
+
+    /** The airports by identifier */
+    private String[] airports;
+
+    /** The routes added (origin, destination pairs) until built */
+    private long[] pending;
+
+    /** The number of routes added until built */
+    private int pendingCount;
+
+    /** The first outgoing route of each airport */
+    private int[] outOffsets;
+
+    /** The destinations of the outgoing routes */
+    private int[] outTargets;
+
+    /** The first incoming route of each airport */
+    private int[] inOffsets;
+
+    /** The origins of the incoming routes */
+    private int[] inSources;
+
+    /** Whether the index is built */
+    private volatile boolean built;
+
+    /**
+     * Default constructor
+     */
+    public CompactRoutesIndex() {
+        this(0);
+    }
+
+    /**
+     * Creates an empty index for the given
+     * version of the routes.
+     *
+     * @param version the version of the routes
+     */
+    public CompactRoutesIndex(long version) {
+        this.version = version;
+        this.ids = new HashMap<>();
+        this.airports = new String[16];
+        this.pending = new long[64];
+    }
+
+    /**
+     * Adds a route between the given departure
+     * and arrival airports in IATA codes
+     *
+     * @param srcAirport the departure airport
+     * @param targetAirport the arrival airport
+     * @throws IllegalStateException if the index is already built
+     */
+    @Override
+    public void add(String srcAirport, String targetAirport) {
+        if (built) {
+            throw new IllegalStateException("Routes index version " + version + " is already built");
+        }
+
+        if (pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, pendingCount * 2);
+        }
+        pending[pendingCount++] = ((long) intern(srcAirport) << 32) | intern(targetAirport);
+    }
+
+    /**
+     * Lays out the routes added in compressed sparse
+     * row form and freezes the index. Duplicated routes
+     * are discarded.
+     */
+    @Override
+    public void build() {
+        int airportCount = ids.size();
+
+        // Sorting the encoded pairs groups the routes by origin
+        long[] routes = Arrays.copyOf(pending, pendingCount);
+        Arrays.sort(routes);
+        int routeCount = 0;
+        for (int i = 0; i < routes.length; i++) {
+            if (i == 0 || routes[i] != routes[i - 1]) {
+                routes[routeCount++] = routes[i];
+            }
+        }
+
+        outOffsets = new int[airportCount + 1];
+        outTargets = new int[routeCount];
+        inOffsets = new int[airportCount + 1];
+        inSources = new int[routeCount];
+
+        for (int i = 0; i < routeCount; i++) {
+            outOffsets[origin(routes[i]) + 1]++;
+            inOffsets[destination(routes[i]) + 1]++;
+        }
+        for (int i = 0; i < airportCount; i++) {
+            outOffsets[i + 1] += outOffsets[i];
+            inOffsets[i + 1] += inOffsets[i];
+        }
+
+        int[] inPositions = Arrays.copyOf(inOffsets, airportCount);
+        for (int i = 0; i < routeCount; i++) {
+            outTargets[i] = destination(routes[i]);
+            inSources[inPositions[destination(routes[i])]++] = origin(routes[i]);
+        }
+
+        airports = Arrays.copyOf(airports, airportCount);
+        pending = null;
+        pendingCount = 0;
+        built = true;
+
+        logger.info("Compact routes index version {} built : {} airports, {} routes, memory~{}KB", version,
+                airportCount, routeCount, estimateMemoryBytes() / 1024);
+    }
+
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Find all paths between the departure airport and the destination
+     * airport with a maximum number of transitions, shortest first.
+     * As in the enumeration of the graph, paths may revisit airports.
+     *
+     * @param srcAirport the departure airport
+     * @param targetAirport the target airport
+     * @param maxStop the maximum number of transitions
+     *
+     * @return the possible paths
+     */
+    @Override
+    public List<FlightPath> findRoutes(String srcAirport, String targetAirport, int maxStop) {
+        Integer source = built ? ids.get(srcAirport) : null;
+        Integer target = built ? ids.get(targetAirport) : null;
+
+        if (source == null || target == null || maxStop < 1) {
+            return Collections.emptyList();
+        }
+
+        if (maxStop <= 2) {
+            return findShortRoutes(source, target, maxStop);
+        }
+
+        int[] distances = distancesTo(target, maxStop);
+        if (distances[source] == UNREACHABLE) {
+            return Collections.emptyList();
+        }
+
+        List<FlightPath> paths = new ArrayList<>();
+        int[] path = new int[maxStop + 1];
+        path[0] = source;
+
+        for (int length = Math.max(1, distances[source]); length <= maxStop; length++) {
+            collect(path, 0, length, distances, paths);
+        }
+
+        return paths;
+    }
+
+    /**
+     * Find the direct path and the paths with one intermediate airport.
+     * As the routes of every airport are sorted, the intermediate
+     * airports are the intersection of the destinations of the source
+     * and the origins of the target, merged in a single pass.
+     *
+     * @param source the departure airport
+     * @param target the target airport
+     * @param maxStop the maximum number of transitions (up to 2)
+     * @return the paths found
+     */
+    private List<FlightPath> findShortRoutes(int source, int target, int maxStop) {
+        List<FlightPath> paths = new ArrayList<>();
+
+        if (Arrays.binarySearch(outTargets, outOffsets[source], outOffsets[source + 1], target) >= 0) {
+            paths.add(toFlightPath(source, target));
+        }
+
+        if (maxStop == 2) {
+            int out = outOffsets[source];
+            int in = inOffsets[target];
+
+            while (out < outOffsets[source + 1] && in < inOffsets[target + 1]) {
+                if (outTargets[out] < inSources[in]) {
+                    out++;
+                } else if (outTargets[out] > inSources[in]) {
+                    in++;
+                } else {
+                    paths.add(toFlightPath(source, outTargets[out], target));
+                    out++;
+                    in++;
+                }
+            }
+        }
+
+        return paths;
+    }
+
+    /**
+     * Find the routes lying on some path between the departure airport
+     * and the destination airport with a maximum number of transitions :
+     * those whose origin is reachable from the departure airport and
+     * whose destination reaches the destination airport within the
+     * transitions left.
+     *
+     * @param srcAirport the departure airport
+     * @param targetAirport the target airport
+     * @param maxStop the maximum number of transitions
+     *
+     * @return the destinations of the routes by origin
+     */
+    @Override
+    public Map<String, Set<String>> findNetwork(String srcAirport, String targetAirport, int maxStop) {
+        return findNetwork(Collections.singleton(srcAirport), Collections.singleton(targetAirport), maxStop);
+    }
+
+    /**
+     * Find the routes lying on some path between any of the departure
+     * airports and any of the destination airports with a maximum number
+     * of transitions, with one breadth-first search from all the
+     * departure airports and another one from all the destinations.
+     * Unknown airports are ignored.
+     *
+     * @param srcAirports the departure airports
+     * @param targetAirports the target airports
+     * @param maxStop the maximum number of transitions
+     *
+     * @return the destinations of the routes by origin
+     */
+    @Override
+    public Map<String, Set<String>> findNetwork(Set<String> srcAirports, Set<String> targetAirports, int maxStop) {
+        int[] sources = built ? toIds(srcAirports) : new int[0];
+        int[] targets = built ? toIds(targetAirports) : new int[0];
+
+        if (sources.length == 0 || targets.length == 0 || maxStop < 1) {
+            return Collections.emptyMap();
+        }
+
+        int[] fromSource = distances(sources, maxStop, outOffsets, outTargets);
+        int[] toTarget = distances(targets, maxStop, inOffsets, inSources);
+        Map<String, Set<String>> network = new HashMap<>();
+
+        for (int airport = 0; airport < airports.length; airport++) {
+            if (fromSource[airport] < maxStop) {
+                for (int i = outOffsets[airport]; i < outOffsets[airport + 1]; i++) {
+                    if (toTarget[outTargets[i]] <= maxStop - fromSource[airport] - 1) {
+                        network.computeIfAbsent(airports[airport], a -> new HashSet<>())
+                                .add(airports[outTargets[i]]);
+                    }
+                }
+            }
+        }
+
+        return network;
+    }
+
+    /**
+     * Computes the minimum number of transitions from every airport
+     * to the target by a breadth-first search over the incoming
+     * routes, up to the given maximum.
+     *
+     * @param target the target airport
+     * @param maxStop the maximum number of transitions
+     * @return the distances by airport
+     */
+    private int[] distancesTo(int target, int maxStop) {
+        return distances(new int[] { target }, maxStop, inOffsets, inSources);
+    }
+
+    /**
+     * Computes the minimum number of transitions between the closest
+     * start airport and every airport by a breadth-first search over
+     * the given adjacency (outgoing or incoming routes), up to the
+     * given maximum.
+     *
+     * @param starts the start airports
+     * @param maxStop the maximum number of transitions
+     * @param offsets the first route of each airport
+     * @param adjacent the adjacent airports of the routes
+     * @return the distances by airport
+     */
+    private int[] distances(int[] starts, int maxStop, int[] offsets, int[] adjacent) {
+        int[] distances = new int[airports.length];
+        Arrays.fill(distances, UNREACHABLE);
+
+        int[] queue = new int[airports.length];
+        int head = 0;
+        int tail = 0;
+        for (int start : starts) {
+            if (distances[start] == UNREACHABLE) {
+                distances[start] = 0;
+                queue[tail++] = start;
+            }
+        }
+
+        while (head < tail) {
+            int airport = queue[head++];
+            int distance = distances[airport] + 1;
+            if (distance > maxStop) {
+                break;
+            }
+            for (int i = offsets[airport]; i < offsets[airport + 1]; i++) {
+                if (distances[adjacent[i]] == UNREACHABLE) {
+                    distances[adjacent[i]] = distance;
+                    queue[tail++] = adjacent[i];
+                }
+            }
+        }
+
+        return distances;
+    }
+
+    /**
+     * Retrieves the identifiers of the given airports,
+     * skipping the unknown ones.
+     *
+     * @param airportCodes the airports
+     * @return the identifiers
+     */
+    private int[] toIds(Set<String> airportCodes) {
+        return airportCodes.stream()
+                .map(ids::get)
+                .filter(Objects::nonNull)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    /**
+     * Extends depth-first the given partial path with all the
+     * routes reaching the target in exactly the given length.
+     *
+     * @param path the airports of the partial path
+     * @param depth the position of the last airport of the path
+     * @param length the number of transitions of the paths
+     * @param distances the distances to the target by airport
+     * @param paths the paths found
+     */
+    private void collect(int[] path, int depth, int length, int[] distances, List<FlightPath> paths) {
+        int airport = path[depth];
+        int remaining = length - depth - 1;
+
+        for (int i = outOffsets[airport]; i < outOffsets[airport + 1]; i++) {
+            int next = outTargets[i];
+
+            if (distances[next] <= remaining) {
+                path[depth + 1] = next;
+                if (remaining == 0) {
+                    paths.add(toFlightPath(path, length));
+                } else {
+                    collect(path, depth + 1, length, distances, paths);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the flight path of the given airports
+     *
+     * @param airportIds the airports of the path
+     * @return the flight path
+     */
+    private FlightPath toFlightPath(int... airportIds) {
+        return toFlightPath(airportIds, airportIds.length - 1);
+    }
+
+    /**
+     * Creates the flight path of the given airports
+     *
+     * @param path the airports of the path
+     * @param length the number of transitions
+     * @return the flight path
+     */
+    private FlightPath toFlightPath(int[] path, int length) {
+        List<String> codes = new ArrayList<>(length + 1);
+        for (int i = 0; i <= length; i++) {
+            codes.add(airports[path[i]]);
+        }
+        return FlightPath.from(codes);
+    }
+
+    /**
+     * Retrieves the identifier of the given airport,
+     * assigning the next one if not yet known.
+     *
+     * @param airport the airport
+     * @return the identifier
+     */
+    private int intern(String airport) {
+        Integer id = ids.get(airport);
+
+        if (id == null) {
+            id = ids.size();
+            ids.put(airport, id);
+            if (id == airports.length) {
+                airports = Arrays.copyOf(airports, id * 2);
+            }
+            airports[id] = airport;
+        }
+
+        return id;
+    }
+
+    /**
+     * Decodes the origin of an encoded route
+     *
+     * @param route the encoded route
+     * @return the origin identifier
+     */
+    private static int origin(long route) {
+        return (int) (route >>> 32);
+    }
+
+    /**
+     * Decodes the destination of an encoded route
+     *
+     * @param route the encoded route
+     * @return the destination identifier
+     */
+    private static int destination(long route) {
+        return (int) route;
+    }
+
+    /**
+     * Retrieves the number of airports indexed
+     *
+     * @return the number of airports
+     */
+    @Override
+    public int getAirportCount() {
+        return ids.size();
+    }
+
+    /**
+     * Retrieves the number of routes indexed
+     *
+     * @return the number of routes or 0 if not built
+     */
+    @Override
+    public int getRouteCount() {
+        return built ? outTargets.length : 0;
+    }
+
+    /**
+     * Estimates the heap retained by the adjacency arrays
+     * (the interned airport codes are shared)
+     *
+     * @return the approximate size in bytes
+     */
+    public long estimateMemoryBytes() {
+        return built ? 4L * (outOffsets.length + outTargets.length + inOffsets.length + inSources.length) : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "CompactRoutesIndex{" +
+                "version=" + version +
+                ", airports=" + getAirportCount() +
+                ", routes=" + getRouteCount() +
+                '}';
+    }
+}
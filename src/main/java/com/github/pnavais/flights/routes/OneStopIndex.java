@@ -0,0 +1,205 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.routes;
+
+import com.github.pnavais.flights.model.FlightPath;
+import org.jgrapht.Graph;
+import org.jgrapht.Graphs;
+import org.jgrapht.graph.DefaultEdge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable index of the paths with at most one intermediate
+ * airport between every pair of airports of the routes graph.
+ * <p>
+ * Each (origin, destination) pair is mapped to whether a direct
+ * route exists and to the list of intermediate airports, so that
+ * the search of its paths is a single hash lookup.
+ * </p>
+ */
+public final class OneStopIndex {
+
+    /** Approximate size in bytes of a hash map entry with its key */
+    private static final int ENTRY_BYTES = 32 + 56;
+
+    /** Approximate size in bytes of the connections of a pair */
+    private static final int CONNECTIONS_BYTES = 24 + 16;
+
+    /** Size in bytes of an object reference */
+    private static final int REFERENCE_BYTES = 4;
+
+    /** The connections keyed by origin and destination */
+    private final Map<String, Connections> connections;
+
+    /** The total number of intermediate airports stored */
+    private final int intermediateCount;
+
+    /**
+     * Constructor with the computed connections
+     *
+     * @param connections the connections by pair
+     * @param intermediateCount the total number of intermediate airports
+     */
+    private OneStopIndex(Map<String, Connections> connections, int intermediateCount) {
+        this.connections = connections;
+        this.intermediateCount = intermediateCount;
+    }
+
+    /**
+     * Builds the index from the given routes graph
+     *
+     * @param graph the routes graph
+     * @return the index
+     */
+    public static OneStopIndex of(Graph<String, DefaultEdge> graph) {
+        Map<String, List<String>> intermediates = new HashMap<>();
+        Map<String, Boolean> direct = new HashMap<>();
+
+        for (String origin : graph.vertexSet()) {
+            for (String stop : Graphs.successorListOf(graph, origin)) {
+                direct.put(key(origin, stop), Boolean.TRUE);
+
+                for (String destination : Graphs.successorListOf(graph, stop)) {
+                    if (!destination.equals(origin)) {
+                        intermediates.computeIfAbsent(key(origin, destination), k -> new ArrayList<>()).add(stop);
+                    }
+                }
+            }
+        }
+
+        Map<String, Connections> connections = new HashMap<>();
+        int intermediateCount = 0;
+
+        for (Map.Entry<String, List<String>> entry : intermediates.entrySet()) {
+            String[] stops = entry.getValue().toArray(new String[0]);
+            intermediateCount += stops.length;
+            connections.put(entry.getKey(), new Connections(direct.remove(entry.getKey()) != null, stops));
+        }
+
+        direct.keySet().forEach(k -> connections.put(k, new Connections(true, new String[0])));
+
+        return new OneStopIndex(connections, intermediateCount);
+    }
+
+    /**
+     * Find all paths between origin and destination with the given maximum
+     * number of airport transitions (i.e. 1 for direct paths and 2 for
+     * paths with one intermediate airport).
+     *
+     * @param origin the origin airport
+     * @param destination the destination airport
+     * @param maxStop the maximum number of transitions (up to 2)
+     * @return the list of paths
+     */
+    public List<FlightPath> findRoutes(String origin, String destination, int maxStop) {
+        Connections pair = (maxStop > 0) ? connections.get(key(origin, destination)) : null;
+
+        if (pair == null) {
+            return Collections.emptyList();
+        }
+
+        List<FlightPath> paths = new ArrayList<>();
+
+        if (pair.direct) {
+            paths.add(FlightPath.from(new ArrayList<>(Arrays.asList(origin, destination))));
+        }
+
+        if (maxStop > 1) {
+            for (String stop : pair.intermediates) {
+                paths.add(FlightPath.from(new ArrayList<>(Arrays.asList(origin, stop, destination))));
+            }
+        }
+
+        return paths;
+    }
+
+    /**
+     * Retrieves the number of (origin, destination) pairs indexed
+     *
+     * @return the number of pairs
+     */
+    public int getPairCount() {
+        return connections.size();
+    }
+
+    /**
+     * Retrieves the total number of one-stop paths indexed
+     *
+     * @return the number of intermediate airports stored
+     */
+    public int getIntermediateCount() {
+        return intermediateCount;
+    }
+
+    /**
+     * Estimates the heap retained by the index
+     *
+     * @return the approximate size in bytes
+     */
+    public long estimateMemoryBytes() {
+        return (long) connections.size() * (ENTRY_BYTES + CONNECTIONS_BYTES + REFERENCE_BYTES)
+                + (long) intermediateCount * REFERENCE_BYTES;
+    }
+
+    /**
+     * Builds the lookup key of a pair of airports
+     *
+     * @param origin the origin airport
+     * @param destination the destination airport
+     * @return the key
+     */
+    private static String key(String origin, String destination) {
+        return origin + '-' + destination;
+    }
+
+    @Override
+    public String toString() {
+        return "OneStopIndex{" +
+                "pairs=" + getPairCount() +
+                ", oneStopPaths=" + getIntermediateCount() +
+                ", memory~" + (estimateMemoryBytes() / 1024) + "KB" +
+                '}';
+    }
+
+    /**
+     * The connections between a pair of airports
+     */
+    private static final class Connections {
+
+        /** Whether a direct route exists */
+        private final boolean direct;
+
+        /** The intermediate airports */
+        private final String[] intermediates;
+
+        /**
+         * Constructor with all the fields
+         *
+         * @param direct whether a direct route exists
+         * @param intermediates the intermediate airports
+         */
+        private Connections(boolean direct, String[] intermediates) {
+            this.direct = direct;
+            this.intermediates = intermediates;
+        }
+    }
+}
@@ -18,28 +18,66 @@ package com.github.pnavais.flights.routes;
 import com.github.pnavais.flights.api.RoutesIndex;
 import com.github.pnavais.flights.model.FlightPath;
 import org.jgrapht.Graph;
+import org.jgrapht.Graphs;
 import org.jgrapht.alg.shortestpath.AllDirectedPaths;
 import org.jgrapht.graph.DefaultDirectedGraph;
 import org.jgrapht.graph.DefaultEdge;
-import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
- * Contains the connections between incoming/outgoing airports
+ * Contains the connections between incoming/outgoing airports.
+ * <p>
+ * The graph is populated once and frozen when built : no routes can
+ * be added afterwards, so that it can be safely shared between request
+ * threads. Updated routes are published as a new graph with a higher
+ * version.
+ * </p>
  */
-@Component
 public class RoutesGraph implements RoutesIndex<FlightPath, String> {
 
+    /** The logger instance */
+    private static final Logger logger = LoggerFactory.getLogger(RoutesGraph.class);
+
+    /** Maximum number of transitions served by the one-stop index */
+    private static final int ONE_STOP_MAX_TRANSITIONS = 2;
+
     /** The graph of nodes */
     private final Graph<String, DefaultEdge> graph;
 
+    /** The version of the routes */
+    private final long version;
+
+    /** The precomputed index of paths with one stop at most */
+    private volatile OneStopIndex oneStopIndex;
+
     /**
      * Default constructor
      */
     public RoutesGraph() {
+        this(0);
+    }
+
+    /**
+     * Creates an empty graph for the given
+     * version of the routes.
+     *
+     * @param version the version of the routes
+     */
+    public RoutesGraph(long version) {
         this.graph = new DefaultDirectedGraph<>(DefaultEdge.class);
+        this.version = version;
     }
 
     /**
@@ -47,17 +85,60 @@ public class RoutesGraph implements RoutesIndex<FlightPath, String> {
      * departure and arrival airports in IATA codes
      * @param srcAirport the departure airport
      * @param targetAirport the arrival airport
+     * @throws IllegalStateException if the graph is already built
      */
     @Override
     public void add(String srcAirport, String targetAirport) {
+        if (this.oneStopIndex != null) {
+            throw new IllegalStateException("Routes graph version " + version + " is already built");
+        }
         this.graph.addVertex(srcAirport);
         this.graph.addVertex(targetAirport);
         this.graph.addEdge(srcAirport, targetAirport);
     }
 
+    /**
+     * Precomputes the index of paths with one
+     * intermediate stop at most and freezes the graph.
+     */
+    @Override
+    public void build() {
+        this.oneStopIndex = OneStopIndex.of(this.graph);
+        logger.info("Routes graph version {} indexed : {} airports, {} routes, {}", version,
+                graph.vertexSet().size(), graph.edgeSet().size(), oneStopIndex);
+    }
+
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public int getAirportCount() {
+        return graph.vertexSet().size();
+    }
+
+    @Override
+    public int getRouteCount() {
+        return graph.edgeSet().size();
+    }
+
+    /**
+     * Retrieves the index of paths with one stop at most
+     *
+     * @return the one-stop index or null if not built
+     */
+    public OneStopIndex getOneStopIndex() {
+        return oneStopIndex;
+    }
+
     /**
      * Find all services in the graph between the departure airport to
      * the destination airport with a maximum number of interconnections.
+     * <p>
+     * Searches with one stop at most are served by the precomputed
+     * one-stop index when available.
+     * </p>
      *
      * @param srcAirport the departure airport
      * @param targetAirport the target airport
@@ -67,6 +148,11 @@ public class RoutesGraph implements RoutesIndex<FlightPath, String> {
      */
     @Override
     public List<FlightPath> findRoutes(String srcAirport, String targetAirport, int maxStop) {
+        OneStopIndex index = this.oneStopIndex;
+
+        if (index != null && maxStop <= ONE_STOP_MAX_TRANSITIONS && !srcAirport.equals(targetAirport)) {
+            return index.findRoutes(srcAirport, targetAirport, maxStop);
+        }
 
         // Use Dijkstra algorithm to find shortest path matching the restriction
         AllDirectedPaths<String, DefaultEdge> allDirectedPaths = new AllDirectedPaths<>(this.graph);
@@ -77,4 +163,91 @@ public class RoutesGraph implements RoutesIndex<FlightPath, String> {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Find the routes lying on some path between the departure airport
+     * and the destination airport with a maximum number of transitions.
+     *
+     * @param srcAirport the departure airport
+     * @param targetAirport the target airport
+     * @param maxStop the maximum number of transitions
+     *
+     * @return the destinations of the routes by origin
+     */
+    @Override
+    public Map<String, Set<String>> findNetwork(String srcAirport, String targetAirport, int maxStop) {
+        return findNetwork(Collections.singleton(srcAirport), Collections.singleton(targetAirport), maxStop);
+    }
+
+    /**
+     * Find the routes lying on some path between any of the departure
+     * airports and any of the destination airports with a maximum number
+     * of transitions. Unknown airports are ignored.
+     *
+     * @param srcAirports the departure airports
+     * @param targetAirports the target airports
+     * @param maxStop the maximum number of transitions
+     *
+     * @return the destinations of the routes by origin
+     */
+    @Override
+    public Map<String, Set<String>> findNetwork(Set<String> srcAirports, Set<String> targetAirports, int maxStop) {
+        List<String> sources = srcAirports.stream().filter(graph::containsVertex).collect(Collectors.toList());
+        List<String> targets = targetAirports.stream().filter(graph::containsVertex).collect(Collectors.toList());
+
+        if (sources.isEmpty() || targets.isEmpty() || maxStop < 1) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, Integer> fromSource = distances(sources, maxStop, a -> Graphs.successorListOf(graph, a));
+        Map<String, Integer> toTarget = distances(targets, maxStop, a -> Graphs.predecessorListOf(graph, a));
+        Map<String, Set<String>> network = new HashMap<>();
+
+        fromSource.forEach((airport, distance) -> {
+            for (String next : Graphs.successorListOf(graph, airport)) {
+                Integer remaining = toTarget.get(next);
+                if (remaining != null && distance + 1 + remaining <= maxStop) {
+                    network.computeIfAbsent(airport, a -> new HashSet<>()).add(next);
+                }
+            }
+        });
+
+        return network;
+    }
+
+    /**
+     * Computes the minimum number of transitions between the closest
+     * start airport and the airports within the given maximum, following
+     * the given adjacency (successors or predecessors).
+     *
+     * @param starts the start airports
+     * @param maxStop the maximum number of transitions
+     * @param adjacent the adjacent airports of an airport
+     * @return the distances by airport
+     */
+    private Map<String, Integer> distances(List<String> starts, int maxStop,
+                                           Function<String, List<String>> adjacent) {
+        Map<String, Integer> distances = new HashMap<>();
+        Deque<String> queue = new ArrayDeque<>();
+        for (String start : starts) {
+            if (distances.putIfAbsent(start, 0) == null) {
+                queue.add(start);
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            String airport = queue.poll();
+            int distance = distances.get(airport) + 1;
+            if (distance > maxStop) {
+                break;
+            }
+            for (String next : adjacent.apply(airport)) {
+                if (distances.putIfAbsent(next, distance) == null) {
+                    queue.add(next);
+                }
+            }
+        }
+
+        return distances;
+    }
+
 }
@@ -15,9 +15,12 @@
  */
 package com.github.pnavais.flights.services;
 
-import com.github.pnavais.flights.client.ProxyConfig;
+import com.github.pnavais.flights.client.BulkheadClient;
+import com.github.pnavais.flights.client.HttpTransport;
+import com.github.pnavais.flights.client.MeteredClient;
 import feign.Client;
-import okhttp3.OkHttpClient;
+import feign.Request;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 
 /**
@@ -25,18 +28,54 @@ import org.springframework.beans.factory.annotation.Autowired;
  */
 public abstract class AbstractServiceProvider {
 
-    /** The proxy for client requests */
+    /** The HTTP transport shared by all the clients */
     @Autowired
-    private ProxyConfig proxyBuilder;
+    private HttpTransport httpTransport;
+
+    /** The registry of the upstream requests timers */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Retrieves the registry of the application meters
+     *
+     * @return the meter registry
+     */
+    protected MeterRegistry getMeterRegistry() {
+        return meterRegistry;
+    }
+
+    /**
+     * Checks whether the upstream requests are waiting
+     * for admission, i.e. the upstream capacity is exhausted
+     *
+     * @return true if saturated, false otherwise
+     */
+    protected boolean isUpstreamSaturated() {
+        return httpTransport.getBulkhead().isSaturated();
+    }
+
+    /**
+     * Retrieve the options of the requests of the REST
+     * client, with the timeouts of the shared transport.
+     *
+     * @return the request options
+     */
+    protected Request.Options buildRequestOptions() {
+        return httpTransport.getRequestOptions();
+    }
 
     /**
      * Retrieve the HTTP client to be used
-     * in the REST client
+     * in the REST client, timing its requests
+     * over the shared transport once admitted
+     * by priority.
      *
+     * @param name the name of the client in the metrics
      * @return the http client
      */
-    protected Client buildHttpClient() {
-        OkHttpClient httpClient = new OkHttpClient.Builder().proxy(proxyBuilder.getProxy()).build();
-        return new feign.okhttp.OkHttpClient(httpClient);
+    protected Client buildHttpClient(String name) {
+        return new BulkheadClient(new MeteredClient(new feign.okhttp.OkHttpClient(httpTransport.getClient()), name,
+                meterRegistry), httpTransport.getBulkhead());
     }
 }
@@ -18,8 +18,12 @@ package com.github.pnavais.flights.services;
 import com.github.pnavais.flights.api.RoutesIndex;
 import com.github.pnavais.flights.api.RoutesProvider;
 import com.github.pnavais.flights.client.RoutesClient;
+import com.github.pnavais.flights.jackson.Mappers;
+import com.github.pnavais.flights.metrics.FlightsMetrics;
 import com.github.pnavais.flights.model.FlightPath;
 import com.github.pnavais.flights.model.Route;
+import com.github.pnavais.flights.routes.CompactRoutesIndex;
+import com.github.pnavais.flights.routes.RoutesGraph;
 import feign.Feign;
 import feign.jackson.JacksonDecoder;
 import feign.jackson.JacksonEncoder;
@@ -30,15 +34,23 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A dedicated class storing the services provided by the RoutesClient
  * and made it accessible externally.
  *
- * The information contained in the Routes can be refreshed manually.
+ * The routes are refreshed periodically : every refresh builds a new
+ * index off to the side which is then published atomically, so that
+ * readers never block nor see a partially built index. Should a refresh
+ * fail, the previous index is kept.
  */
 @Component
 public class AirportRoutesProvider extends AbstractServiceProvider
@@ -50,14 +62,34 @@ public class AirportRoutesProvider extends AbstractServiceProvider
     /** The services client */
     private RoutesClient routesClient;
 
-    /** The routes storage */
-    @Autowired
-    private RoutesIndex<FlightPath, String> routes;
+    /** The routes storage (current version) */
+    private final AtomicReference<RoutesIndex<FlightPath, String>> routes = new AtomicReference<>();
 
     /** The routes service endpoint */
     @Value("${routes.endpoint.url}")
     String routesServiceEndpoint;
 
+    /** The implementation of the routes index (graph or compact) */
+    @Value("${routes.index.type:graph}")
+    private String routesIndexType;
+
+    /** The application metrics */
+    @Autowired
+    private FlightsMetrics flightsMetrics;
+
+    /**
+     * Publishes an empty index to be used until
+     * the routes are first retrieved and measures
+     * the current one.
+     */
+    @PostConstruct
+    public void init() {
+        RoutesIndex<FlightPath, String> index = newIndex(0);
+        index.build();
+        this.routes.set(index);
+        flightsMetrics.registerRoutes(this.routes);
+    }
+
     /**
      * Performs initialization on bean creation.
      * Creates the REST client to consume
@@ -69,9 +101,10 @@ public class AirportRoutesProvider extends AbstractServiceProvider
     public void onApplicationEvent(ContextRefreshedEvent event) {
         // Create the REST client
         this.routesClient = Feign.builder()
-                .client(buildHttpClient())
-                .encoder(new JacksonEncoder())
-                .decoder(new JacksonDecoder())
+                .client(buildHttpClient("routes"))
+                .options(buildRequestOptions())
+                .encoder(new JacksonEncoder(Mappers.getDefault()))
+                .decoder(new JacksonDecoder(Mappers.getDefault()))
                 .logger(new Slf4jLogger(RoutesClient.class))
                 .logLevel(feign.Logger.Level.FULL)
                 .target(RoutesClient.class, routesServiceEndpoint);
@@ -79,23 +112,79 @@ public class AirportRoutesProvider extends AbstractServiceProvider
         logger.info("Routes initialization : fetching routes");
 
         // Retrieve routes
-        fetch();
+        refresh();
+    }
+
+    /**
+     * Refreshes periodically the routes, keeping
+     * the current ones on failure.
+     */
+    @Scheduled(initialDelayString = "#{${routes.refresh.interval:60} * 60000}",
+            fixedDelayString = "#{${routes.refresh.interval:60} * 60000}")
+    public void refresh() {
+        try {
+            fetch();
+        } catch (Exception e) {
+            logger.warn("Error refreshing routes, keeping version {} : {}", this.routes.get().getVersion(),
+                    e.getLocalizedMessage());
+        }
     }
 
     /**
      * Updates the services by accessing the external
-     * controller.
+     * controller. The routes are stored in a new index
+     * replacing the current one once built.
      */
     @Override
-    public RoutesIndex<FlightPath, String> fetch() {
+    public synchronized RoutesIndex<FlightPath, String> fetch() {
         List<Route> routesList = this.routesClient.findAll();
-        routesList.forEach(route -> this.routes.add(route.getAirportFrom(), route.getAirportTo()));
-        return this.routes;
+        RoutesIndex<FlightPath, String> current = this.routes.get();
+
+        if (routesList.isEmpty()) {
+            logger.warn("No routes retrieved, keeping version {}", current.getVersion());
+            return current;
+        }
+
+        RoutesIndex<FlightPath, String> index = newIndex(current.getVersion() + 1);
+        routesList.forEach(route -> index.add(route.getAirportFrom(), route.getAirportTo()));
+        index.build();
+        this.routes.set(index);
+
+        logger.info("Routes refreshed : version {} published", index.getVersion());
+        return index;
     }
 
     @Override
     public List<FlightPath> findPaths(String origin, String destination, int maxStops) {
-        return this.routes.findRoutes(origin, destination, maxStops);
+        return flightsMetrics.timeRoutesSearch(() -> this.routes.get().findRoutes(origin, destination, maxStops));
+    }
+
+    @Override
+    public Map<String, Set<String>> findNetwork(String origin, String destination, int maxTransitions) {
+        return this.routes.get().findNetwork(origin, destination, maxTransitions);
+    }
+
+    @Override
+    public Map<String, Set<String>> findNetwork(Set<String> origins, Set<String> destinations, int maxTransitions) {
+        return this.routes.get().findNetwork(origins, destinations, maxTransitions);
+    }
+
+    /**
+     * Creates an empty index of the configured
+     * type for the given version of the routes.
+     *
+     * @param version the version of the routes
+     * @return the empty index
+     */
+    private RoutesIndex<FlightPath, String> newIndex(long version) {
+        switch (routesIndexType) {
+            case "graph":
+                return new RoutesGraph(version);
+            case "compact":
+                return new CompactRoutesIndex(version);
+            default:
+                throw new IllegalArgumentException("Unknown routes index type : " + routesIndexType);
+        }
     }
 
     /**
@@ -103,8 +192,9 @@ public class AirportRoutesProvider extends AbstractServiceProvider
      *
      * @return the fetched services
      */
+    @Override
     public RoutesIndex<FlightPath, String> getRoutes() {
-        return routes;
+        return routes.get();
     }
 
 }
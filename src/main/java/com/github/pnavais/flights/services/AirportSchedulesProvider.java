@@ -15,34 +15,50 @@
  */
 package com.github.pnavais.flights.services;
 
-import com.fasterxml.jackson.databind.Module;
-import com.fasterxml.jackson.databind.module.SimpleModule;
-import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.github.pnavais.flights.api.SchedulesProvider;
+import com.github.pnavais.flights.cache.PopularityTracker;
+import com.github.pnavais.flights.cache.ScheduleSnapshotStore;
+import com.github.pnavais.flights.cache.SchedulesCache;
+import com.github.pnavais.flights.client.ResilientSchedulesClient;
 import com.github.pnavais.flights.client.SchedulesClient;
-import com.github.pnavais.flights.jackson.MonthDeserializer;
+import com.github.pnavais.flights.jackson.Mappers;
+import com.github.pnavais.flights.jackson.TimetableDecoder;
+import com.github.pnavais.flights.metrics.FlightsMetrics;
 import com.github.pnavais.flights.model.Leg;
-import com.github.pnavais.flights.model.Schedule;
+import com.github.pnavais.flights.model.RouteMonth;
+import com.github.pnavais.flights.model.Timetable;
+import com.github.pnavais.flights.util.ExecutorUtils;
+import com.github.pnavais.flights.util.ReadVersions;
+import com.github.pnavais.flights.util.RequestCoalescer;
+import com.github.pnavais.flights.util.RequestPriority;
+import com.github.pnavais.flights.util.RequestTiming;
+import com.github.pnavais.flights.util.RetryBudget;
+import com.github.pnavais.flights.util.TimeUtils;
 import feign.Feign;
-import feign.FeignException;
-import feign.jackson.JacksonDecoder;
+import feign.Retryer;
 import feign.jackson.JacksonEncoder;
 import feign.slf4j.Slf4jLogger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDate;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.Month;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.time.YearMonth;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.stream.Collectors;
 
 /**
@@ -57,38 +73,122 @@ public class AirportSchedulesProvider extends AbstractServiceProvider implements
     /** The logger */
     private Logger logger = LoggerFactory.getLogger(AirportSchedulesProvider.class);
 
+    /** The cache of monthly schedules */
+    @Autowired
+    private SchedulesCache schedulesCache;
+
+    /** The frequency of the schedules read */
+    @Autowired
+    private PopularityTracker popularityTracker;
+
+    /** The persistent store of monthly schedules */
+    @Autowired
+    private ScheduleSnapshotStore snapshotStore;
+
+    /** The application meters */
+    @Autowired
+    private FlightsMetrics flightsMetrics;
+
     /** The Schedule Service endpoint */
     @Value("${schedules.endpoint.url}")
     private String schedulesServiceEndpoint;
 
+    /** The maximum number of months fetched concurrently */
+    @Value("${schedules.fetch.pool.size:16}")
+    private int fetchPoolSize;
+
+    /** The maximum number of months waiting to be fetched */
+    @Value("${schedules.fetch.queue.size:256}")
+    private int fetchQueueSize;
+
+    /** The maximum number of stored months refreshed concurrently */
+    @Value("${schedules.refresh.pool.size:4}")
+    private int refreshPoolSize;
+
+    /** The percentile of the upstream latencies after which requests are hedged (0 to disable) */
+    @Value("${schedules.hedge.percentile:95}")
+    private double hedgePercentile;
+
+    /** The minimum delay before hedging a request (ms) */
+    @Value("${schedules.hedge.min-delay:100}")
+    private long hedgeMinDelay;
+
+    /** The maximum number of retries of a failed request */
+    @Value("${schedules.retry.max-attempts:2}")
+    private int maxRetries;
+
+    /** The fraction of the requests that can be retried or hedged */
+    @Value("${schedules.retry.budget.ratio:0.1}")
+    private double retryBudgetRatio;
+
+    /** The maximum burst of retries or hedges */
+    @Value("${schedules.retry.budget.max:20}")
+    private double retryBudgetMax;
+
+    /** The executor fetching the monthly schedules */
+    private ExecutorService schedulesExecutor;
+
+    /** The executor sending the upstream requests when hedging */
+    private ExecutorService hedgingExecutor;
+
+    /** The executor refreshing the stored schedules served meanwhile */
+    private ExecutorService refreshExecutor;
+
+    /** The route-months being refreshed in background */
+    private final Set<RouteMonth> refreshing = ConcurrentHashMap.newKeySet();
+
+    /** Deduplicates concurrent fetches of the same route-month */
+    private final RequestCoalescer<RouteMonth, Timetable<String>> requestCoalescer = new RequestCoalescer<>();
+
+    /**
+     * Creates the executors used to fetch
+     * the monthly schedules and registers the
+     * meters of the coalesced fetches.
+     */
+    @PostConstruct
+    public void init() {
+        this.schedulesExecutor = ExecutorUtils.newBoundedExecutor("schedules", fetchPoolSize, fetchQueueSize);
+        this.hedgingExecutor = ExecutorUtils.newBoundedExecutor("hedging", 2 * fetchPoolSize, fetchQueueSize);
+        this.refreshExecutor = ExecutorUtils.newBoundedExecutor("refresh", refreshPoolSize, fetchQueueSize,
+                new ThreadPoolExecutor.AbortPolicy());
+        flightsMetrics.registerCoalescer(requestCoalescer, "schedules");
+    }
+
+    /**
+     * Releases the executors on bean destruction
+     */
+    @PreDestroy
+    public void destroy() {
+        ExecutorUtils.shutdown(schedulesExecutor);
+        ExecutorUtils.shutdown(hedgingExecutor);
+        ExecutorUtils.shutdown(refreshExecutor);
+    }
+
     /**
      * Performs initialization on bean creation.
      * Creates the REST client to consume
      * Schedules API and stores the services.
+     * Retries are left to the resilient client,
+     * so that all of them are budgeted.
      *
      * @param event the spring context event
      */
     @EventListener
     public void onApplicationEvent(ContextRefreshedEvent event) {
         // Create the REST client
-        this.schedulesClient = Feign.builder()
-                .client(buildHttpClient())
-                .encoder(new JacksonEncoder())
-                .decoder(new JacksonDecoder(buildDecoderModule()))
+        SchedulesClient client = Feign.builder()
+                .client(buildHttpClient("schedules"))
+                .options(buildRequestOptions())
+                .encoder(new JacksonEncoder(Mappers.getDefault()))
+                .decoder(new TimetableDecoder(Mappers.getDefault()))
+                .retryer(Retryer.NEVER_RETRY)
                 .logger(new Slf4jLogger(SchedulesClient.class))
                 .logLevel(feign.Logger.Level.FULL)
                 .target(SchedulesClient.class, schedulesServiceEndpoint);
-    }
 
-    /**
-     * Creates the custom modules for the decoder
-     *
-     * @return the custom modules
-     */
-    private List<Module> buildDecoderModule() {
-        SimpleModule extraModule = new SimpleModule();
-        extraModule.addDeserializer(Month.class, MonthDeserializer.getDefault());
-        return Arrays.asList(extraModule, new JavaTimeModule(), new Jdk8Module());
+        this.schedulesClient = new ResilientSchedulesClient(client, hedgingExecutor,
+                new RetryBudget(retryBudgetRatio, retryBudgetMax), this::isUpstreamSaturated, hedgePercentile,
+                hedgeMinDelay, maxRetries, getMeterRegistry());
     }
 
     /**
@@ -103,63 +203,296 @@ public class AirportSchedulesProvider extends AbstractServiceProvider implements
     @Override
     public List<Leg<String>> getFlights(String origin, String destination, LocalDateTime departureDate, LocalDateTime
             arrivalDate) {
-        List<Leg<String>> flights = new ArrayList<>();
+        return getFlightsAsync(origin, destination, departureDate, arrivalDate).join();
+    }
 
-        try {
+    /**
+     * Asynchronously retrieves the flights between two airport for a given time frame.
+     *
+     * @param origin the origin node
+     * @param destination the destination node
+     * @param departureDate the departure date
+     * @param arrivalDate the arrival date
+     * @return the future list of scheduled flights
+     */
+    @Override
+    public CompletableFuture<List<Leg<String>>> getFlightsAsync(String origin, String destination,
+                                                                LocalDateTime departureDate,
+                                                                LocalDateTime arrivalDate) {
+        return getTimetableAsync(origin, destination, departureDate, arrivalDate).thenApply(Timetable::toLegs);
+    }
 
-            logger.info("Obtaining flights between : {} -> {} from {} to {}", origin, destination, departureDate, arrivalDate);
-
-            LocalDateTime dateToFetch = departureDate;
-            do {
-                // Retrieve flights for the target date
-                Schedule scheduledFlights = schedulesClient.getScheduledFlights(origin, destination,
-                        dateToFetch.getYear(), dateToFetch.getMonth().getValue());
-                scheduledFlights.setYear(dateToFetch.getYear());
-
-                // Filter legs in range
-                LocalDateTime finalDateToFetch = dateToFetch;
-                scheduledFlights.getDays().forEach(fd -> {
-                    List<Leg<String>> legs = fd.getFlights().stream()
-                            .filter(f -> {
-                                LocalDate date = LocalDate.of(scheduledFlights.getYear(), scheduledFlights.getMonth(), fd.getDay());
-                                LocalDateTime departureDateTime = LocalDateTime.of(date, f.getDepartureTime());
-                                return (finalDateToFetch.compareTo(departureDateTime) <= 0) && (arrivalDate.compareTo
-                                        (departureDateTime)>=0);
-                            }).map(f -> {
-                                // Translate to a valid leg
-                                LocalDate date = LocalDate.of(scheduledFlights.getYear(), scheduledFlights.getMonth(), fd.getDay());
-                                LocalDateTime departureDateTime = LocalDateTime.of(date, f.getDepartureTime());
-                                LocalDateTime arrivalDateTime = LocalDateTime.of(date, f.getArrivalTime());
-
-                                Leg<String> leg = new Leg<>();
-                                leg.setDepartureAirport(origin);
-                                leg.setArrivalAirport(destination);
-                                leg.setDepartureDateTime(departureDateTime);
-                                leg.setArrivalDateTime(arrivalDateTime);
-
-                                return leg;
-                            }).collect(Collectors.toList());
-
-                    // Add matched legs
-                    flights.addAll(legs);
+    /**
+     * Asynchronously retrieves the timetable of the flights between two airport
+     * departing in the given time frame.
+     * <p>
+     * The months spanned by the time frame are fetched concurrently and
+     * merged in date order. A failure retrieving a given month is reported
+     * and skipped without discarding the rest of the time frame. The
+     * versions of the months read are recorded in the {@link ReadVersions}
+     * of the caller, if any, and the stages depending on the timetable run
+     * in the request context of the caller.
+     * </p>
+     *
+     * @param origin the origin node
+     * @param destination the destination node
+     * @param departureDate the departure date
+     * @param arrivalDate the arrival date
+     * @return the future timetable of scheduled flights
+     */
+    @Override
+    public CompletableFuture<Timetable<String>> getTimetableAsync(String origin, String destination,
+                                                                  LocalDateTime departureDate,
+                                                                  LocalDateTime arrivalDate) {
+
+        logger.info("Obtaining flights between : {} -> {} from {} to {}", origin, destination, departureDate,
+                arrivalDate);
+
+        int fromMinute = TimeUtils.toEpochMinuteCeiling(departureDate);
+        int toMinute = TimeUtils.toEpochMinute(arrivalDate);
+        ReadVersions<RouteMonth> reads = ReadVersions.current();
+
+        // Retrieve the flights of every month concurrently
+        List<CompletableFuture<Timetable<String>>> monthlyFlights = RouteMonth.spanning(origin, destination,
+                departureDate, arrivalDate).stream()
+                .map(routeMonth -> RequestTiming.timeAsync("schedules", () -> fetchSchedule(routeMonth))
+                        .thenApply(schedule -> {
+                            recordRead(reads, routeMonth, schedule);
+                            return schedule.slice(fromMinute, toMinute);
+                        })
+                        .exceptionally(e -> {
+                            if (reads != null) {
+                                reads.recordFailure(routeMonth);
+                            }
+                            Throwable cause = (e instanceof CompletionException) ? e.getCause() : e;
+                            logger.error("Error retrieving schedules for {} : {}", routeMonth,
+                                    cause.getLocalizedMessage());
+                            return Timetable.empty(origin, destination);
+                        }))
+                .collect(Collectors.toList());
+
+        CompletableFuture<Timetable<String>> timetable = CompletableFuture.allOf(
+                monthlyFlights.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> {
+                    // Merge the flights in date order
+                    Timetable<String> flights = Timetable.concat(origin, destination, monthlyFlights.stream()
+                            .map(CompletableFuture::join)
+                            .collect(Collectors.toList()));
+
+                    logger.info("{} flights obtained between {} -> {} from {} to {}",
+                            flights.size(),
+                            origin, destination,
+                            departureDate,
+                            arrivalDate);
+
+                    logger.debug("Schedules cache stats : {}", schedulesCache.getStats());
+                    logger.debug("Schedules requests : {}", requestCoalescer);
+
+                    return flights;
                 });
 
-                // Fetch next month if necessary
-                LocalDate localDate = dateToFetch.plusMonths(1).withDayOfMonth(1).toLocalDate();
-                dateToFetch = LocalDateTime.of(localDate, LocalTime.MIN);
-            } while (dateToFetch.compareTo(arrivalDate)<=0);
+        return ExecutorUtils.inCurrentContext(timetable);
+    }
 
-            logger.info("{} flights obtained between {} -> {} from {} to {}",
-                    flights.size(),
-                    origin, destination,
-                    departureDate,
-                    arrivalDate);
+    /**
+     * Records the version of the given schedule read, if still the
+     * cached one, or an unknown version otherwise so that results
+     * derived from it are not cached.
+     *
+     * @param reads the versions read by the caller or null if not tracked
+     * @param routeMonth the route-month
+     * @param schedule the schedule read
+     */
+    private void recordRead(ReadVersions<RouteMonth> reads, RouteMonth routeMonth, Timetable<String> schedule) {
+        if (reads != null) {
+            long version = schedulesCache.getVersion(routeMonth);
+            reads.record(routeMonth, (schedulesCache.get(routeMonth) == schedule) ? version
+                    : SchedulesCache.NO_VERSION);
+        }
+    }
 
-        } catch (FeignException e) {
-            logger.error("Error retrieving schedules : {}", e.getLocalizedMessage());
+    /**
+     * Fetches the schedule of the given route and month ahead of its
+     * reads, without recording it as read. Failures are logged and do
+     * not fail the fetch.
+     *
+     * @param origin the origin node
+     * @param destination the destination node
+     * @param month the month
+     * @return the future completed once fetched
+     */
+    @Override
+    public CompletableFuture<Void> fetchAsync(String origin, String destination, YearMonth month) {
+        RouteMonth routeMonth = RouteMonth.of(origin, destination, month.getYear(), month.getMonthValue());
+
+        return retrieveSchedule(routeMonth).handle((schedule, e) -> {
+            if (e != null) {
+                Throwable cause = (e instanceof CompletionException) ? e.getCause() : e;
+                logger.error("Error fetching schedules for {} : {}", routeMonth, cause.getLocalizedMessage());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Retrieves the schedule of the given route-month read by a
+     * search, recording the read in the popularity of the schedules.
+     *
+     * @param routeMonth the route-month
+     * @return the future schedule
+     */
+    private CompletableFuture<Timetable<String>> fetchSchedule(RouteMonth routeMonth) {
+        popularityTracker.recordRouteMonth(routeMonth);
+        return retrieveSchedule(routeMonth);
+    }
+
+    /**
+     * Retrieves the schedule of the given route-month, serving it
+     * from the cache when available and loading it otherwise.
+     * Concurrent loads of the same route-month are coalesced into
+     * a single request.
+     *
+     * @param routeMonth the route-month
+     * @return the future schedule
+     */
+    private CompletableFuture<Timetable<String>> retrieveSchedule(RouteMonth routeMonth) {
+        Timetable<String> schedule = schedulesCache.get(routeMonth);
+
+        if (schedule != null) {
+            return CompletableFuture.completedFuture(schedule);
+        }
+
+        return requestCoalescer.execute(routeMonth,
+                () -> CompletableFuture.supplyAsync(() -> loadSchedule(routeMonth), schedulesExecutor));
+    }
+
+    /**
+     * Loads the schedule of the given route-month from the persistent
+     * store, if present, or from the Schedules API otherwise. Stored
+     * schedules are refreshed in background as they age.
+     *
+     * @param routeMonth the route-month
+     * @return the schedule
+     */
+    private Timetable<String> loadSchedule(RouteMonth routeMonth) {
+        // Check whether a request completed meanwhile
+        Timetable<String> schedule = schedulesCache.get(routeMonth);
+
+        if (schedule == null) {
+            ScheduleSnapshotStore.Snapshot snapshot = snapshotStore.get(routeMonth);
+
+            if (snapshot != null) {
+                schedule = snapshot.getTimetable();
+                schedulesCache.put(routeMonth, schedule, snapshot.getFetchedAt());
+
+                if (snapshotStore.needsRefresh(snapshot)) {
+                    refreshSchedule(routeMonth);
+                }
+            } else {
+                schedule = fetchFromUpstream(routeMonth);
+            }
+        }
+
+        return schedule;
+    }
+
+    /**
+     * Fetches the schedule of the given route-month from the
+     * Schedules API and stores it in its compact form both
+     * in the cache and the persistent store.
+     *
+     * @param routeMonth the route-month
+     * @return the schedule
+     */
+    private Timetable<String> fetchFromUpstream(RouteMonth routeMonth) {
+        Timetable<String> schedule = RequestTiming.time("upstream",
+                () -> schedulesClient.getTimetable(routeMonth.getOrigin(), routeMonth.getDestination(),
+                        routeMonth.getYear(), routeMonth.getMonth()));
+        long fetchedAt = System.currentTimeMillis();
+        schedulesCache.put(routeMonth, schedule, fetchedAt);
+        snapshotStore.put(routeMonth, schedule, fetchedAt);
+
+        return schedule;
+    }
+
+    /**
+     * Refreshes in background the schedule of the given route-month,
+     * unless already refreshing, with the priority of prefetches as
+     * the stored schedule is served meanwhile. The refresh runs in
+     * its own executor, never in the thread serving the stored
+     * schedule, and is skipped while that executor is saturated.
+     *
+     * @param routeMonth the route-month
+     */
+    private void refreshSchedule(RouteMonth routeMonth) {
+        RequestPriority.PREFETCH.run(() -> refreshAsync(routeMonth, refreshExecutor));
+    }
+
+    /**
+     * Refreshes the schedule of the given route and month from the
+     * Schedules API using the given executor, unless already refreshing.
+     * Failures are logged and do not fail the refresh.
+     *
+     * @param origin the origin node
+     * @param destination the destination node
+     * @param month the month
+     * @param executor the executor fetching the schedule
+     * @return the future completed once refreshed, with whether the
+     * schedule was actually fetched
+     */
+    @Override
+    public CompletableFuture<Boolean> refreshAsync(String origin, String destination, YearMonth month,
+                                                   Executor executor) {
+        return refreshAsync(RouteMonth.of(origin, destination, month.getYear(), month.getMonthValue()), executor);
+    }
+
+    /**
+     * Refreshes the schedule of the given route-month using
+     * the given executor, unless already refreshing or rejected
+     * by the executor.
+     *
+     * @param routeMonth the route-month
+     * @param executor the executor fetching the schedule
+     * @return the future completed once refreshed, with whether the
+     * schedule was fetched (false if skipped or failed)
+     */
+    private CompletableFuture<Boolean> refreshAsync(RouteMonth routeMonth, Executor executor) {
+        if (!refreshing.add(routeMonth)) {
+            return CompletableFuture.completedFuture(false);
         }
 
-        return flights;
+        logger.debug("Refreshing schedule for {}", routeMonth);
+
+        CompletableFuture<Void> refresh;
+        try {
+            refresh = CompletableFuture.runAsync(() -> fetchFromUpstream(routeMonth), executor);
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(routeMonth);
+            logger.debug("Skipping refresh of schedule for {}, too many refreshes pending", routeMonth);
+            return CompletableFuture.completedFuture(false);
+        }
+
+        return refresh
+                .handle((v, e) -> {
+                    refreshing.remove(routeMonth);
+                    if (e != null) {
+                        Throwable cause = (e instanceof CompletionException) ? e.getCause() : e;
+                        logger.warn("Error refreshing schedules for {} : {}", routeMonth,
+                                cause.getLocalizedMessage());
+                        return false;
+                    }
+                    return true;
+                });
+    }
+
+    /**
+     * Retrieves the coalescer of the in-flight
+     * schedule requests.
+     *
+     * @return the request coalescer
+     */
+    public RequestCoalescer<RouteMonth, Timetable<String>> getRequestCoalescer() {
+        return requestCoalescer;
     }
 
 }
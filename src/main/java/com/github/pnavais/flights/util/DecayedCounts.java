@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.util;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe frequency counts of keys decaying over time, so
+ * that recent occurrences weigh more than older ones. Counts are
+ * decayed on demand by a given factor and dropped once negligible.
+ * <p>
+ * The number of keys tracked is bounded : occurrences of new keys
+ * are ignored while full, until a decay frees some room.
+ * </p>
+ *
+ * @param <K> the type of keys
+ */
+public class DecayedCounts<K> {
+
+    /** The count below which a key is dropped */
+    private static final double MIN_COUNT = 0.05;
+
+    /** The counts by key */
+    private final Map<K, Double> counts = new ConcurrentHashMap<>();
+
+    /** The maximum number of keys tracked */
+    private final int maxKeys;
+
+    /**
+     * Constructor with the maximum number of keys
+     *
+     * @param maxKeys the maximum number of keys tracked
+     */
+    public DecayedCounts(int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Records an occurrence of the given key
+     *
+     * @param key the key
+     */
+    public void add(K key) {
+        if (counts.size() < maxKeys || counts.containsKey(key)) {
+            counts.merge(key, 1.0, Double::sum);
+        }
+    }
+
+    /**
+     * Decays all the counts by the given factor, dropping
+     * the keys whose count becomes negligible.
+     *
+     * @param factor the factor applied to the counts (0 to 1)
+     */
+    public void decay(double factor) {
+        counts.replaceAll((key, count) -> count * factor);
+        counts.values().removeIf(count -> count < MIN_COUNT);
+    }
+
+    /**
+     * Retrieves the current count of the given key
+     *
+     * @param key the key
+     * @return the count or 0 if not tracked
+     */
+    public double get(K key) {
+        return counts.getOrDefault(key, 0.0);
+    }
+
+    /**
+     * Retrieves the keys with the highest counts
+     *
+     * @param n the maximum number of keys
+     * @return the counts of the top keys, highest first
+     */
+    public Map<K, Double> top(int n) {
+        Map<K, Double> top = new LinkedHashMap<>();
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<K, Double>comparingByValue(Comparator.reverseOrder()))
+                .limit(n)
+                .forEach(e -> top.put(e.getKey(), e.getValue()));
+        return top;
+    }
+
+    /**
+     * Retrieves the number of keys tracked
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        return counts.size();
+    }
+
+    /**
+     * Computes the factor decaying counts to half
+     * their value after the given half-life.
+     *
+     * @param elapsed the time elapsed
+     * @param halfLife the half-life, in the same unit
+     * @return the decay factor
+     */
+    public static double factor(double elapsed, double halfLife) {
+        return Math.pow(0.5, elapsed / halfLife);
+    }
+
+    @Override
+    public String toString() {
+        return "DecayedCounts{keys=" + counts.size() + ", max=" + maxKeys + "}";
+    }
+}
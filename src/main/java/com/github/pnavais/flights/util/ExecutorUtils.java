@@ -0,0 +1,154 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor utility functions
+ */
+public class ExecutorUtils {
+
+    /** Time to wait for running tasks on shutdown */
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+    /**
+     * Private constructor to avoid
+     * instantiation
+     */
+    private ExecutorUtils() {}
+
+    /**
+     * Creates a fixed size thread pool backed by a bounded queue.
+     * When both the pool and the queue are saturated the task
+     * is run by the submitting thread, throttling the producer
+     * instead of failing the request. Tasks run bound to the
+     * request context of the submitting thread (see {@link #wrap}).
+     *
+     * @param name the prefix of the thread names
+     * @param poolSize the number of threads
+     * @param queueSize the maximum number of pending tasks
+     * @return the executor
+     */
+    public static ExecutorService newBoundedExecutor(String name, int poolSize, int queueSize) {
+        return newBoundedExecutor(name, poolSize, queueSize, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Creates a fixed size thread pool backed by a bounded queue,
+     * handling the tasks submitted while both the pool and the
+     * queue are saturated with the given policy. Tasks run bound
+     * to the request context of the submitting thread.
+     *
+     * @param name the prefix of the thread names
+     * @param poolSize the number of threads
+     * @param queueSize the maximum number of pending tasks
+     * @param rejectionHandler the policy handling the tasks not accepted
+     * @return the executor
+     */
+    public static ExecutorService newBoundedExecutor(String name, int poolSize, int queueSize,
+                                                     RejectedExecutionHandler rejectionHandler) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                newThreadFactory(name),
+                rejectionHandler) {
+            @Override
+            public void execute(Runnable command) {
+                super.execute(wrap(command));
+            }
+        };
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Wraps the given task so that it runs bound to the request
+     * context of the current thread at wrapping time, i.e. its
+     * {@link RequestPriority}, {@link RequestTiming} and
+     * {@link ReadVersions}.
+     *
+     * @param task the task
+     * @return the wrapped task
+     */
+    public static Runnable wrap(Runnable task) {
+        return RequestPriority.wrap(RequestTiming.wrap(ReadVersions.wrap(task)));
+    }
+
+    /**
+     * Binds the given future to the request context of the current
+     * thread, so that the stages depending on it run in this context
+     * even when completed by a thread working on behalf of another
+     * request (e.g. a coalesced fetch).
+     *
+     * @param future the future
+     * @param <T> the type of result
+     * @return the future completed within the current context
+     */
+    public static <T> CompletableFuture<T> inCurrentContext(CompletableFuture<T> future) {
+        Runnable[] completion = new Runnable[1];
+        Runnable inContext = wrap(() -> completion[0].run());
+
+        return future.whenCompleteAsync((result, error) -> {}, task -> {
+            completion[0] = task;
+            inContext.run();
+        });
+    }
+
+    /**
+     * Creates a factory of daemon threads named
+     * after the given prefix.
+     *
+     * @param name the prefix of the thread names
+     * @return the thread factory
+     */
+    public static ThreadFactory newThreadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Shuts down the executor waiting a few seconds
+     * for the running tasks to complete.
+     *
+     * @param executor the executor to shutdown
+     */
+    public static void shutdown(ExecutorService executor) {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Context of a request recording the versions of the data it
+ * read, so that results derived from them can be invalidated
+ * once any of them changes.
+ * <p>
+ * As {@link RequestTiming}, the context is bound to the thread
+ * running the request and travels with the tasks submitted to
+ * the executors created by {@link ExecutorUtils}. Reading the
+ * same data with different versions, or failing to read it,
+ * makes the recorded versions inconsistent.
+ * </p>
+ *
+ * @param <K> the type of the data read
+ */
+public final class ReadVersions<K> {
+
+    /** The context bound to the current thread */
+    private static final ThreadLocal<ReadVersions<?>> CURRENT = new ThreadLocal<>();
+
+    /** The versions read by data */
+    private final Map<K, Long> versions = new HashMap<>();
+
+    /** Whether every read succeeded with a single version */
+    private boolean consistent = true;
+
+    /**
+     * Retrieves the context bound to the current thread
+     *
+     * @param <K> the type of the data read
+     * @return the context or null if none
+     */
+    @SuppressWarnings("unchecked")
+    public static <K> ReadVersions<K> current() {
+        return (ReadVersions<K>) CURRENT.get();
+    }
+
+    /**
+     * Runs the given task bound to this context
+     *
+     * @param task the task
+     * @param <T> the type of result
+     * @return the result of the task
+     */
+    public <T> T track(Supplier<T> task) {
+        ReadVersions<?> previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return task.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Wraps the given task so that it runs bound to
+     * the context current at wrapping time, if any
+     *
+     * @param task the task
+     * @return the wrapped task
+     */
+    public static Runnable wrap(Runnable task) {
+        ReadVersions<?> reads = CURRENT.get();
+
+        return () -> {
+            ReadVersions<?> previous = CURRENT.get();
+            restore(reads);
+            try {
+                task.run();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    /**
+     * Records the version of the given data read
+     *
+     * @param key the data read
+     * @param version the version read
+     */
+    public synchronized void record(K key, long version) {
+        Long previous = versions.putIfAbsent(key, version);
+        if ((previous != null) && (previous != version)) {
+            consistent = false;
+        }
+    }
+
+    /**
+     * Records a failure reading the given data
+     *
+     * @param key the data
+     */
+    public synchronized void recordFailure(K key) {
+        consistent = false;
+    }
+
+    /**
+     * Checks whether every read succeeded
+     * with a single version of the data
+     *
+     * @return true if consistent, false otherwise
+     */
+    public synchronized boolean isConsistent() {
+        return consistent;
+    }
+
+    /**
+     * Retrieves the versions read by data
+     *
+     * @return a copy of the versions
+     */
+    public synchronized Map<K, Long> getVersions() {
+        return Collections.unmodifiableMap(new HashMap<>(versions));
+    }
+
+    /**
+     * Binds the given context to the current thread
+     *
+     * @param reads the context or null to unbind it
+     */
+    private static void restore(ReadVersions<?> reads) {
+        if (reads == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(reads);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent requests for the same key (single-flight).
+ * <p>
+ * The first caller for a given key triggers the actual request while
+ * any other caller arriving before it completes shares the same
+ * future instead of issuing a new request.
+ * </p>
+ * <p>
+ * Requests run with the {@link RequestPriority} of the caller that
+ * triggered them, hence they are only shared with callers of the same
+ * or lower priority. A more urgent caller triggers its own request,
+ * which is shared from then on, instead of waiting behind a request
+ * admitted at a lower priority.
+ * </p>
+ *
+ * @param <K> the type of the request keys
+ * @param <V> the type of the results
+ */
+public class RequestCoalescer<K, V> {
+
+    /** The requests currently in flight */
+    private final ConcurrentMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+
+    /** The number of requests actually executed */
+    private final LongAdder executed = new LongAdder();
+
+    /** The number of requests served by an in-flight request */
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Executes the request for the given key unless an identical
+     * request is already in flight with the same or a higher priority
+     * than the current one, in which case its future is returned.
+     *
+     * @param key the request key
+     * @param request the supplier starting the actual request
+     * @return the future result of the request
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> request) {
+        Flight<V> flight = new Flight<>(RequestPriority.current());
+
+        while (true) {
+            Flight<V> current = inFlight.putIfAbsent(key, flight);
+
+            if (current == null) {
+                break;
+            }
+            if (current.priority.compareTo(flight.priority) <= 0) {
+                coalesced.increment();
+                return current.promise;
+            }
+            // Supersede the less urgent request, still completed for its callers
+            if (inFlight.replace(key, current, flight)) {
+                break;
+            }
+        }
+
+        executed.increment();
+        CompletableFuture<V> promise = flight.promise;
+
+        try {
+            request.get().whenComplete((result, error) -> {
+                // Release the key before notifying the waiting callers
+                inFlight.remove(key, flight);
+                if (error != null) {
+                    promise.completeExceptionally(error);
+                } else {
+                    promise.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, flight);
+            promise.completeExceptionally(e);
+        }
+
+        return promise;
+    }
+
+    /**
+     * Retrieves the number of requests actually executed
+     *
+     * @return the number of executed requests
+     */
+    public long getExecutedCount() {
+        return executed.sum();
+    }
+
+    /**
+     * Retrieves the number of requests served by
+     * sharing an in-flight request
+     *
+     * @return the number of coalesced requests
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Retrieves the number of requests currently in flight
+     *
+     * @return the number of in-flight requests
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    @Override
+    public String toString() {
+        return "RequestCoalescer{" +
+                "executed=" + getExecutedCount() +
+                ", coalesced=" + getCoalescedCount() +
+                ", inFlight=" + getInFlightCount() +
+                '}';
+    }
+
+    /**
+     * A request in flight and the priority it runs with
+     *
+     * @param <V> the type of the result
+     */
+    private static final class Flight<V> {
+
+        /** The priority of the caller triggering the request */
+        private final RequestPriority priority;
+
+        /** The future result shared with the callers */
+        private final CompletableFuture<V> promise = new CompletableFuture<>();
+
+        /**
+         * Constructor with the priority
+         *
+         * @param priority the priority of the request
+         */
+        private Flight(RequestPriority priority) {
+            this.priority = priority;
+        }
+    }
+}
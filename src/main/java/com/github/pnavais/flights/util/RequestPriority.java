@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.util;
+
+import java.util.function.Supplier;
+
+/**
+ * The priority of the work done on behalf of the current thread,
+ * deciding which upstream requests are admitted first when the
+ * upstream capacity is exhausted. Threads run interactive work
+ * unless told otherwise, and tasks submitted to the bounded
+ * executors run with the priority of the submitting thread.
+ */
+public enum RequestPriority {
+
+    /** Searches of a user waiting for the response */
+    INTERACTIVE,
+
+    /** Searches of batch requests */
+    BATCH,
+
+    /** Background refreshes and prefetches */
+    PREFETCH;
+
+    /** The priority bound to the current thread */
+    private static final ThreadLocal<RequestPriority> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Retrieves the priority of the current thread
+     *
+     * @return the priority, interactive if not set
+     */
+    public static RequestPriority current() {
+        RequestPriority priority = CURRENT.get();
+        return (priority != null) ? priority : INTERACTIVE;
+    }
+
+    /**
+     * Runs the given task with this priority
+     *
+     * @param task the task
+     * @param <T> the type of result
+     * @return the result of the task
+     */
+    public <T> T call(Supplier<T> task) {
+        RequestPriority previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return task.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Runs the given task with this priority
+     *
+     * @param task the task
+     */
+    public void run(Runnable task) {
+        call(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Wraps the given task to run with the priority
+     * of the current thread at wrapping time
+     *
+     * @param task the task
+     * @return the wrapped task
+     */
+    public static Runnable wrap(Runnable task) {
+        RequestPriority priority = current();
+        return () -> priority.run(task);
+    }
+
+    /**
+     * Restores the priority of the current thread
+     *
+     * @param previous the previous priority or null if not set
+     */
+    private static void restore(RequestPriority previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.util;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Lightweight context of a request accumulating the time spent
+ * in every stage of its pipeline (duration and number of calls).
+ * <p>
+ * The context is bound to the thread handling the request and
+ * travels with the tasks submitted to the executors created by
+ * {@link ExecutorUtils}, so that stages running asynchronously
+ * are accounted to the request that triggered them. Stages
+ * running concurrently are summed, hence their total may exceed
+ * the elapsed time of the request. Without a bound context,
+ * timing a stage just runs it.
+ * </p>
+ */
+public final class RequestTiming {
+
+    /** The context bound to the current thread */
+    private static final ThreadLocal<RequestTiming> CURRENT = new ThreadLocal<>();
+
+    /** Nanoseconds per millisecond */
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    /** The start of the request */
+    private final long start = System.nanoTime();
+
+    /** The duration and number of calls by stage, in recording order */
+    private final Map<String, long[]> stages = new LinkedHashMap<>();
+
+    /**
+     * Private constructor, contexts
+     * are created on binding
+     */
+    private RequestTiming() {}
+
+    /**
+     * Creates a new context bound to the current thread
+     *
+     * @return the context
+     */
+    public static RequestTiming begin() {
+        RequestTiming timing = new RequestTiming();
+        CURRENT.set(timing);
+        return timing;
+    }
+
+    /**
+     * Unbinds the context from the current thread
+     */
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Retrieves the context bound to the current thread
+     *
+     * @return the context or null if none
+     */
+    public static RequestTiming current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs the given stage timing it in the current context
+     *
+     * @param stage the name of the stage
+     * @param task the stage
+     * @param <T> the type of result
+     * @return the result of the stage
+     */
+    public static <T> T time(String stage, Supplier<T> task) {
+        RequestTiming timing = CURRENT.get();
+        if (timing == null) {
+            return task.get();
+        }
+
+        long stageStart = System.nanoTime();
+        try {
+            return task.get();
+        } finally {
+            timing.record(stage, System.nanoTime() - stageStart);
+        }
+    }
+
+    /**
+     * Starts the given asynchronous stage timing it in the
+     * current context until its completion
+     *
+     * @param stage the name of the stage
+     * @param task the stage
+     * @param <T> the type of result
+     * @return the future result of the stage
+     */
+    public static <T> CompletableFuture<T> timeAsync(String stage, Supplier<CompletableFuture<T>> task) {
+        RequestTiming timing = CURRENT.get();
+        if (timing == null) {
+            return task.get();
+        }
+
+        long stageStart = System.nanoTime();
+        return task.get().whenComplete((r, e) -> timing.record(stage, System.nanoTime() - stageStart));
+    }
+
+    /**
+     * Wraps the given task so that it runs bound to the
+     * context current at wrapping time, or to none if
+     * unset, whatever the thread running it
+     *
+     * @param task the task
+     * @return the wrapped task
+     */
+    public static Runnable wrap(Runnable task) {
+        RequestTiming timing = CURRENT.get();
+
+        return () -> {
+            RequestTiming previous = CURRENT.get();
+            restore(timing);
+            try {
+                task.run();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    /**
+     * Binds the given context to the current thread
+     *
+     * @param timing the context or null to unbind it
+     */
+    private static void restore(RequestTiming timing) {
+        if (timing == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(timing);
+        }
+    }
+
+    /**
+     * Adds a call to the given stage
+     *
+     * @param stage the name of the stage
+     * @param nanos the duration of the call in nanoseconds
+     */
+    public synchronized void record(String stage, long nanos) {
+        long[] total = stages.computeIfAbsent(stage, s -> new long[2]);
+        total[0] += nanos;
+        total[1]++;
+    }
+
+    /**
+     * Retrieves the time elapsed since the start of the request
+     *
+     * @return the elapsed time in nanoseconds
+     */
+    public long elapsedNanos() {
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Formats the stages as the value of
+     * a Server-Timing header, e.g.
+     * {@code paths;dur=0.21;desc="1", schedules;dur=35.80;desc="4"}
+     * where the description holds the number of calls.
+     *
+     * @return the header value
+     */
+    public synchronized String toServerTiming() {
+        StringBuilder header = new StringBuilder();
+        stages.forEach((stage, total) -> header.append((header.length() > 0) ? ", " : "")
+                .append(stage)
+                .append(";dur=").append(millis(total[0]))
+                .append(";desc=\"").append(total[1]).append('"'));
+        return header.toString();
+    }
+
+    /**
+     * Formats the given duration in milliseconds
+     *
+     * @param nanos the duration in nanoseconds
+     * @return the formatted duration
+     */
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2f", nanos / NANOS_PER_MILLI);
+    }
+
+    /**
+     * Formats the stages as key-value pairs with the
+     * duration in milliseconds and the number of calls,
+     * e.g. {@code paths=0.21ms/1 schedules=35.80ms/4}.
+     *
+     * @return the formatted stages
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder line = new StringBuilder();
+        stages.forEach((stage, total) -> line.append((line.length() > 0) ? " " : "")
+                .append(stage).append('=').append(millis(total[0])).append("ms/").append(total[1]));
+        return line.toString();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.util;
+
+/**
+ * A token bucket limiting the extra requests (retries or hedges)
+ * sent upstream to a fraction of the original ones. Every original
+ * request deposits a fraction of a token and every extra request
+ * withdraws a whole one, so that extra requests can never amplify
+ * an outage beyond that fraction (plus the initial burst).
+ */
+public class RetryBudget {
+
+    /** The tokens earned by every original request */
+    private final double ratio;
+
+    /** The maximum number of tokens */
+    private final double capacity;
+
+    /** The available tokens */
+    private double tokens;
+
+    /**
+     * Creates a full budget
+     *
+     * @param ratio the tokens earned by every original request
+     * @param capacity the maximum number of tokens
+     */
+    public RetryBudget(double ratio, double capacity) {
+        this.ratio = ratio;
+        this.capacity = capacity;
+        this.tokens = capacity;
+    }
+
+    /**
+     * Earns the tokens of an original request
+     */
+    public synchronized void deposit() {
+        tokens = Math.min(capacity, tokens + ratio);
+    }
+
+    /**
+     * Spends a token for an extra request, if available
+     *
+     * @return true if the extra request can be sent, false otherwise
+     */
+    public synchronized boolean tryWithdraw() {
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves the available tokens
+     *
+     * @return the available tokens
+     */
+    public synchronized double getTokens() {
+        return tokens;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("RetryBudget{tokens=%.1f/%.0f, ratio=%.2f}", tokens, capacity, ratio);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.util;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * Time utility functions to work with local date times
+ * encoded as minutes since the epoch (1970-01-01T00:00).
+ */
+public class TimeUtils {
+
+    /** The number of minutes in a day */
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    /**
+     * Private constructor to avoid
+     * instantiation
+     */
+    private TimeUtils() {}
+
+    /**
+     * Encodes the given date and time of the day, truncated to minutes.
+     *
+     * @param date the date
+     * @param time the time of the day
+     * @return the minutes since the epoch
+     */
+    public static int toEpochMinute(LocalDate date, LocalTime time) {
+        return (int) (date.toEpochDay() * MINUTES_PER_DAY) + time.getHour() * 60 + time.getMinute();
+    }
+
+    /**
+     * Encodes the given date time, truncated to minutes.
+     *
+     * @param dateTime the date time
+     * @return the minutes since the epoch (floor)
+     */
+    public static int toEpochMinute(LocalDateTime dateTime) {
+        return toEpochMinute(dateTime.toLocalDate(), dateTime.toLocalTime());
+    }
+
+    /**
+     * Encodes the given date time, rounding up any
+     * fraction of minute.
+     *
+     * @param dateTime the date time
+     * @return the minutes since the epoch (ceiling)
+     */
+    public static int toEpochMinuteCeiling(LocalDateTime dateTime) {
+        int minute = toEpochMinute(dateTime);
+        return (dateTime.getSecond() > 0 || dateTime.getNano() > 0) ? minute + 1 : minute;
+    }
+
+    /**
+     * Decodes the given minutes since the epoch.
+     *
+     * @param epochMinute the minutes since the epoch
+     * @return the local date time
+     */
+    public static LocalDateTime toLocalDateTime(int epochMinute) {
+        LocalDate date = LocalDate.ofEpochDay(Math.floorDiv(epochMinute, MINUTES_PER_DAY));
+        int minuteOfDay = Math.floorMod(epochMinute, MINUTES_PER_DAY);
+        return LocalDateTime.of(date, LocalTime.of(minuteOfDay / 60, minuteOfDay % 60));
+    }
+}
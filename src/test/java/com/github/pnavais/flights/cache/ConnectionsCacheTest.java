@@ -0,0 +1,179 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.cache;
+
+import com.github.pnavais.flights.api.RoutesIndex;
+import com.github.pnavais.flights.api.RoutesProvider;
+import com.github.pnavais.flights.metrics.FlightsMetrics;
+import com.github.pnavais.flights.model.ConnectionQuery;
+import com.github.pnavais.flights.model.ConnectionSort;
+import com.github.pnavais.flights.model.FlightConnection;
+import com.github.pnavais.flights.model.FlightPath;
+import com.github.pnavais.flights.model.RouteMonth;
+import com.github.pnavais.flights.model.Timetable;
+import com.github.pnavais.flights.util.ReadVersions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ConnectionsCacheTest {
+
+    private static final ConnectionQuery QUERY = new ConnectionQuery("DUB", "WRO", LocalDateTime.of(2018, 7, 1, 7, 0),
+            LocalDateTime.of(2018, 7, 3, 21, 0), 1, ConnectionSort.ARRIVAL, 5);
+
+    private static final RouteMonth ROUTE_MONTH = RouteMonth.of("DUB", "WRO", 2018, 7);
+
+    private final SchedulesCache schedulesCache = new SchedulesCache();
+
+    private final RoutesIndex<FlightPath, String> routes = mockRoutes();
+
+    private final ConnectionsCache connectionsCache = new ConnectionsCache();
+
+    private final AtomicInteger searches = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(schedulesCache, "maximumSize", 100L);
+        ReflectionTestUtils.setField(schedulesCache, "ttlMinutes", 60L);
+        schedulesCache.init();
+
+        RoutesProvider<RoutesIndex<FlightPath, String>, FlightPath, String> routesProvider = mockProvider();
+        when(routesProvider.getRoutes()).thenReturn(routes);
+        when(routes.getVersion()).thenReturn(1L);
+
+        FlightsMetrics flightsMetrics = new FlightsMetrics();
+        ReflectionTestUtils.setField(flightsMetrics, "meterRegistry", new SimpleMeterRegistry());
+
+        ReflectionTestUtils.setField(connectionsCache, "schedulesCache", schedulesCache);
+        ReflectionTestUtils.setField(connectionsCache, "routesProvider", routesProvider);
+        ReflectionTestUtils.setField(connectionsCache, "flightsMetrics", flightsMetrics);
+        ReflectionTestUtils.setField(connectionsCache, "enabled", true);
+        ReflectionTestUtils.setField(connectionsCache, "maximumSize", 100L);
+        ReflectionTestUtils.setField(connectionsCache, "ttlMinutes", 10L);
+        connectionsCache.init();
+    }
+
+    @Test
+    public void searchesMatchingTheSameFlightsShareTheKey() {
+        ConnectionQuery query = new ConnectionQuery("DUB", "WRO", LocalDateTime.of(2018, 7, 1, 7, 0, 30),
+                LocalDateTime.of(2018, 7, 3, 21, 59, 59), 1, ConnectionSort.ARRIVAL, 5);
+        ConnectionQuery same = new ConnectionQuery("DUB", "WRO", LocalDateTime.of(2018, 7, 1, 7, 1),
+                LocalDateTime.of(2018, 7, 3, 21, 59), 1, ConnectionSort.ARRIVAL, 5);
+        ConnectionQuery other = new ConnectionQuery("DUB", "WRO", LocalDateTime.of(2018, 7, 1, 7, 0),
+                LocalDateTime.of(2018, 7, 3, 21, 59), 1, ConnectionSort.ARRIVAL, 5);
+
+        assertEquals(same, ConnectionsCache.normalize(query));
+        assertEquals(ConnectionsCache.normalize(same), ConnectionsCache.normalize(query));
+        assertNotEquals(ConnectionsCache.normalize(other), ConnectionsCache.normalize(query));
+    }
+
+    @Test
+    public void resultsAreServedUntilAScheduleReadChanges() {
+        schedulesCache.put(ROUTE_MONTH, Timetable.empty("DUB", "WRO"), 1000);
+
+        search(this::readSchedule);
+        search(this::readSchedule);
+        assertEquals(1, searches.get());
+
+        schedulesCache.put(ROUTE_MONTH, Timetable.empty("DUB", "WRO"), 2000);
+        search(this::readSchedule);
+        search(this::readSchedule);
+        assertEquals(2, searches.get());
+    }
+
+    @Test
+    public void resultsAreDiscardedWhenTheRoutesChange() {
+        schedulesCache.put(ROUTE_MONTH, Timetable.empty("DUB", "WRO"), 1000);
+
+        search(this::readSchedule);
+        when(routes.getVersion()).thenReturn(2L);
+        search(this::readSchedule);
+        search(this::readSchedule);
+        assertEquals(2, searches.get());
+    }
+
+    @Test
+    public void resultsFromSchedulesNotCachedAreNotCached() {
+        search(this::readSchedule);
+        search(this::readSchedule);
+        assertEquals(2, searches.get());
+        assertEquals(0, connectionsCache.size());
+    }
+
+    @Test
+    public void failedSearchesAreNotCached() {
+        schedulesCache.put(ROUTE_MONTH, Timetable.empty("DUB", "WRO"), 1000);
+
+        Function<ConnectionQuery, CompletableFuture<List<FlightConnection>>> failing = query -> {
+            readSchedule(query);
+            CompletableFuture<List<FlightConnection>> result = new CompletableFuture<>();
+            result.completeExceptionally(new IOException("Schedules unavailable"));
+            return result;
+        };
+
+        assertTrue(connectionsCache.get(QUERY, failing).isCompletedExceptionally());
+        search(this::readSchedule);
+        assertEquals(2, searches.get());
+    }
+
+    @Test
+    public void resultsFromFailedReadsAreNotCached() {
+        schedulesCache.put(ROUTE_MONTH, Timetable.empty("DUB", "WRO"), 1000);
+
+        search(query -> {
+            readSchedule(query);
+            ReadVersions.<RouteMonth>current().recordFailure(RouteMonth.of("DUB", "WRO", 2018, 8));
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        });
+        search(this::readSchedule);
+        assertEquals(2, searches.get());
+    }
+
+    private void search(Function<ConnectionQuery, CompletableFuture<List<FlightConnection>>> search) {
+        connectionsCache.get(QUERY, search).join();
+    }
+
+    private CompletableFuture<List<FlightConnection>> readSchedule(ConnectionQuery query) {
+        searches.incrementAndGet();
+        ReadVersions.<RouteMonth>current().record(ROUTE_MONTH, schedulesCache.getVersion(ROUTE_MONTH));
+        return CompletableFuture.completedFuture(Collections.emptyList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RoutesIndex<FlightPath, String> mockRoutes() {
+        return mock(RoutesIndex.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RoutesProvider<RoutesIndex<FlightPath, String>, FlightPath, String> mockProvider() {
+        return mock(RoutesProvider.class);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.cache;
+
+import com.github.pnavais.flights.model.RouteMonth;
+import com.github.pnavais.flights.model.Timetable;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ScheduleSnapshotStoreTest {
+
+    private static final RouteMonth DUB_WRO = RouteMonth.of("DUB", "WRO", 2018, 7);
+
+    private static final RouteMonth WRO_STN = RouteMonth.of("WRO", "STN", 2018, 7);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<ScheduleSnapshotStore> stores = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        stores.forEach(ScheduleSnapshotStore::close);
+    }
+
+    @Test
+    public void recordsAreDecodedAsStored() throws IOException {
+        File file = folder.newFile();
+        long now = System.currentTimeMillis();
+        Timetable<String> timetable = Timetable.of("DUB", "WRO", new int[] { 100, 200 }, new int[] { 250, 1500 },
+                new int[] { 1926, 1928 });
+
+        newStore(file).put(DUB_WRO, timetable, now);
+        ScheduleSnapshotStore.Snapshot snapshot = newStore(file).get(DUB_WRO);
+
+        assertNotNull(snapshot);
+        assertEquals(now, snapshot.getFetchedAt());
+        assertSameFlights(timetable, snapshot.getTimetable());
+    }
+
+    @Test
+    public void truncatedRecordsAreDiscarded() throws IOException {
+        File file = folder.newFile();
+        ScheduleSnapshotStore store = newStore(file);
+        store.put(DUB_WRO, timetable("DUB", "WRO", 3), System.currentTimeMillis());
+        long complete = store.fileSize();
+        store.put(WRO_STN, timetable("WRO", "STN", 3), System.currentTimeMillis());
+        store.close();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+
+        ScheduleSnapshotStore reopened = newStore(file);
+        assertNotNull(reopened.get(DUB_WRO));
+        assertNull(reopened.get(WRO_STN));
+        assertEquals(1, reopened.size());
+        assertEquals(complete, reopened.fileSize());
+
+        reopened.put(WRO_STN, timetable("WRO", "STN", 2), System.currentTimeMillis());
+        assertEquals(2, newStore(file).get(WRO_STN).getTimetable().size());
+    }
+
+    @Test
+    public void corruptedRecordsAreDiscarded() throws IOException {
+        File file = folder.newFile();
+        ScheduleSnapshotStore store = newStore(file);
+        store.put(DUB_WRO, timetable("DUB", "WRO", 3), System.currentTimeMillis());
+        long complete = store.fileSize();
+        store.put(WRO_STN, timetable("WRO", "STN", 3), System.currentTimeMillis());
+        store.close();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(complete + 4 + 8 + 2);
+            raf.writeByte(13);
+        }
+
+        ScheduleSnapshotStore reopened = newStore(file);
+        assertNotNull(reopened.get(DUB_WRO));
+        assertNull(reopened.get(WRO_STN));
+        assertEquals(complete, reopened.fileSize());
+    }
+
+    @Test
+    public void failedCompactionsLeaveTheStoreUnchanged() throws IOException {
+        File file = folder.newFile();
+        File compacted = new File(file.getPath() + ".compact");
+        assertTrue(new File(compacted, "busy").mkdirs());
+
+        ScheduleSnapshotStore store = newStore(file);
+        for (int i = 1; i <= 4; i++) {
+            store.put(DUB_WRO, timetable("DUB", "WRO", i), System.currentTimeMillis());
+        }
+        store.put(WRO_STN, timetable("WRO", "STN", 2), System.currentTimeMillis());
+
+        assertEquals(4, store.get(DUB_WRO).getTimetable().size());
+        assertEquals(2, store.get(WRO_STN).getTimetable().size());
+        assertTrue(compacted.isDirectory());
+    }
+
+    @Test
+    public void supersededRecordsAreCompactedWhileAppending() throws IOException {
+        File file = folder.newFile();
+        ScheduleSnapshotStore store = newStore(file);
+        store.put(DUB_WRO, timetable("DUB", "WRO", 4), System.currentTimeMillis());
+        long single = store.fileSize();
+
+        for (int i = 1; i <= 10; i++) {
+            store.put(DUB_WRO, timetable("DUB", "WRO", 4), System.currentTimeMillis() + i);
+            assertTrue(store.fileSize() <= 2 * single);
+        }
+
+        ScheduleSnapshotStore reopened = newStore(file);
+        assertEquals(System.currentTimeMillis(), reopened.get(DUB_WRO).getFetchedAt(), 1000);
+        assertEquals(1, reopened.size());
+    }
+
+    @Test
+    public void staleRecordsAreOnlyServedAfterARestart() throws IOException {
+        File file = folder.newFile();
+        long now = System.currentTimeMillis();
+        ScheduleSnapshotStore store = newStore(file);
+        store.put(DUB_WRO, timetable("DUB", "WRO", 1), now - TimeUnit.MINUTES.toMillis(90));
+        store.put(WRO_STN, timetable("WRO", "STN", 1), now - TimeUnit.MINUTES.toMillis(2000));
+
+        assertNull(store.get(DUB_WRO));
+
+        ScheduleSnapshotStore restarted = newStore(file);
+        ScheduleSnapshotStore.Snapshot snapshot = restarted.get(DUB_WRO);
+        assertNotNull(snapshot);
+        assertTrue(restarted.needsRefresh(snapshot));
+        assertNull(restarted.get(WRO_STN));
+    }
+
+    private ScheduleSnapshotStore newStore(File file) {
+        ScheduleSnapshotStore store = new ScheduleSnapshotStore();
+        ReflectionTestUtils.setField(store, "enabled", true);
+        ReflectionTestUtils.setField(store, "file", file.getPath());
+        ReflectionTestUtils.setField(store, "refreshAfterMinutes", 60L);
+        ReflectionTestUtils.setField(store, "maxAgeMinutes", 1440L);
+        stores.add(store);
+        return store;
+    }
+
+    private static Timetable<String> timetable(String origin, String destination, int flights) {
+        int[] departures = new int[flights];
+        int[] arrivals = new int[flights];
+        int[] numbers = new int[flights];
+        for (int i = 0; i < flights; i++) {
+            departures[i] = 60 * i;
+            arrivals[i] = 60 * i + 150;
+            numbers[i] = 1000 + i;
+        }
+        return Timetable.of(origin, destination, departures, arrivals, numbers);
+    }
+
+    private static void assertSameFlights(Timetable<String> expected, Timetable<String> actual) {
+        assertEquals(expected.getOrigin(), actual.getOrigin());
+        assertEquals(expected.getDestination(), actual.getDestination());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getDeparture(i), actual.getDeparture(i));
+            assertEquals(expected.getArrival(i), actual.getArrival(i));
+            assertEquals(expected.getNumber(i), actual.getNumber(i));
+        }
+    }
+}
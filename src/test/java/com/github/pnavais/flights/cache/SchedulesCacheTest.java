@@ -0,0 +1,48 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.cache;
+
+import com.github.pnavais.flights.model.RouteMonth;
+import com.github.pnavais.flights.model.Timetable;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SchedulesCacheTest {
+
+    private static final RouteMonth DUB_WRO = RouteMonth.of("DUB", "WRO", 2018, 7);
+
+    @Test
+    public void entriesExpireSinceStoredWhateverTheirVersion() {
+        SchedulesCache cache = new SchedulesCache();
+        ReflectionTestUtils.setField(cache, "maximumSize", 100L);
+        ReflectionTestUtils.setField(cache, "ttlMinutes", 60L);
+        cache.init();
+
+        long restoredVersion = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(90);
+        cache.put(DUB_WRO, Timetable.empty("DUB", "WRO"), restoredVersion);
+
+        assertEquals(restoredVersion, cache.getVersion(DUB_WRO));
+        assertFalse(cache.expiresWithin(DUB_WRO, TimeUnit.MINUTES.toMillis(5)));
+        assertTrue(cache.expiresWithin(DUB_WRO, TimeUnit.MINUTES.toMillis(61)));
+        assertTrue(cache.expiresWithin(RouteMonth.of("WRO", "DUB", 2018, 7), 0));
+    }
+}
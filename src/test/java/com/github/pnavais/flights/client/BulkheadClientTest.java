@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.client;
+
+import com.github.pnavais.flights.util.RequestPriority;
+import feign.Request;
+import feign.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class BulkheadClientTest {
+
+    private static final Request REQUEST = Request.create("GET", "http://localhost/schedules",
+            Collections.emptyMap(), null, null);
+
+    @Test
+    public void permitsAreHeldUntilTheBodyIsClosed() throws IOException {
+        PriorityBulkhead bulkhead = new PriorityBulkhead(2, Collections.emptyMap(), 0,
+                new SimpleMeterRegistry());
+        BulkheadClient client = new BulkheadClient((request, options) -> Response.builder()
+                .status(200)
+                .headers(Collections.emptyMap())
+                .body("{}", StandardCharsets.UTF_8)
+                .build(), bulkhead);
+
+        Response response = client.execute(REQUEST, new Request.Options());
+        assertEquals(1, bulkhead.getInFlight(RequestPriority.INTERACTIVE));
+
+        response.close();
+        response.close();
+        assertEquals(0, bulkhead.getInFlight(RequestPriority.INTERACTIVE));
+    }
+
+    @Test
+    public void permitsAreReleasedOnFailures() {
+        PriorityBulkhead bulkhead = new PriorityBulkhead(2, Collections.emptyMap(), 0,
+                new SimpleMeterRegistry());
+        BulkheadClient client = new BulkheadClient((request, options) -> {
+            throw new IOException("Connection refused");
+        }, bulkhead);
+
+        try {
+            client.execute(REQUEST, new Request.Options());
+            fail("The failure should be propagated");
+        } catch (IOException e) {
+            assertEquals(0, bulkhead.getInFlight(RequestPriority.INTERACTIVE));
+        }
+    }
+}
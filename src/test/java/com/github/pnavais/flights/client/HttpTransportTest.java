@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.client;
+
+import com.sun.net.httpserver.HttpServer;
+import feign.Request;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpTransportTest {
+
+    private HttpServer server;
+
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    private HttpTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/slow", exchange -> {
+            try {
+                released.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, 2);
+            exchange.getResponseBody().write("{}".getBytes());
+            exchange.close();
+        });
+        server.setExecutor(java.util.concurrent.Executors.newCachedThreadPool());
+        server.start();
+
+        ProxyConfig proxyConfig = new ProxyConfig();
+        ReflectionTestUtils.setField(proxyConfig, "useProxy", false);
+        proxyConfig.init();
+
+        transport = new HttpTransport();
+        ReflectionTestUtils.setField(transport, "proxyBuilder", proxyConfig);
+        ReflectionTestUtils.setField(transport, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(transport, "maxIdleConnections", 4);
+        ReflectionTestUtils.setField(transport, "keepAliveSeconds", 30L);
+        ReflectionTestUtils.setField(transport, "maxRequestsPerHost", 1);
+        ReflectionTestUtils.setField(transport, "connectTimeout", 200L);
+        ReflectionTestUtils.setField(transport, "readTimeout", 3000L);
+        ReflectionTestUtils.setField(transport, "bulkheadMaxConcurrent", 8);
+        ReflectionTestUtils.setField(transport, "bulkheadInteractive", 8);
+        ReflectionTestUtils.setField(transport, "bulkheadBatch", 8);
+        ReflectionTestUtils.setField(transport, "bulkheadPrefetch", 8);
+        ReflectionTestUtils.setField(transport, "bulkheadMaxWait", 1000L);
+        transport.init();
+    }
+
+    @After
+    public void tearDown() {
+        released.countDown();
+        transport.destroy();
+        server.stop(0);
+    }
+
+    @Test
+    public void clientIsSharedWithTheConfiguredPoolAndTimeouts() {
+        OkHttpClient client = transport.getClient();
+        Request.Options options = transport.getRequestOptions();
+
+        assertSame(client, transport.getClient());
+        assertEquals(200, client.connectTimeoutMillis());
+        assertEquals(3000, client.readTimeoutMillis());
+        assertEquals(client.connectTimeoutMillis(), options.connectTimeoutMillis());
+        assertEquals(client.readTimeoutMillis(), options.readTimeoutMillis());
+    }
+
+    @Test
+    public void requestsPerHostAreLimited() throws Exception {
+        OkHttpClient client = transport.getClient();
+        String url = "http://localhost:" + server.getAddress().getPort() + "/slow";
+
+        CompletableFuture<Integer> first = CompletableFuture.supplyAsync(() -> {
+            try (Response response = client.newCall(new okhttp3.Request.Builder().url(url).build()).execute()) {
+                return response.code();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (client.connectionPool().connectionCount() == 0) {
+            Thread.sleep(5);
+        }
+
+        try {
+            client.newCall(new okhttp3.Request.Builder().url(url).build()).execute().close();
+            fail("Expected the host limit to reject the request");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Too many concurrent requests"));
+        }
+
+        released.countDown();
+        assertEquals(200, (int) first.get(5, TimeUnit.SECONDS));
+        assertEquals(1, client.connectionPool().idleConnectionCount());
+    }
+}
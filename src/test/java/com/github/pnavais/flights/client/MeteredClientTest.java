@@ -0,0 +1,80 @@
+package com.github.pnavais.flights.client;
+
+import feign.Request;
+import feign.Response;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+public class MeteredClientTest {
+
+    private static final Request REQUEST = Request.create("GET", "http://localhost/routes",
+            Collections.emptyMap(), null, null);
+
+    @Test
+    public void requestsAreTimedByStatus() throws IOException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MeteredClient client = new MeteredClient((request, options) -> Response.builder()
+                .status(404)
+                .headers(Collections.emptyMap())
+                .build(), "routes", registry);
+
+        client.execute(REQUEST, new Request.Options());
+        client.execute(REQUEST, new Request.Options());
+
+        Timer timer = registry.find(MeteredClient.UPSTREAM_REQUESTS)
+                .tags("client", "routes", "method", "GET", "status", "404")
+                .timer();
+        assertNotNull(timer);
+        assertEquals(2, timer.count());
+    }
+
+    @Test
+    public void requestsAreTimedUntilTheBodyIsClosed() throws IOException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MeteredClient client = new MeteredClient((request, options) -> Response.builder()
+                .status(200)
+                .headers(Collections.emptyMap())
+                .body("{}", StandardCharsets.UTF_8)
+                .build(), "schedules", registry);
+
+        Response response = client.execute(REQUEST, new Request.Options());
+        Timer timer = registry.find(MeteredClient.UPSTREAM_REQUESTS)
+                .tags("client", "schedules", "method", "GET", "status", "200")
+                .timer();
+        assertNotNull(timer);
+        assertEquals(0, timer.count());
+
+        response.close();
+        assertEquals(1, timer.count());
+    }
+
+    @Test
+    public void failedRequestsAreTimedAsErrors() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MeteredClient client = new MeteredClient((request, options) -> {
+            throw new IOException("Connection refused");
+        }, "schedules", registry);
+
+        try {
+            client.execute(REQUEST, new Request.Options());
+            fail("The failure should be propagated");
+        } catch (IOException e) {
+            assertEquals("Connection refused", e.getMessage());
+        }
+
+        Timer timer = registry.find(MeteredClient.UPSTREAM_REQUESTS)
+                .tags("client", "schedules", "status", "IO_ERROR")
+                .timer();
+        assertNotNull(timer);
+        assertEquals(1, timer.count());
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.pnavais.flights.client;
+
+import com.github.pnavais.flights.util.RequestPriority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class PriorityBulkheadTest {
+
+    @Test
+    public void higherPrioritiesAreAdmittedFirst() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PriorityBulkhead bulkhead = new PriorityBulkhead(1, Collections.emptyMap(), 5000, registry);
+        List<RequestPriority> admitted = Collections.synchronizedList(new ArrayList<>());
+
+        bulkhead.acquire(RequestPriority.INTERACTIVE);
+
+        CompletableFuture<Void> prefetch = send(bulkhead, RequestPriority.PREFETCH, admitted);
+        awaitQueued(bulkhead, RequestPriority.PREFETCH);
+        CompletableFuture<Void> interactive = send(bulkhead, RequestPriority.INTERACTIVE, admitted);
+        awaitQueued(bulkhead, RequestPriority.INTERACTIVE);
+
+        bulkhead.release(RequestPriority.INTERACTIVE);
+        CompletableFuture.allOf(prefetch, interactive).get(5, TimeUnit.SECONDS);
+
+        assertEquals(RequestPriority.INTERACTIVE, admitted.get(0));
+        assertEquals(RequestPriority.PREFETCH, admitted.get(1));
+        assertEquals(2, registry.find("flights.upstream.queue.wait").tags("priority", "interactive")
+                .timer().count());
+    }
+
+    @Test
+    public void requestsOverThePriorityLimitWait() throws IOException {
+        Map<RequestPriority, Integer> limits = new EnumMap<>(RequestPriority.class);
+        limits.put(RequestPriority.PREFETCH, 1);
+        PriorityBulkhead bulkhead = new PriorityBulkhead(4, limits, 50, new SimpleMeterRegistry());
+
+        bulkhead.acquire(RequestPriority.PREFETCH);
+        bulkhead.acquire(RequestPriority.INTERACTIVE);
+
+        try {
+            bulkhead.acquire(RequestPriority.PREFETCH);
+            fail("Expected no capacity for the prefetch");
+        } catch (IOException e) {
+            assertEquals(0, bulkhead.getQueued(RequestPriority.PREFETCH));
+        }
+
+        bulkhead.release(RequestPriority.PREFETCH);
+        bulkhead.acquire(RequestPriority.PREFETCH);
+        assertEquals(1, bulkhead.getInFlight(RequestPriority.PREFETCH));
+    }
+
+    private static CompletableFuture<Void> send(PriorityBulkhead bulkhead, RequestPriority priority,
+                                                List<RequestPriority> admitted) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                bulkhead.acquire(priority);
+                admitted.add(priority);
+                bulkhead.release(priority);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static void awaitQueued(PriorityBulkhead bulkhead, RequestPriority priority) throws InterruptedException {
+        while (bulkhead.getQueued(priority) == 0) {
+            Thread.sleep(5);
+        }
+    }
+}
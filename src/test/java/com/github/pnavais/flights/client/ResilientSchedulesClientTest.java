@@ -0,0 +1,174 @@
+package com.github.pnavais.flights.client;
+
+import com.github.pnavais.flights.model.Schedule;
+import com.github.pnavais.flights.model.Timetable;
+import com.github.pnavais.flights.util.ExecutorUtils;
+import com.github.pnavais.flights.util.RetryBudget;
+import feign.FeignException;
+import feign.RetryableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResilientSchedulesClientTest {
+
+    private final ExecutorService executor = ExecutorUtils.newBoundedExecutor("hedging-test", 4, 4);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final AtomicBoolean saturated = new AtomicBoolean();
+
+    @After
+    public void tearDown() {
+        ExecutorUtils.shutdown(executor);
+    }
+
+    @Test
+    public void serverErrorsAreRetried() {
+        StubClient stub = new StubClient(call -> {
+            if (call == 1) {
+                throw new StatusException(503);
+            }
+            return Timetable.empty("DUB", "WRO");
+        });
+        SchedulesClient client = resilient(stub, new RetryBudget(0.1, 10), 0);
+
+        client.getTimetable("DUB", "WRO", 2018, 7);
+
+        assertEquals(2, stub.calls.get());
+        assertEquals(1, registry.get("flights.upstream.retries").counter().count(), 0);
+    }
+
+    @Test
+    public void clientErrorsAreNotRetried() {
+        StubClient stub = new StubClient(call -> {
+            throw new StatusException(404);
+        });
+        SchedulesClient client = resilient(stub, new RetryBudget(0.1, 10), 0);
+
+        try {
+            client.getTimetable("DUB", "WRO", 2018, 7);
+            fail("The failure should be propagated");
+        } catch (FeignException e) {
+            assertEquals(404, e.status());
+        }
+        assertEquals(1, stub.calls.get());
+    }
+
+    @Test
+    public void localCapacityRejectionsAreNotRetried() {
+        StubClient stub = new StubClient(call -> {
+            throw new RetryableException("No upstream capacity",
+                    new UpstreamCapacityException("No upstream capacity"), null);
+        });
+        SchedulesClient client = resilient(stub, new RetryBudget(0.1, 10), 0);
+
+        try {
+            client.getTimetable("DUB", "WRO", 2018, 7);
+            fail("The failure should be propagated");
+        } catch (RetryableException e) {
+            assertTrue(e.getCause() instanceof UpstreamCapacityException);
+        }
+        assertEquals(1, stub.calls.get());
+        assertEquals(0, registry.get("flights.upstream.retries").counter().count(), 0);
+    }
+
+    @Test
+    public void retriesStopWhenTheBudgetIsExhausted() {
+        StubClient stub = new StubClient(call -> {
+            throw new StatusException(500);
+        });
+        SchedulesClient client = resilient(stub, new RetryBudget(0.1, 1), 0);
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                client.getTimetable("DUB", "WRO", 2018, 7);
+                fail("The failure should be propagated");
+            } catch (FeignException e) {
+                assertEquals(500, e.status());
+            }
+        }
+
+        // A single retry paid by the initial token
+        assertEquals(4, stub.calls.get());
+    }
+
+    @Test
+    public void slowRequestsAreHedged() {
+        AtomicInteger slow = new AtomicInteger(-1);
+        StubClient stub = new StubClient(call -> {
+            if (call == slow.get()) {
+                sleep(1500);
+            }
+            return Timetable.empty("DUB", "WRO");
+        });
+        SchedulesClient client = resilient(stub, new RetryBudget(0.1, 10), 95);
+
+        // Learn the usual latency
+        for (int i = 0; i < 64; i++) {
+            client.getTimetable("DUB", "WRO", 2018, 7);
+        }
+
+        slow.set(stub.calls.get() + 1);
+        long start = System.nanoTime();
+        client.getTimetable("DUB", "WRO", 2018, 7);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue("Hedged request took " + elapsedMillis + "ms", elapsedMillis < 1000);
+        assertEquals(1, registry.get("flights.upstream.hedges").counter().count(), 0);
+
+        // No hedge while requests wait for upstream capacity
+        saturated.set(true);
+        slow.set(stub.calls.get() + 1);
+        client.getTimetable("DUB", "WRO", 2018, 7);
+        assertEquals(1, registry.get("flights.upstream.hedges").counter().count(), 0);
+    }
+
+    private SchedulesClient resilient(SchedulesClient stub, RetryBudget budget, double percentile) {
+        return new ResilientSchedulesClient(stub, executor, budget, saturated::get, percentile, 20, 2, registry);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class StatusException extends FeignException {
+        StatusException(int status) {
+            super(status, "status " + status);
+        }
+    }
+
+    private static class StubClient implements SchedulesClient {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private final IntFunction<Timetable<String>> response;
+
+        StubClient(IntFunction<Timetable<String>> response) {
+            this.response = response;
+        }
+
+        @Override
+        public Schedule getScheduledFlights(String srcAirport, String targetAirport, int year, int month) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Timetable<String> getTimetable(String srcAirport, String targetAirport, int year, int month) {
+            return response.apply(calls.incrementAndGet());
+        }
+    }
+}
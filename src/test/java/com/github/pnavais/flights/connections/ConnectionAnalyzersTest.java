@@ -0,0 +1,180 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.connections;
+
+import com.github.pnavais.flights.api.RoutesIndex;
+import com.github.pnavais.flights.api.RoutesProvider;
+import com.github.pnavais.flights.api.SchedulesProvider;
+import com.github.pnavais.flights.metrics.FlightsMetrics;
+import com.github.pnavais.flights.model.ConnectionQuery;
+import com.github.pnavais.flights.model.ConnectionSort;
+import com.github.pnavais.flights.model.FlightConnection;
+import com.github.pnavais.flights.model.FlightPath;
+import com.github.pnavais.flights.model.Leg;
+import com.github.pnavais.flights.model.Route;
+import com.github.pnavais.flights.model.Timetable;
+import com.github.pnavais.flights.util.TimeUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ConnectionAnalyzersTest {
+
+    private static final LocalDateTime FROM = LocalDateTime.of(2018, 7, 1, 0, 0);
+
+    private static final LocalDateTime TO = LocalDateTime.of(2018, 7, 3, 0, 0);
+
+    private static final int START = TimeUtils.toEpochMinute(FROM);
+
+    private static final List<Route> DUB_STN_WRO = Arrays.asList(new Route("DUB", "STN"), new Route("STN", "WRO"));
+
+    @Test
+    public void overnightConnectionsAreCheckedAlikeByBothAnalyzers() {
+        // Departs at 23:00 and lands at 00:30 the next day, stored on the departure day
+        Map<String, Timetable<String>> fixture = new HashMap<>();
+        fixture.put("DUB-STN", Timetable.of("DUB", "STN",
+                new int[] { START + 23 * 60 }, new int[] { START + 30 }, new int[] { 1 }));
+        fixture.put("STN-WRO", Timetable.of("STN", "WRO",
+                new int[] { START + 25 * 60, START + 27 * 60 }, new int[] { START + 27 * 60, START + 29 * 60 },
+                new int[] { 2, 3 }));
+        SchedulesProvider<String> schedulesProvider = new FixtureSchedules(fixture);
+
+        FlightsConnectionAnalyzer pathsAnalyzer = new FlightsConnectionAnalyzer();
+        ReflectionTestUtils.setField(pathsAnalyzer, "schedulesProvider", schedulesProvider);
+        ReflectionTestUtils.setField(pathsAnalyzer, "flightsMetrics", newMetrics());
+        ConnectionScanAnalyzer scanAnalyzer = new ConnectionScanAnalyzer();
+        ReflectionTestUtils.setField(scanAnalyzer, "schedulesProvider", schedulesProvider);
+
+        List<String> joined = describe(pathsAnalyzer.findValidConnections(DUB_STN_WRO, FROM, TO));
+        List<String> scanned = describe(scanAnalyzer.findValidConnections(DUB_STN_WRO, FROM, TO));
+
+        assertEquals(Arrays.asList("DUB 2018-07-01T23:00 -> STN 2018-07-02T03:00"), joined);
+        assertEquals(joined, scanned);
+    }
+
+    @Test
+    public void rankedSearchesAbandonOvernightLegsByTheirActualArrival() {
+        // The direct flight lands before the overnight first leg allows any connection
+        Map<String, Timetable<String>> fixture = new HashMap<>();
+        fixture.put("DUB-WRO", Timetable.of("DUB", "WRO",
+                new int[] { START + 20 * 60 }, new int[] { START + 22 * 60 }, new int[] { 1 }));
+        fixture.put("DUB-STN", Timetable.of("DUB", "STN",
+                new int[] { START + 23 * 60 }, new int[] { START + 30 }, new int[] { 2 }));
+        fixture.put("STN-WRO", Timetable.of("STN", "WRO",
+                new int[] { START + 27 * 60 }, new int[] { START + 29 * 60 }, new int[] { 3 }));
+        FixtureSchedules schedulesProvider = new FixtureSchedules(fixture);
+
+        RoutesProvider<RoutesIndex<FlightPath, String>, FlightPath, String> routesProvider = mockProvider();
+        when(routesProvider.findPaths("DUB", "WRO", 2)).thenReturn(Arrays.asList(
+                new FlightPath(Arrays.asList("DUB", "WRO")), new FlightPath(Arrays.asList("DUB", "STN", "WRO"))));
+
+        FlightsConnectionAnalyzer pathsAnalyzer = new FlightsConnectionAnalyzer();
+        ReflectionTestUtils.setField(pathsAnalyzer, "routesProvider", routesProvider);
+        ReflectionTestUtils.setField(pathsAnalyzer, "schedulesProvider", schedulesProvider);
+        ReflectionTestUtils.setField(pathsAnalyzer, "flightsMetrics", newMetrics());
+
+        List<FlightConnection> best = pathsAnalyzer.findConnectionsAsync(
+                new ConnectionQuery("DUB", "WRO", FROM, TO, 1, ConnectionSort.ARRIVAL, 1), Runnable::run).join();
+
+        assertEquals(Arrays.asList("DUB 2018-07-01T20:00"), describe(best));
+        assertEquals(Arrays.asList("DUB-WRO", "DUB-STN"), schedulesProvider.requested);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RoutesProvider<RoutesIndex<FlightPath, String>, FlightPath, String> mockProvider() {
+        return mock(RoutesProvider.class);
+    }
+
+    private static FlightsMetrics newMetrics() {
+        FlightsMetrics flightsMetrics = new FlightsMetrics();
+        ReflectionTestUtils.setField(flightsMetrics, "meterRegistry", new SimpleMeterRegistry());
+        flightsMetrics.init();
+        return flightsMetrics;
+    }
+
+    private static List<String> describe(List<FlightConnection> connections) {
+        return connections.stream()
+                .map(c -> c.getLegs().stream().map(ConnectionAnalyzersTest::describe)
+                        .collect(Collectors.joining(" -> ")))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private static String describe(Leg<String> leg) {
+        return leg.getDepartureAirport() + " " + leg.getDepartureDateTime();
+    }
+
+    private static final class FixtureSchedules implements SchedulesProvider<String> {
+
+        private final Map<String, Timetable<String>> timetables;
+
+        private final List<String> requested = new ArrayList<>();
+
+        private FixtureSchedules(Map<String, Timetable<String>> timetables) {
+            this.timetables = timetables;
+        }
+
+        @Override
+        public List<Leg<String>> getFlights(String origin, String destination, LocalDateTime departureDate,
+                                            LocalDateTime arrivalDate) {
+            return getTimetableAsync(origin, destination, departureDate, arrivalDate).join().toLegs();
+        }
+
+        @Override
+        public CompletableFuture<List<Leg<String>>> getFlightsAsync(String origin, String destination,
+                                                                    LocalDateTime departureDate,
+                                                                    LocalDateTime arrivalDate) {
+            return getTimetableAsync(origin, destination, departureDate, arrivalDate).thenApply(Timetable::toLegs);
+        }
+
+        @Override
+        public CompletableFuture<Timetable<String>> getTimetableAsync(String origin, String destination,
+                                                                      LocalDateTime departureDate,
+                                                                      LocalDateTime arrivalDate) {
+            requested.add(origin + "-" + destination);
+            Timetable<String> timetable = timetables.getOrDefault(origin + "-" + destination,
+                    Timetable.empty(origin, destination));
+            return CompletableFuture.completedFuture(timetable.slice(TimeUtils.toEpochMinuteCeiling(departureDate),
+                    TimeUtils.toEpochMinute(arrivalDate)));
+        }
+
+        @Override
+        public CompletableFuture<Void> fetchAsync(String origin, String destination, YearMonth month) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> refreshAsync(String origin, String destination, YearMonth month,
+                                                       Executor executor) {
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.github.pnavais.flights.connections;
+
+import com.github.pnavais.flights.model.ConnectionSort;
+import com.github.pnavais.flights.model.FlightConnection;
+import com.github.pnavais.flights.model.Leg;
+import com.github.pnavais.flights.model.Timetable;
+import com.github.pnavais.flights.util.TimeUtils;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionScannerTest {
+
+    private static final int START = TimeUtils.toEpochMinute(LocalDateTime.of(2018, 7, 1, 0, 0));
+
+    @Test
+    public void scanMatchesDirectAndJoinedFlights() {
+        Random random = new Random(5);
+        Timetable<String> direct = randomTimetable("DUB", "WRO", 50, random);
+        Timetable<String> initialFlights = randomTimetable("DUB", "STN", 200, random);
+        Timetable<String> finalFlights = randomTimetable("STN", "WRO", 200, random);
+
+        List<FlightConnection> expected = new ArrayList<>();
+        direct.toLegs().forEach(l -> expected.add(connection(l)));
+        expected.addAll(LegJoiner.join(initialFlights, finalFlights));
+
+        List<FlightConnection> actual = ConnectionScanner.scan("DUB", "WRO",
+                Arrays.asList(initialFlights, direct, finalFlights), 2);
+
+        assertEquals(sorted(expected), sorted(actual));
+    }
+
+    @Test
+    public void scanMatchesExhaustiveSearchWithTwoStops() {
+        Random random = new Random(11);
+        List<Timetable<String>> timetables = Arrays.asList(
+                randomTimetable("DUB", "STN", 30, random),
+                randomTimetable("DUB", "BCN", 30, random),
+                randomTimetable("STN", "BCN", 30, random),
+                randomTimetable("BCN", "STN", 30, random),
+                randomTimetable("STN", "WRO", 30, random),
+                randomTimetable("BCN", "WRO", 30, random),
+                randomTimetable("WRO", "DUB", 30, random),
+                randomTimetable("STN", "DUB", 30, random));
+
+        List<FlightConnection> expected = new ArrayList<>();
+        exhaustiveSearch("DUB", "WRO", timetables, 3, new ArrayList<>(), expected);
+
+        List<FlightConnection> actual = ConnectionScanner.scan("DUB", "WRO", timetables, 3);
+
+        assertTrue(expected.stream().anyMatch(c -> c.getStops() == 2));
+        assertEquals(sorted(expected), sorted(actual));
+    }
+
+    @Test
+    public void rankedScanKeepsTheBestJourneys() {
+        Random random = new Random(13);
+        List<Timetable<String>> timetables = Arrays.asList(
+                randomTimetable("DUB", "WRO", 10, random),
+                randomTimetable("DUB", "STN", 40, random),
+                randomTimetable("STN", "BCN", 40, random),
+                randomTimetable("BCN", "WRO", 40, random),
+                randomTimetable("STN", "WRO", 40, random));
+
+        List<FlightConnection> all = ConnectionScanner.scan("DUB", "WRO", timetables, 3);
+
+        for (ConnectionSort sort : ConnectionSort.values()) {
+            TopConnections best = new TopConnections(sort, 5);
+            ConnectionScanner.scan("DUB", "WRO", timetables, 3, best);
+
+            List<Long> expected = LegJoinerTest.ranks(all, sort).stream()
+                    .sorted().limit(5).collect(Collectors.toList());
+
+            assertEquals(expected, LegJoinerTest.ranks(best.toList(), sort));
+        }
+    }
+
+    @Test
+    public void scanOfSeveralAirportsMatchesTheSearchOfEveryPair() {
+        Random random = new Random(17);
+        List<Timetable<String>> timetables = Arrays.asList(
+                randomTimetable("DUB", "STN", 30, random),
+                randomTimetable("DUB", "BCN", 30, random),
+                randomTimetable("STN", "BCN", 30, random),
+                randomTimetable("BCN", "WRO", 30, random),
+                randomTimetable("STN", "WRO", 30, random),
+                randomTimetable("WRO", "KRK", 30, random),
+                randomTimetable("BCN", "KRK", 30, random));
+        List<String> origins = Arrays.asList("DUB", "STN");
+        List<String> destinations = Arrays.asList("WRO", "KRK");
+
+        // Journeys end at the first destination and never stop at an origin
+        List<FlightConnection> expected = new ArrayList<>();
+        for (String origin : origins) {
+            for (String destination : destinations) {
+                exhaustiveSearch(origin, destination, timetables, 3, new ArrayList<>(), expected);
+            }
+        }
+        expected.removeIf(c -> c.getLegs().stream().skip(1).map(Leg::getDepartureAirport)
+                .anyMatch(a -> origins.contains(a) || destinations.contains(a)));
+
+        List<FlightConnection> actual = ConnectionScanner.scan(new HashSet<>(origins), new HashSet<>(destinations),
+                timetables, 3);
+
+        assertEquals(sorted(expected), sorted(actual));
+    }
+
+    @Test
+    public void journeysAreSortedByStopsAndDeparture() {
+        Timetable<String> direct = Timetable.of("DUB", "WRO",
+                new int[] { START + 600 }, new int[] { START + 800 }, new int[] { 1 });
+        Timetable<String> initialFlights = Timetable.of("DUB", "STN",
+                new int[] { START }, new int[] { START + 60 }, new int[] { 2 });
+        Timetable<String> finalFlights = Timetable.of("STN", "WRO",
+                new int[] { START + 180 }, new int[] { START + 300 }, new int[] { 3 });
+
+        List<FlightConnection> connections = ConnectionScanner.scan("DUB", "WRO",
+                Arrays.asList(initialFlights, finalFlights, direct), 2);
+
+        assertEquals(2, connections.size());
+        assertEquals(0, connections.get(0).getStops());
+        assertEquals(1, connections.get(1).getStops());
+        assertEquals("STN", connections.get(1).getLegs().get(0).getArrivalAirport());
+    }
+
+    private static void exhaustiveSearch(String origin, String destination, List<Timetable<String>> timetables,
+                                         int maxLegs, List<Leg<String>> journey, List<FlightConnection> found) {
+        String airport = journey.isEmpty() ? origin : journey.get(journey.size() - 1).getArrivalAirport();
+        for (Timetable<String> timetable : timetables) {
+            if (!timetable.getOrigin().equals(airport) || visits(journey, timetable.getDestination())) {
+                continue;
+            }
+            for (Leg<String> leg : timetable.toLegs()) {
+                if (!journey.isEmpty() && journey.get(journey.size() - 1).getArrivalDateTime().plusHours(2)
+                        .isAfter(leg.getDepartureDateTime())) {
+                    continue;
+                }
+                journey.add(leg);
+                if (leg.getArrivalAirport().equals(destination)) {
+                    FlightConnection connection = new FlightConnection();
+                    connection.setStops(journey.size() - 1);
+                    connection.setLegs(new ArrayList<>(journey));
+                    found.add(connection);
+                } else if (journey.size() < maxLegs) {
+                    exhaustiveSearch(origin, destination, timetables, maxLegs, journey, found);
+                }
+                journey.remove(journey.size() - 1);
+            }
+        }
+    }
+
+    private static boolean visits(List<Leg<String>> journey, String airport) {
+        return journey.stream().anyMatch(l -> l.getDepartureAirport().equals(airport));
+    }
+
+    private static FlightConnection connection(Leg<String> leg) {
+        FlightConnection connection = new FlightConnection();
+        connection.setStops(0);
+        connection.setLegs(Arrays.asList(leg));
+        return connection;
+    }
+
+    private static List<String> sorted(List<FlightConnection> connections) {
+        return connections.stream()
+                .map(c -> c.getStops() + ":" + c.getLegs().stream()
+                        .map(l -> l.getDepartureAirport() + "@" + l.getDepartureDateTime() + "-"
+                                + l.getArrivalAirport() + "@" + l.getArrivalDateTime())
+                        .collect(Collectors.joining(",")))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private static Timetable<String> randomTimetable(String from, String to, int count, Random random) {
+        int[] departures = new int[count];
+        int[] arrivals = new int[count];
+        int[] numbers = new int[count];
+        for (int i = 0; i < count; i++) {
+            departures[i] = START + random.nextInt(7 * 24 * 12) * 5;
+            arrivals[i] = departures[i] + 60 + random.nextInt(180);
+            numbers[i] = i;
+        }
+        return Timetable.of(from, to, departures, arrivals, numbers);
+    }
+}
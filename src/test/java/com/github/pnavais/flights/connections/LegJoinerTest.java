@@ -0,0 +1,127 @@
+package com.github.pnavais.flights.connections;
+
+import com.github.pnavais.flights.model.ConnectionSort;
+import com.github.pnavais.flights.model.FlightConnection;
+import com.github.pnavais.flights.model.Leg;
+import com.github.pnavais.flights.model.Timetable;
+import com.github.pnavais.flights.util.TimeUtils;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LegJoinerTest {
+
+    private static final int START = TimeUtils.toEpochMinute(LocalDateTime.of(2018, 7, 1, 0, 0));
+
+    @Test
+    public void joinMatchesNestedLoop() {
+        Random random = new Random(3);
+        Timetable<String> initialFlights = randomTimetable("DUB", "STN", 300, random);
+        Timetable<String> finalFlights = randomTimetable("STN", "WRO", 300, random);
+
+        List<String> expected = describe(nestedLoopJoin(initialFlights.toLegs(), finalFlights.toLegs()));
+        List<String> actual = describe(LegJoiner.join(initialFlights, finalFlights));
+
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void connectionExactlyAtMinimumTimeIsValid() {
+        Timetable<String> initialFlights = Timetable.of("DUB", "STN",
+                new int[] { START }, new int[] { START + 60 }, new int[] { 1 });
+        Timetable<String> finalFlights = Timetable.of("STN", "WRO",
+                new int[] { START + 179, START + 180 }, new int[] { START + 300, START + 300 }, new int[] { 2, 3 });
+
+        List<FlightConnection> connections = LegJoiner.join(initialFlights, finalFlights);
+
+        assertEquals(1, connections.size());
+        assertEquals(TimeUtils.toLocalDateTime(START + 180),
+                connections.get(0).getLegs().get(1).getDepartureDateTime());
+    }
+
+    @Test
+    public void finalLegsAreSharedAcrossConnections() {
+        Timetable<String> initialFlights = Timetable.of("DUB", "STN",
+                new int[] { START, START + 10 }, new int[] { START + 60, START + 70 }, new int[] { 1, 2 });
+        Timetable<String> finalFlights = Timetable.of("STN", "WRO",
+                new int[] { START + 600 }, new int[] { START + 700 }, new int[] { 3 });
+
+        List<FlightConnection> connections = LegJoiner.join(initialFlights, finalFlights);
+
+        assertEquals(2, connections.size());
+        assertSame(connections.get(0).getLegs().get(1), connections.get(1).getLegs().get(1));
+    }
+
+    @Test
+    public void joinBestKeepsTheBestRankedConnections() {
+        Random random = new Random(7);
+        Timetable<String> initialFlights = randomTimetable("DUB", "STN", 300, random);
+        Timetable<String> finalFlights = randomTimetable("STN", "WRO", 300, random);
+
+        for (ConnectionSort sort : ConnectionSort.values()) {
+            TopConnections best = new TopConnections(sort, 10);
+            LegJoiner.joinBest(initialFlights, finalFlights, best);
+
+            List<Long> expected = ranks(LegJoiner.join(initialFlights, finalFlights), sort).stream()
+                    .sorted().limit(10).collect(Collectors.toList());
+
+            assertEquals(expected, ranks(best.toList(), sort));
+        }
+    }
+
+    static List<Long> ranks(List<FlightConnection> connections, ConnectionSort sort) {
+        return connections.stream()
+                .map(c -> {
+                    int departure = TimeUtils.toEpochMinute(c.getLegs().get(0).getDepartureDateTime());
+                    Leg<String> last = c.getLegs().get(c.getLegs().size() - 1);
+                    return sort.rank(departure, TimeUtils.toEpochMinute(last.getArrivalDateTime()));
+                })
+                .collect(Collectors.toList());
+    }
+
+    private static List<FlightConnection> nestedLoopJoin(List<Leg<String>> initialLegs, List<Leg<String>> finalLegs) {
+        List<FlightConnection> connections = new ArrayList<>();
+        initialLegs.forEach(i -> finalLegs.stream()
+                .filter(f -> (i.getArrivalDateTime().plusHours(2).compareTo(f.getDepartureDateTime()) <= 0))
+                .forEach(f -> {
+                    FlightConnection connection = new FlightConnection();
+                    connection.setStops(1);
+                    List<Leg<String>> legs = new ArrayList<>();
+                    legs.add(i);
+                    legs.add(f);
+                    connection.setLegs(legs);
+                    connections.add(connection);
+                }));
+        return connections;
+    }
+
+    private static List<String> describe(List<FlightConnection> connections) {
+        return connections.stream()
+                .map(c -> c.getLegs().stream()
+                        .map(l -> l.getDepartureAirport() + "@" + l.getDepartureDateTime() + "-"
+                                + l.getArrivalAirport() + "@" + l.getArrivalDateTime())
+                        .collect(Collectors.joining(",")))
+                .collect(Collectors.toList());
+    }
+
+    private static Timetable<String> randomTimetable(String from, String to, int count, Random random) {
+        int[] departures = new int[count];
+        int[] arrivals = new int[count];
+        int[] numbers = new int[count];
+        for (int i = 0; i < count; i++) {
+            departures[i] = START + random.nextInt(30 * 24 * 12) * 5;
+            arrivals[i] = departures[i] + 60 + random.nextInt(180);
+            numbers[i] = i;
+        }
+        return Timetable.of(from, to, departures, arrivals, numbers);
+    }
+}
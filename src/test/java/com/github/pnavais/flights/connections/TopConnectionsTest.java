@@ -0,0 +1,77 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.connections;
+
+import com.github.pnavais.flights.model.ConnectionSort;
+import com.github.pnavais.flights.model.FlightConnection;
+import com.github.pnavais.flights.model.Leg;
+import com.github.pnavais.flights.util.TimeUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class TopConnectionsTest {
+
+    private static final int START = 25_000_000;
+
+    @Test
+    public void tiesAreKeptInTheSameOrderWhateverTheOfferOrder() {
+        // Every connection departs and arrives at the same time, through a different airport
+        List<String> stops = new ArrayList<>(Arrays.asList("STN", "BCN", "MAD", "KRK", "BGY", "CRL", "OPO"));
+        List<String> expected = null;
+
+        Random random = new Random(5L);
+        for (int run = 0; run < 10; run++) {
+            Collections.shuffle(stops, random);
+            TopConnections best = new TopConnections(ConnectionSort.ARRIVAL, 3);
+            stops.forEach(stop -> best.offer(START, START + 300, () -> connection("DUB", stop, "WRO")));
+
+            List<String> kept = best.toList().stream()
+                    .map(c -> c.getLegs().get(0).getArrivalAirport())
+                    .collect(Collectors.toList());
+            if (expected == null) {
+                expected = kept;
+            }
+            assertEquals(expected, kept);
+        }
+
+        assertEquals(Arrays.asList("BCN", "BGY", "CRL"), expected);
+    }
+
+    private static FlightConnection connection(String origin, String stop, String destination) {
+        FlightConnection connection = new FlightConnection();
+        connection.setStops(1);
+        connection.setLegs(Arrays.asList(leg(origin, stop, START, START + 100),
+                leg(stop, destination, START + 200, START + 300)));
+        return connection;
+    }
+
+    private static Leg<String> leg(String from, String to, int departure, int arrival) {
+        Leg<String> leg = new Leg<>();
+        leg.setDepartureAirport(from);
+        leg.setArrivalAirport(to);
+        leg.setDepartureDateTime(TimeUtils.toLocalDateTime(departure));
+        leg.setArrivalDateTime(TimeUtils.toLocalDateTime(arrival));
+        return leg;
+    }
+}
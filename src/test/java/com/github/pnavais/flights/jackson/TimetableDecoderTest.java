@@ -0,0 +1,81 @@
+package com.github.pnavais.flights.jackson;
+
+import com.github.pnavais.flights.model.RouteMonth;
+import com.github.pnavais.flights.model.Schedule;
+import com.github.pnavais.flights.model.Timetable;
+import feign.Request;
+import feign.Response;
+import feign.codec.DecodeException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class TimetableDecoderTest {
+
+    private static final String URL = "https://api.ryanair.com/timetable/3/schedules/DUB/WRO/years/2018/months/7";
+
+    private static final String PAYLOAD = "{\"month\":7,\"days\":["
+            + "{\"day\":1,\"flights\":[{\"carrierCode\":\"FR\",\"number\":\"1926\","
+            + "\"departureTime\":\"17:50\",\"arrivalTime\":\"21:25\"}]},"
+            + "{\"flights\":[{\"number\":1927,\"departureTime\":\"23:10\",\"arrivalTime\":\"02:45\"},"
+            + "{\"number\":\"1928\",\"departureTime\":\"06:05\",\"arrivalTime\":\"09:40\"}],\"day\":31}]}";
+
+    @Test
+    public void schedulesAreDecodedAsTheModelTimetable() throws IOException {
+        TimetableDecoder decoder = new TimetableDecoder(Mappers.getDefault());
+
+        Timetable<?> streamed = (Timetable<?>) decoder.decode(response(), timetableType());
+
+        Schedule schedule = (Schedule) decoder.decode(response(), Schedule.class);
+        schedule.setYear(2018);
+        Timetable<String> expected = Timetable.from("DUB", "WRO", schedule);
+
+        assertEquals(3, streamed.size());
+        assertEquals(expected.size(), streamed.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getDeparture(i), streamed.getDeparture(i));
+            assertEquals(expected.getArrival(i), streamed.getArrival(i));
+            assertEquals(expected.getNumber(i), streamed.getNumber(i));
+        }
+        assertEquals(1928, streamed.getNumber(1));
+    }
+
+    @Test
+    public void routeMonthIsTakenFromTheUrl() {
+        RouteMonth routeMonth = TimetableDecoder.toRouteMonth(URL + "?lang=en");
+
+        assertEquals(new RouteMonth("DUB", "WRO", 2018, 7), routeMonth);
+    }
+
+    @Test(expected = DecodeException.class)
+    public void otherUrlsAreRejected() {
+        TimetableDecoder.toRouteMonth("https://api.ryanair.com/core/3/routes");
+    }
+
+    private static Response response() {
+        return Response.builder()
+                .status(200)
+                .headers(Collections.emptyMap())
+                .request(Request.create("GET", URL, Collections.emptyMap(), null, null))
+                .body(PAYLOAD, StandardCharsets.UTF_8)
+                .build();
+    }
+
+    private static Type timetableType() {
+        try {
+            return TimetableDecoderTest.class.getDeclaredMethod("timetable").getGenericReturnType();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static Timetable<String> timetable() {
+        return null;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.flights.metrics;
+
+import com.github.pnavais.flights.util.RequestCoalescer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+
+public class FlightsMetricsTest {
+
+    @Test
+    public void coalescerCountsAreRegistered() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        FlightsMetrics flightsMetrics = new FlightsMetrics();
+        ReflectionTestUtils.setField(flightsMetrics, "meterRegistry", registry);
+
+        RequestCoalescer<String, Integer> coalescer = new RequestCoalescer<>();
+        flightsMetrics.registerCoalescer(coalescer, "schedules");
+
+        CompletableFuture<Integer> upstream = new CompletableFuture<>();
+        coalescer.execute("DUB-STN", () -> upstream);
+        coalescer.execute("DUB-STN", () -> upstream);
+
+        assertEquals(1.0, registry.get("flights.coalescer.executed").tag("name", "schedules")
+                .functionCounter().count(), 0.0);
+        assertEquals(1.0, registry.get("flights.coalescer.coalesced").tag("name", "schedules")
+                .functionCounter().count(), 0.0);
+        assertEquals(1.0, registry.get("flights.coalescer.in-flight").tag("name", "schedules")
+                .gauge().value(), 0.0);
+
+        upstream.complete(42);
+
+        assertEquals(0.0, registry.get("flights.coalescer.in-flight").tag("name", "schedules")
+                .gauge().value(), 0.0);
+    }
+}
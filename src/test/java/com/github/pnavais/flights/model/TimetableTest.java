@@ -0,0 +1,91 @@
+package com.github.pnavais.flights.model;
+
+import com.github.pnavais.flights.util.TimeUtils;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.Month;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimetableTest {
+
+    @Test
+    public void fromScheduleSortsFlightsByDeparture() {
+        Schedule schedule = new Schedule();
+        schedule.setYear(2018);
+        schedule.setMonth(Month.JULY);
+        schedule.setDays(Arrays.asList(
+                day(2, flight(10, "18:00", "20:00"), flight(11, "07:30", "09:00")),
+                day(1, flight(12, "12:00", "13:15"))));
+
+        Timetable<String> timetable = Timetable.from("DUB", "WRO", schedule);
+
+        assertEquals(3, timetable.size());
+        assertEquals(12, timetable.getNumber(0));
+        assertEquals(11, timetable.getNumber(1));
+        assertEquals(10, timetable.getNumber(2));
+
+        Leg<String> leg = timetable.toLeg(1);
+        assertEquals("DUB", leg.getDepartureAirport());
+        assertEquals("WRO", leg.getArrivalAirport());
+        assertEquals(LocalDateTime.of(2018, 7, 2, 7, 30), leg.getDepartureDateTime());
+        assertEquals(LocalDateTime.of(2018, 7, 2, 9, 0), leg.getArrivalDateTime());
+    }
+
+    @Test
+    public void sliceKeepsDeparturesWithinInclusiveBounds() {
+        int start = TimeUtils.toEpochMinute(LocalDateTime.of(2018, 7, 1, 0, 0));
+        Timetable<String> timetable = Timetable.of("DUB", "WRO",
+                new int[] { start, start + 10, start + 20, start + 30 },
+                new int[] { start + 60, start + 70, start + 80, start + 90 },
+                new int[] { 1, 2, 3, 4 });
+
+        Timetable<String> slice = timetable.slice(start + 10, start + 20);
+
+        assertEquals(2, slice.size());
+        assertEquals(2, slice.getNumber(0));
+        assertEquals(3, slice.getNumber(1));
+        assertEquals(0, slice.firstDepartureFrom(start));
+        assertEquals(2, slice.firstDepartureFrom(start + 21));
+        assertTrue(timetable.slice(start + 31, start + 100).isEmpty());
+    }
+
+    @Test
+    public void concatPreservesChronologicalOrder() {
+        Timetable<String> july = Timetable.of("DUB", "WRO", new int[] { 10, 20 }, new int[] { 70, 80 },
+                new int[] { 1, 2 });
+        Timetable<String> august = Timetable.of("DUB", "WRO", new int[] { 30 }, new int[] { 90 }, new int[] { 3 });
+
+        Timetable<String> window = Timetable.concat("DUB", "WRO", Arrays.asList(july.slice(20, 20), august));
+
+        assertEquals(2, window.size());
+        assertEquals(2, window.getNumber(0));
+        assertEquals(3, window.getNumber(1));
+    }
+
+    @Test
+    public void epochMinutesRoundTrip() {
+        LocalDateTime dateTime = LocalDateTime.of(2018, 7, 1, 23, 59);
+        assertEquals(dateTime, TimeUtils.toLocalDateTime(TimeUtils.toEpochMinute(dateTime)));
+        assertEquals(TimeUtils.toEpochMinute(dateTime) + 1, TimeUtils.toEpochMinuteCeiling(dateTime.plusSeconds(1)));
+    }
+
+    private static FlightsDay day(int day, FlightInfo... flights) {
+        FlightsDay flightsDay = new FlightsDay();
+        flightsDay.setDay(day);
+        flightsDay.setFlights(Arrays.asList(flights));
+        return flightsDay;
+    }
+
+    private static FlightInfo flight(int number, String departure, String arrival) {
+        FlightInfo flight = new FlightInfo();
+        flight.setNumber(number);
+        flight.setDepartureTime(LocalTime.parse(departure));
+        flight.setArrivalTime(LocalTime.parse(arrival));
+        return flight;
+    }
+}
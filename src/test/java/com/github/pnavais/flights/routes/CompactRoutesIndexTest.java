@@ -0,0 +1,110 @@
+package com.github.pnavais.flights.routes;
+
+import com.github.pnavais.flights.model.FlightPath;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompactRoutesIndexTest {
+
+    @Test
+    public void findsTheSamePathsAsTheGraphEnumeration() {
+        Random random = new Random(42L);
+        RoutesGraph graph = new RoutesGraph();
+        CompactRoutesIndex index = new CompactRoutesIndex();
+
+        for (int i = 0; i < 120; i++) {
+            String from = "A" + random.nextInt(20);
+            String to = "A" + random.nextInt(20);
+            if (!from.equals(to)) {
+                graph.add(from, to);
+                index.add(from, to);
+                index.add(from, to);
+            }
+        }
+        index.build();
+
+        for (int maxStop = 1; maxStop <= 3; maxStop++) {
+            for (int i = 0; i < 50; i++) {
+                String from = "A" + random.nextInt(20);
+                String to = "A" + random.nextInt(20);
+                if (!from.equals(to)) {
+                    assertEquals(from + " -> " + to + " (" + maxStop + ")",
+                            toStrings(graph.findRoutes(from, to, maxStop)),
+                            toStrings(index.findRoutes(from, to, maxStop)));
+                    assertEquals(graph.findNetwork(from, to, maxStop), index.findNetwork(from, to, maxStop));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void findsTheUnionOfTheNetworksOfSeveralAirports() {
+        Random random = new Random(7L);
+        RoutesGraph graph = new RoutesGraph();
+        CompactRoutesIndex index = new CompactRoutesIndex();
+
+        for (int i = 0; i < 80; i++) {
+            String from = "A" + random.nextInt(20);
+            String to = "A" + random.nextInt(20);
+            if (!from.equals(to)) {
+                graph.add(from, to);
+                index.add(from, to);
+            }
+        }
+        index.build();
+
+        Set<String> origins = new HashSet<>(Arrays.asList("A0", "A1", "A2", "XXX"));
+        Set<String> destinations = new HashSet<>(Arrays.asList("A10", "A11"));
+
+        for (int maxStop = 1; maxStop <= 3; maxStop++) {
+            Map<String, Set<String>> expected = new HashMap<>();
+            for (String from : origins) {
+                for (String to : destinations) {
+                    index.findNetwork(from, to, maxStop).forEach((airport, next) ->
+                            expected.computeIfAbsent(airport, a -> new HashSet<>()).addAll(next));
+                }
+            }
+
+            assertEquals(expected, index.findNetwork(origins, destinations, maxStop));
+            assertEquals(expected, graph.findNetwork(origins, destinations, maxStop));
+        }
+    }
+
+    @Test
+    public void returnsShortestPathsFirst() {
+        CompactRoutesIndex index = new CompactRoutesIndex(2);
+        index.add("DUB", "WRO");
+        index.add("WRO", "STN");
+        index.add("DUB", "STN");
+        index.build();
+
+        List<FlightPath> paths = index.findRoutes("DUB", "STN", 2);
+
+        assertEquals(2, index.getVersion());
+        assertEquals("[DUB -> STN, DUB -> WRO -> STN]", paths.toString());
+        assertTrue(index.findRoutes("DUB", "MAD", 2).isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsRoutesOnceBuilt() {
+        CompactRoutesIndex index = new CompactRoutesIndex();
+        index.build();
+
+        index.add("DUB", "STN");
+    }
+
+    private static List<String> toStrings(List<FlightPath> paths) {
+        return paths.stream().map(FlightPath::toString).sorted().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.pnavais.flights.routes;
+
+import com.github.pnavais.flights.model.FlightPath;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class RoutesGraphTest {
+
+    @Test
+    public void findsDirectAndOneStopRoutesOnceBuilt() {
+        RoutesGraph graph = new RoutesGraph(3);
+        graph.add("DUB", "STN");
+        graph.add("DUB", "WRO");
+        graph.add("WRO", "STN");
+        graph.add("STN", "MAD");
+        graph.build();
+
+        assertEquals(3, graph.getVersion());
+        assertEquals("[DUB -> STN, DUB -> WRO -> STN]", toStrings(graph.findRoutes("DUB", "STN", 2)).toString());
+        assertEquals("[DUB -> STN]", toStrings(graph.findRoutes("DUB", "STN", 1)).toString());
+    }
+
+    @Test
+    public void oneStopIndexFindsTheSamePathsAsTheEnumeration() {
+        Random random = new Random(11L);
+        RoutesGraph enumerated = new RoutesGraph();
+        RoutesGraph indexed = new RoutesGraph();
+
+        for (int i = 0; i < 120; i++) {
+            String from = "A" + random.nextInt(20);
+            String to = "A" + random.nextInt(20);
+            if (!from.equals(to)) {
+                enumerated.add(from, to);
+                indexed.add(from, to);
+            }
+        }
+        indexed.build();
+
+        assertNull(enumerated.getOneStopIndex());
+        assertNotNull(indexed.getOneStopIndex());
+        for (int maxStop = 1; maxStop <= 2; maxStop++) {
+            for (int i = 0; i < 50; i++) {
+                String from = "A" + random.nextInt(20);
+                String to = "A" + random.nextInt(20);
+                if (!from.equals(to)) {
+                    assertEquals(from + " -> " + to + " (" + maxStop + ")",
+                            toStrings(enumerated.findRoutes(from, to, maxStop)),
+                            toStrings(indexed.findRoutes(from, to, maxStop)));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsRoutesOnceBuilt() {
+        RoutesGraph graph = new RoutesGraph(1);
+        graph.add("DUB", "STN");
+        graph.build();
+
+        graph.add("STN", "MAD");
+    }
+
+    private static List<String> toStrings(List<FlightPath> paths) {
+        return paths.stream().map(FlightPath::toString).sorted().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.pnavais.flights.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class DecayedCountsTest {
+
+    @Test
+    public void recentOccurrencesOutweighOlderOnes() {
+        DecayedCounts<String> counts = new DecayedCounts<>(10);
+        for (int i = 0; i < 4; i++) {
+            counts.add("DUB-WRO");
+        }
+        counts.decay(DecayedCounts.factor(60, 30));
+        counts.add("STN-KRK");
+        counts.add("STN-KRK");
+
+        assertEquals(1.0, counts.get("DUB-WRO"), 1e-9);
+        assertEquals(Arrays.asList("STN-KRK", "DUB-WRO"), new ArrayList<>(counts.top(5).keySet()));
+    }
+
+    @Test
+    public void negligibleAndExcessKeysAreDropped() {
+        DecayedCounts<String> counts = new DecayedCounts<>(2);
+        counts.add("A");
+        counts.add("B");
+        counts.add("C");
+
+        assertEquals(2, counts.size());
+        assertEquals(0.0, counts.get("C"), 0.0);
+
+        counts.decay(0.01);
+        counts.add("C");
+
+        assertEquals(1, counts.size());
+        assertEquals(1.0, counts.get("C"), 0.0);
+    }
+}
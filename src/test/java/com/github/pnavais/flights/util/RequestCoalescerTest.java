@@ -0,0 +1,92 @@
+package com.github.pnavais.flights.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RequestCoalescerTest {
+
+    @Test
+    public void concurrentRequestsShareTheInFlightFuture() {
+        RequestCoalescer<String, Integer> coalescer = new RequestCoalescer<>();
+        CompletableFuture<Integer> upstream = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<Integer> first = coalescer.execute("DUB-STN", () -> {
+            calls.incrementAndGet();
+            return upstream;
+        });
+        CompletableFuture<Integer> second = coalescer.execute("DUB-STN", () -> {
+            calls.incrementAndGet();
+            return upstream;
+        });
+
+        assertSame(first, second);
+        assertEquals(1, coalescer.getInFlightCount());
+
+        upstream.complete(42);
+
+        assertEquals(42, (int) second.join());
+        assertEquals(1, calls.get());
+        assertEquals(1, coalescer.getExecutedCount());
+        assertEquals(1, coalescer.getCoalescedCount());
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    @Test
+    public void completedRequestsAreNotShared() {
+        RequestCoalescer<String, Integer> coalescer = new RequestCoalescer<>();
+
+        coalescer.execute("DUB-STN", () -> CompletableFuture.completedFuture(1)).join();
+        int result = coalescer.execute("DUB-STN", () -> CompletableFuture.completedFuture(2)).join();
+
+        assertEquals(2, result);
+        assertEquals(2, coalescer.getExecutedCount());
+        assertEquals(0, coalescer.getCoalescedCount());
+    }
+
+    @Test
+    public void failuresAreSharedAndReleased() {
+        RequestCoalescer<String, Integer> coalescer = new RequestCoalescer<>();
+        CompletableFuture<Integer> upstream = new CompletableFuture<>();
+
+        CompletableFuture<Integer> first = coalescer.execute("DUB-STN", () -> upstream);
+        upstream.completeExceptionally(new IllegalStateException("upstream down"));
+
+        assertTrue(first.isCompletedExceptionally());
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    @Test
+    public void urgentRequestsDoNotWaitOnLessUrgentOnes() {
+        RequestCoalescer<String, Integer> coalescer = new RequestCoalescer<>();
+        CompletableFuture<Integer> prefetch = new CompletableFuture<>();
+        CompletableFuture<Integer> interactive = new CompletableFuture<>();
+
+        CompletableFuture<Integer> prefetched = RequestPriority.PREFETCH.call(
+                () -> coalescer.execute("DUB-STN", () -> prefetch));
+        CompletableFuture<Integer> searched = coalescer.execute("DUB-STN", () -> interactive);
+        CompletableFuture<Integer> batched = RequestPriority.BATCH.call(
+                () -> coalescer.execute("DUB-STN", () -> prefetch));
+
+        assertNotSame(prefetched, searched);
+        assertSame(searched, batched);
+        assertEquals(2, coalescer.getExecutedCount());
+        assertEquals(1, coalescer.getCoalescedCount());
+
+        prefetch.complete(1);
+        assertEquals(1, (int) prefetched.join());
+        assertEquals(1, coalescer.getInFlightCount());
+
+        interactive.complete(2);
+        assertEquals(2, (int) batched.join());
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+}
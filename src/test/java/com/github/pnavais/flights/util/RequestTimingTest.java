@@ -0,0 +1,75 @@
+package com.github.pnavais.flights.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RequestTimingTest {
+
+    @After
+    public void tearDown() {
+        RequestTiming.end();
+    }
+
+    @Test
+    public void stagesAreAccumulatedByName() {
+        RequestTiming timing = RequestTiming.begin();
+
+        assertEquals("DUB", RequestTiming.time("paths", () -> "DUB"));
+        timing.record("schedules", 1_500_000);
+        timing.record("schedules", 500_000);
+
+        assertEquals("paths;dur=", timing.toServerTiming().substring(0, 10));
+        assertTrue(timing.toServerTiming().endsWith("schedules;dur=2.00;desc=\"2\""));
+        assertTrue(timing.toString().endsWith("schedules=2.00ms/2"));
+    }
+
+    @Test
+    public void stagesWithoutContextAreJustRun() {
+        assertNull(RequestTiming.current());
+        assertEquals("DUB", RequestTiming.time("paths", () -> "DUB"));
+        assertNull(RequestTiming.current());
+    }
+
+    @Test
+    public void contextTravelsWithTheTasksOfBoundedExecutors() {
+        ExecutorService executor = ExecutorUtils.newBoundedExecutor("timing", 2, 4);
+        try {
+            RequestTiming timing = RequestTiming.begin();
+
+            RequestTiming seen = CompletableFuture.supplyAsync(RequestTiming::current, executor)
+                    .thenApplyAsync(current -> {
+                        RequestTiming.time("join", () -> null);
+                        return current;
+                    }, executor)
+                    .join();
+            RequestTiming.end();
+
+            assertSame(timing, seen);
+            assertTrue(timing.toServerTiming().startsWith("join;dur="));
+            assertNull(CompletableFuture.supplyAsync(RequestTiming::current, executor).join());
+        } finally {
+            ExecutorUtils.shutdown(executor);
+        }
+    }
+
+    @Test
+    public void futuresCompletedByOtherRequestsRunDependentsInTheCallerContext() {
+        CompletableFuture<String> shared = new CompletableFuture<>();
+        RequestTiming caller = RequestTiming.begin();
+        CompletableFuture<RequestTiming> seen = ExecutorUtils.inCurrentContext(shared)
+                .thenApply(value -> RequestTiming.current());
+
+        RequestTiming.begin();
+        shared.complete("DUB");
+
+        assertSame(caller, seen.join());
+    }
+}